@@ -0,0 +1,83 @@
+package zpl.valve.plugin.api;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.mock.web.reactive.function.server.MockServerRequest;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import run.halo.app.extension.ListOptions;
+import run.halo.app.extension.PageRequestImpl;
+import zpl.valve.plugin.benchmark.SyntheticData;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * 产品列表接口的查询条件构建：{@link ProductSearchApi#buildListOptions} 和
+ * {@link ProductSearchApi#buildPageRequest}。
+ * <p>{@code matched} 为分词检索命中的产品数，对应关键词检索时按名称过滤的 {@code in} 条件。</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProductSearchApiBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    int matched;
+
+    private ServerRequest simple;
+
+    private ServerRequest full;
+
+    private List<String> matchedNames;
+
+    @Setup
+    public void setUp() {
+        simple = MockServerRequest.builder()
+            .queryParam("keyword", "不锈钢球阀")
+            .queryParam("page", "2")
+            .queryParam("size", "20")
+            .build();
+        full = MockServerRequest.builder()
+            .queryParam("keyword", "球阀")
+            .queryParam("category", SyntheticData.categoryName(3))
+            .queryParam("standard", "材质:不锈钢")
+            .queryParam("standard", "口径:DN50")
+            .queryParam("standard", "口径:DN80")
+            .queryParam("minPrice", "100")
+            .queryParam("maxPrice", "5000")
+            .queryParam("createdAfter", "2024-01-01T00:00:00Z")
+            .queryParam("createdBefore", "2025-01-01T00:00:00Z")
+            .queryParam("sort", "spec.price,desc")
+            .build();
+        matchedNames = IntStream.range(0, matched)
+            .mapToObj(SyntheticData::productName)
+            .toList();
+    }
+
+    @Benchmark
+    public ListOptions buildListOptionsSimple() {
+        return ProductSearchApi.buildListOptions(simple);
+    }
+
+    @Benchmark
+    public ListOptions buildListOptionsAllFilters() {
+        return ProductSearchApi.buildListOptions(full);
+    }
+
+    @Benchmark
+    public ListOptions buildListOptionsMatchedNames() {
+        return ProductSearchApi.buildListOptions(full, matchedNames);
+    }
+
+    @Benchmark
+    public PageRequestImpl buildPageRequest() {
+        return ProductSearchApi.buildPageRequest(full);
+    }
+}
@@ -0,0 +1,329 @@
+package zpl.valve.plugin.benchmark;
+
+import org.springframework.data.domain.Sort;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import run.halo.app.extension.Extension;
+import run.halo.app.extension.ListOptions;
+import run.halo.app.extension.ListResult;
+import run.halo.app.extension.PageRequest;
+import run.halo.app.extension.ReactiveExtensionClient;
+import run.halo.app.extension.index.IndexSpec;
+import run.halo.app.extension.index.IndexSpecs;
+import run.halo.app.extension.index.KeyComparator;
+import run.halo.app.extension.index.query.Query;
+import zpl.valve.plugin.metrics.QueryTree;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * 基准测试使用的内存扩展存储。
+ * <p>以动态代理实现 {@link ReactiveExtensionClient}，只支持插件用到的 {@code listAll}、{@code listBy}、
+ * {@code fetch}、{@code create}、{@code update} 和 {@code watch}（不推送事件），
+ * 其他方法抛出 {@link UnsupportedOperationException}。</p>
+ * <p>查询按字段选择器过滤、按排序条件排序（未指定时按创建时间、名称排序）。索引值由
+ * {@link #indexed} 注册的索引定义（与插件注册 Scheme 时相同）在写入时计算，另有 Halo 为所有扩展建立的
+ * {@code metadata.*} 默认索引；条件逐个扩展求值，使用未注册索引的字段时抛出异常，与扩展存储一致。
+ * 标签选择器不支持。</p>
+ */
+public final class InMemoryExtensionClient {
+
+    private static final Comparator<Extension> ORDER = Comparator
+        .comparing((Extension extension) -> extension.getMetadata().getCreationTimestamp(),
+            Comparator.nullsLast(Comparator.<Instant>naturalOrder()))
+        .thenComparing(extension -> extension.getMetadata().getName());
+
+    private final Map<Class<?>, ConcurrentSkipListMap<String, Extension>> store =
+        new ConcurrentHashMap<>();
+
+    /**
+     * 各扩展的索引值，按类型、名称存放。
+     */
+    private final Map<Class<?>, Map<String, Map<String, Set<String>>>> indexValues =
+        new ConcurrentHashMap<>();
+
+    private final Map<Class<?>, List<IndexSpec>> indexSpecs = new ConcurrentHashMap<>();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * 注册类型的索引定义，已有的扩展重新计算索引值。
+     */
+    public InMemoryExtensionClient indexed(Class<?> type, Consumer<IndexSpecs> specs) {
+        List<IndexSpec> registered = indexSpecs.computeIfAbsent(type,
+            key -> new CopyOnWriteArrayList<>());
+        specs.accept((IndexSpecs) Proxy.newProxyInstance(IndexSpecs.class.getClassLoader(),
+            new Class<?>[] {IndexSpecs.class}, (proxy, method, args) -> switch (method.getName()) {
+                case "add" -> {
+                    registered.add((IndexSpec) args[0]);
+                    yield null;
+                }
+                case "getIndexSpecs" -> List.copyOf(registered);
+                default -> unsupported(method);
+            }));
+        of(type).values().forEach(this::put);
+        return this;
+    }
+
+    public InMemoryExtensionClient addAll(Collection<? extends Extension> extensions) {
+        extensions.forEach(this::put);
+        return this;
+    }
+
+    public ReactiveExtensionClient client() {
+        return (ReactiveExtensionClient) Proxy.newProxyInstance(
+            ReactiveExtensionClient.class.getClassLoader(),
+            new Class<?>[] {ReactiveExtensionClient.class},
+            (proxy, method, args) -> invoke(proxy, method, args));
+    }
+
+    public int size(Class<?> type) {
+        return of(type).size();
+    }
+
+    private Object invoke(Object proxy, Method method, Object[] args) {
+        return switch (method.getName()) {
+            case "listAll" -> Flux.defer(() -> Flux.fromIterable(
+                list((Class<?>) args[0], (ListOptions) args[1], (Sort) args[2])));
+            case "listBy" -> Mono.fromSupplier(() -> page((Class<?>) args[0],
+                (ListOptions) args[1], (PageRequest) args[2]));
+            case "fetch" -> args[0] instanceof Class<?> type
+                ? Mono.justOrEmpty(of(type).get((String) args[1]))
+                : unsupported(method);
+            case "create" -> Mono.fromSupplier(() -> create((Extension) args[0]));
+            case "update" -> Mono.fromSupplier(() -> update((Extension) args[0]));
+            case "watch" -> null;
+            case "toString" -> "InMemoryExtensionClient";
+            case "hashCode" -> System.identityHashCode(this);
+            case "equals" -> proxy == args[0];
+            default -> unsupported(method);
+        };
+    }
+
+    private List<Extension> list(Class<?> type, ListOptions options, Sort sort) {
+        if (options != null && options.getLabelSelector() != null
+            && options.getLabelSelector().getMatchers() != null
+            && !options.getLabelSelector().getMatchers().isEmpty()) {
+            throw new UnsupportedOperationException(
+                "Label selectors are not supported by the in-memory client");
+        }
+        Query query = options == null || options.getFieldSelector() == null
+            ? null : options.getFieldSelector().query();
+        Map<String, Map<String, Set<String>>> values = indexValues.getOrDefault(type, Map.of());
+        List<Extension> items = new ArrayList<>();
+        for (Extension extension : of(type).values()) {
+            Map<String, Set<String>> indexed =
+                values.getOrDefault(extension.getMetadata().getName(), Map.of());
+            if (query == null || matches(query, indexed)) {
+                items.add(extension);
+            }
+        }
+        items.sort(comparator(values, sort));
+        return items;
+    }
+
+    private ListResult<Extension> page(Class<?> type, ListOptions options,
+        PageRequest pageRequest) {
+        List<Extension> items = list(type, options, pageRequest.getSort());
+        int size = pageRequest.getPageSize();
+        if (size <= 0) {
+            return new ListResult<>(0, 0, items.size(), items);
+        }
+        int from = (int) Math.min((long) (pageRequest.getPageNumber() - 1) * size, items.size());
+        int to = Math.min(from + size, items.size());
+        return new ListResult<>(pageRequest.getPageNumber(), size, items.size(),
+            List.copyOf(items.subList(from, to)));
+    }
+
+    private Extension create(Extension extension) {
+        if (extension.getMetadata().getName() == null) {
+            extension.getMetadata().setName(extension.getMetadata().getGenerateName()
+                + Long.toString(sequence.incrementAndGet(), 36));
+        }
+        if (of(extension.getClass()).containsKey(extension.getMetadata().getName())) {
+            throw new IllegalStateException(
+                "Extension already exists: " + extension.getMetadata().getName());
+        }
+        extension.getMetadata().setCreationTimestamp(Instant.now());
+        extension.getMetadata().setVersion(1L);
+        put(extension);
+        return extension;
+    }
+
+    private Extension update(Extension extension) {
+        Long version = extension.getMetadata().getVersion();
+        extension.getMetadata().setVersion(version == null ? 1L : version + 1);
+        put(extension);
+        return extension;
+    }
+
+    private void put(Extension extension) {
+        Class<?> type = extension.getClass();
+        String name = extension.getMetadata().getName();
+        Map<String, Set<String>> values = new HashMap<>();
+        values.put("metadata.name", Set.of(name));
+        Map<String, String> labels = extension.getMetadata().getLabels();
+        values.put("metadata.labels", labels == null ? Set.of() : labels.entrySet().stream()
+            .map(label -> label.getKey() + "=" + label.getValue())
+            .collect(Collectors.toUnmodifiableSet()));
+        values.put("metadata.creationTimestamp",
+            timestamp(extension.getMetadata().getCreationTimestamp()));
+        values.put("metadata.deletionTimestamp",
+            timestamp(extension.getMetadata().getDeletionTimestamp()));
+        for (IndexSpec spec : indexSpecs.getOrDefault(type, List.of())) {
+            Set<String> indexed = spec.getIndexFunc().getValues(extension);
+            values.put(spec.getName(), indexed == null ? Set.of() : indexed.stream()
+                .filter(Objects::nonNull)
+                .collect(Collectors.toUnmodifiableSet()));
+        }
+        indexValues.computeIfAbsent(type, key -> new ConcurrentHashMap<>()).put(name, values);
+        of(type).put(name, extension);
+    }
+
+    private static Set<String> timestamp(Instant instant) {
+        return instant == null ? Set.of() : Set.of(instant.toString());
+    }
+
+    /**
+     * 按排序条件比较索引值，多值索引取最小值，没有值的排在最后；最后按创建时间、名称排序。
+     */
+    private static Comparator<Extension> comparator(
+        Map<String, Map<String, Set<String>>> values, Sort sort) {
+        Comparator<Extension> comparator = (a, b) -> 0;
+        if (sort != null) {
+            for (Sort.Order order : sort) {
+                Comparator<Extension> byIndex = Comparator.comparing(
+                    extension -> first(values, extension, order.getProperty()),
+                    Comparator.nullsLast(KeyComparator.INSTANCE));
+                comparator = comparator.thenComparing(order.isAscending()
+                    ? byIndex : byIndex.reversed());
+            }
+        }
+        return comparator.thenComparing(ORDER);
+    }
+
+    private static String first(Map<String, Map<String, Set<String>>> values,
+        Extension extension, String field) {
+        Set<String> indexed = indexed(values.getOrDefault(extension.getMetadata().getName(),
+            Map.of()), field);
+        return indexed.stream().min(KeyComparator.INSTANCE).orElse(null);
+    }
+
+    /**
+     * 按节点类型对单个扩展的索引值求值，语义与 Halo 的索引查询相同：多值索引任一值满足即匹配。
+     */
+    private static boolean matches(Query query, Map<String, Set<String>> values) {
+        String type = query.getClass().getSimpleName();
+        if (type.equals("And")) {
+            return QueryTree.children(query).stream().allMatch(child -> matches(child, values));
+        }
+        if (type.equals("Or")) {
+            return QueryTree.children(query).stream().anyMatch(child -> matches(child, values));
+        }
+        if (type.equals("Not")) {
+            return QueryTree.children(query).stream().noneMatch(child -> matches(child, values));
+        }
+        Set<String> indexed = indexed(values, QueryTree.fieldName(query));
+        String value = (String) property(query, "value");
+        if (Boolean.TRUE.equals(property(query, "isFieldRef"))) {
+            // 与另一字段比较时取该字段的值
+            Set<String> other = indexed(values, value);
+            value = other.isEmpty() ? null : other.iterator().next();
+        }
+        String operand = value;
+        boolean orEqual = Boolean.TRUE.equals(property(query, "orEqual"));
+        return switch (type) {
+            case "All" -> true;
+            case "EqualQuery" -> indexed.contains(operand);
+            case "NotEqual" -> !indexed.contains(operand);
+            case "InQuery" -> {
+                Collection<?> in = (Collection<?>) property(query, "values");
+                yield indexed.stream().anyMatch(in::contains);
+            }
+            case "GreaterThanQuery" -> indexed.stream().anyMatch(key -> {
+                int compared = KeyComparator.INSTANCE.compare(key, operand);
+                return compared > 0 || orEqual && compared == 0;
+            });
+            case "LessThanQuery" -> indexed.stream().anyMatch(key -> {
+                int compared = KeyComparator.INSTANCE.compare(key, operand);
+                return compared < 0 || orEqual && compared == 0;
+            });
+            case "Between" -> {
+                String lower = (String) property(query, "lowerValue");
+                String upper = (String) property(query, "upperValue");
+                boolean lowerInclusive =
+                    Boolean.TRUE.equals(property(query, "lowerInclusive"));
+                boolean upperInclusive =
+                    Boolean.TRUE.equals(property(query, "upperInclusive"));
+                yield indexed.stream().anyMatch(key -> {
+                    int low = KeyComparator.INSTANCE.compare(key, lower);
+                    int high = KeyComparator.INSTANCE.compare(key, upper);
+                    return (low > 0 || lowerInclusive && low == 0)
+                        && (high < 0 || upperInclusive && high == 0);
+                });
+            }
+            case "IsNull" -> indexed.isEmpty();
+            case "IsNotNull" -> !indexed.isEmpty();
+            case "StringContains" -> indexed.stream().anyMatch(key ->
+                key.toLowerCase(Locale.ROOT).contains(operand.toLowerCase(Locale.ROOT)));
+            case "StringStartsWith" -> indexed.stream().anyMatch(key -> key.startsWith(operand));
+            case "StringEndsWith" -> indexed.stream().anyMatch(key -> key.endsWith(operand));
+            default -> throw new UnsupportedOperationException(
+                "Query not supported by the in-memory client: " + type);
+        };
+    }
+
+    /**
+     * 读取叶子节点类声明的成员，例如 {@code value}、{@code values}、{@code orEqual}，没有该成员时返回 null。
+     * Halo 没有公开这些取值，基准测试中直接反射读取。
+     */
+    private static Object property(Query query, String name) {
+        for (Class<?> c = query.getClass(); c != null && c != Object.class; c = c.getSuperclass()) {
+            try {
+                Field field = c.getDeclaredField(name);
+                field.setAccessible(true);
+                return field.get(query);
+            } catch (NoSuchFieldException e) {
+                // 继续查找父类
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Cannot read " + name + " of " + query, e);
+            }
+        }
+        return null;
+    }
+
+    private static Set<String> indexed(Map<String, Set<String>> values, String field) {
+        Set<String> indexed = values.get(field);
+        if (indexed == null) {
+            throw new IllegalArgumentException("No index found for fieldPath: " + field);
+        }
+        return indexed;
+    }
+
+    private ConcurrentSkipListMap<String, Extension> of(Class<?> type) {
+        return store.computeIfAbsent(type, key -> new ConcurrentSkipListMap<>());
+    }
+
+    private static Object unsupported(Method method) {
+        throw new UnsupportedOperationException(
+            "Not supported by the in-memory client: " + method);
+    }
+}
@@ -0,0 +1,188 @@
+package zpl.valve.plugin.benchmark;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.core.annotation.AnnotationAwareOrderComparator;
+import org.springframework.core.env.StandardEnvironment;
+import run.halo.app.extension.ReactiveExtensionClient;
+import run.halo.app.theme.TemplateNameResolver;
+import zpl.valve.plugin.cache.RenderedPageCache;
+import zpl.valve.plugin.catalog.CatalogListener;
+import zpl.valve.plugin.catalog.CatalogSnapshot;
+import zpl.valve.plugin.catalog.ProductCatalog;
+import zpl.valve.plugin.client.CoalescingReader;
+import zpl.valve.plugin.extension.Advantage;
+import zpl.valve.plugin.extension.ApplicationArea;
+import zpl.valve.plugin.extension.Banner;
+import zpl.valve.plugin.extension.Consultation;
+import zpl.valve.plugin.extension.Product;
+import zpl.valve.plugin.extension.ProductCategory;
+import zpl.valve.plugin.extension.Timeline;
+import zpl.valve.plugin.home.HomePageContent;
+import zpl.valve.plugin.index.ExtensionIndexes;
+import zpl.valve.plugin.metrics.PluginMetrics;
+import zpl.valve.plugin.metrics.SlowQueryLog;
+import zpl.valve.plugin.related.RelatedProductsIndex;
+import zpl.valve.plugin.search.ProductFacetIndex;
+import zpl.valve.plugin.search.ProductSearchIndex;
+import zpl.valve.plugin.search.ProductSuggestIndex;
+import zpl.valve.plugin.theme.ActiveTheme;
+import zpl.valve.plugin.theme.ThemeListener;
+
+import java.time.Duration;
+
+/**
+ * 在内存扩展存储上组装产品目录及其监听器，不启动 Spring 容器。
+ * <p>组件之间的依赖与插件中的 Bean 相同，监听器按 {@code @Order} 排序通知；
+ * 没有注册 {@link MeterRegistry}，指标记录为空操作；慢查询日志使用默认阈值。
+ * 内存存储和慢查询日志使用插件的索引定义（{@link ExtensionIndexes}）。</p>
+ */
+public final class PluginFixture implements AutoCloseable {
+
+    private static final Duration LOAD_TIMEOUT = Duration.ofMinutes(2);
+
+    private final DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+
+    private final InMemoryExtensionClient store;
+
+    private final ReactiveExtensionClient client;
+
+    private final PluginMetrics pluginMetrics;
+
+    private final CoalescingReader reader;
+
+    private final ProductCatalog productCatalog;
+
+    private final RenderedPageCache renderedPageCache;
+
+    private final RelatedProductsIndex relatedProductsIndex;
+
+    private final ProductFacetIndex productFacetIndex;
+
+    private final ProductSearchIndex productSearchIndex;
+
+    private final ProductSuggestIndex productSuggestIndex;
+
+    private final HomePageContent homePageContent;
+
+    private final CatalogSnapshot snapshot;
+
+    /**
+     * 生成 {@code productCount} 个产品并等待产品目录首次加载完成。
+     */
+    public PluginFixture(int productCount) {
+        this(productCount, null);
+    }
+
+    /**
+     * 同 {@link #PluginFixture(int)}，渲染缓存使用给定的模板名称解析，用于挂载页面路由。
+     */
+    public PluginFixture(int productCount, TemplateNameResolver templateNameResolver) {
+        beanFactory.setDependencyComparator(AnnotationAwareOrderComparator.INSTANCE);
+        SlowQueryLog slowQueryLog = new SlowQueryLog(new StandardEnvironment());
+        // 与 ValvePlugin 注册 Scheme 时使用相同的索引定义
+        store = new InMemoryExtensionClient()
+            .indexed(Banner.class, slowQueryLog.indexed(Banner.class, ExtensionIndexes::banner))
+            .indexed(Timeline.class,
+                slowQueryLog.indexed(Timeline.class, ExtensionIndexes::timeline))
+            .indexed(ApplicationArea.class, slowQueryLog.indexed(ApplicationArea.class,
+                ExtensionIndexes::applicationArea))
+            .indexed(Advantage.class,
+                slowQueryLog.indexed(Advantage.class, ExtensionIndexes::advantage))
+            .indexed(ProductCategory.class, slowQueryLog.indexed(ProductCategory.class,
+                ExtensionIndexes::productCategory))
+            .indexed(Product.class, slowQueryLog.indexed(Product.class, ExtensionIndexes::product))
+            .indexed(Consultation.class,
+                slowQueryLog.indexed(Consultation.class, ExtensionIndexes::consultation))
+            .addAll(SyntheticData.categories())
+            .addAll(SyntheticData.products(productCount));
+        client = store.client();
+        pluginMetrics = new PluginMetrics(beanFactory.getBeanProvider(MeterRegistry.class),
+            slowQueryLog);
+        reader = new CoalescingReader(client, pluginMetrics);
+        productCatalog = new ProductCatalog(client,
+            beanFactory.getBeanProvider(CatalogListener.class), pluginMetrics);
+        // 模板名称解析只在渲染缓存过滤器中使用
+        // 主题版本未启动监听，始终为 ActiveTheme.UNKNOWN
+        renderedPageCache = new RenderedPageCache(templateNameResolver, productCatalog,
+            new ActiveTheme(client, beanFactory.getBeanProvider(ThemeListener.class),
+                pluginMetrics));
+        relatedProductsIndex = new RelatedProductsIndex(renderedPageCache);
+        productFacetIndex = new ProductFacetIndex();
+        productSearchIndex = new ProductSearchIndex();
+        productSuggestIndex = new ProductSuggestIndex();
+        homePageContent = new HomePageContent(client, productCatalog, pluginMetrics);
+        beanFactory.registerSingleton("renderedPageCache", renderedPageCache);
+        beanFactory.registerSingleton("relatedProductsIndex", relatedProductsIndex);
+        beanFactory.registerSingleton("productFacetIndex", productFacetIndex);
+        beanFactory.registerSingleton("productSearchIndex", productSearchIndex);
+        beanFactory.registerSingleton("productSuggestIndex", productSuggestIndex);
+        beanFactory.registerSingleton("homePageContent", homePageContent);
+        productCatalog.start();
+        homePageContent.start();
+        snapshot = productCatalog.snapshot().block(LOAD_TIMEOUT);
+        homePageContent.snapshot().block(LOAD_TIMEOUT);
+    }
+
+    public InMemoryExtensionClient store() {
+        return store;
+    }
+
+    public ReactiveExtensionClient client() {
+        return client;
+    }
+
+    /**
+     * 没有注册 {@link MeterRegistry}，需要注册表的组件从这里获取时得到空值。
+     */
+    public ObjectProvider<MeterRegistry> meterRegistry() {
+        return beanFactory.getBeanProvider(MeterRegistry.class);
+    }
+
+    public PluginMetrics pluginMetrics() {
+        return pluginMetrics;
+    }
+
+    public CoalescingReader reader() {
+        return reader;
+    }
+
+    public ProductCatalog productCatalog() {
+        return productCatalog;
+    }
+
+    public RenderedPageCache renderedPageCache() {
+        return renderedPageCache;
+    }
+
+    public RelatedProductsIndex relatedProductsIndex() {
+        return relatedProductsIndex;
+    }
+
+    public ProductFacetIndex productFacetIndex() {
+        return productFacetIndex;
+    }
+
+    public ProductSearchIndex productSearchIndex() {
+        return productSearchIndex;
+    }
+
+    public ProductSuggestIndex productSuggestIndex() {
+        return productSuggestIndex;
+    }
+
+    public HomePageContent homePageContent() {
+        return homePageContent;
+    }
+
+    public CatalogSnapshot snapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public void close() {
+        homePageContent.stop();
+        productCatalog.stop();
+    }
+}
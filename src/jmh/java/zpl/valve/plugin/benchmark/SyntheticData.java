@@ -0,0 +1,119 @@
+package zpl.valve.plugin.benchmark;
+
+import run.halo.app.extension.Metadata;
+import zpl.valve.plugin.extension.Consultation;
+import zpl.valve.plugin.extension.Product;
+import zpl.valve.plugin.extension.ProductCategory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 基准测试和压测使用的合成数据，固定随机种子，每次生成的数据相同。
+ * <p>产品均匀分布在 {@value #CATEGORIES} 个分类中，每个产品有材质、口径、压力三个规格和两张本地附件图片，
+ * 名称、规格取值与实际阀门产品相近，分词和拼音首字母索引的负载与线上接近。</p>
+ */
+public final class SyntheticData {
+
+    public static final int CATEGORIES = 50;
+
+    private static final Instant EPOCH = Instant.parse("2024-01-01T00:00:00Z");
+
+    private static final String[] TYPES = {"球阀", "闸阀", "截止阀", "蝶阀", "止回阀", "调节阀"};
+
+    private static final String[] MATERIALS = {"不锈钢", "铸铁", "碳钢", "黄铜", "球墨铸铁"};
+
+    private static final String[] SIZES = {"DN15", "DN25", "DN50", "DN80", "DN100", "DN150",
+        "DN200"};
+
+    private static final String[] PRESSURES = {"PN10", "PN16", "PN25", "PN40"};
+
+    private SyntheticData() {
+    }
+
+    public static String productName(int index) {
+        return "product-%06d".formatted(index);
+    }
+
+    public static String categoryName(int index) {
+        return "category-%02d".formatted(index);
+    }
+
+    public static List<ProductCategory> categories() {
+        List<ProductCategory> categories = new ArrayList<>(CATEGORIES);
+        for (int i = 0; i < CATEGORIES; i++) {
+            ProductCategory category = new ProductCategory();
+            category.setMetadata(metadata(categoryName(i), i));
+            ProductCategory.ProductCategorySpec spec = new ProductCategory.ProductCategorySpec();
+            spec.setName(TYPES[i % TYPES.length] + "系列 " + i);
+            spec.setDescription("分类 " + i);
+            spec.setImage("/upload/categories/category-" + i + ".jpg");
+            spec.setPriority(i);
+            category.setSpec(spec);
+            categories.add(category);
+        }
+        return categories;
+    }
+
+    public static List<Product> products(int count) {
+        Random random = new Random(42);
+        List<Product> products = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String type = TYPES[random.nextInt(TYPES.length)];
+            String material = MATERIALS[random.nextInt(MATERIALS.length)];
+            String size = SIZES[random.nextInt(SIZES.length)];
+            String pressure = PRESSURES[random.nextInt(PRESSURES.length)];
+
+            Product.ProductSpec spec = new Product.ProductSpec();
+            spec.setName(material + type + " " + size + " " + pressure);
+            spec.setCategoryMetadataName(categoryName(i % CATEGORIES));
+            spec.setDescription(material + "材质" + type + "，公称通径 " + size + "，公称压力 "
+                + pressure + "，适用于水、蒸汽、油品等介质。");
+            spec.setStandards(List.of(standard("材质", material), standard("口径", size),
+                standard("压力", pressure)));
+            spec.setImages(List.of(image("/upload/products/p-" + i + "-1.jpg", 0),
+                image("/upload/products/p-" + i + "-2.jpg", 1)));
+            spec.setPriority(random.nextInt(100));
+            spec.setSku("SKU-%06d".formatted(i));
+            spec.setPrice(Math.round(random.nextDouble() * 2000000) / 100.0);
+
+            Product product = new Product();
+            product.setMetadata(metadata(productName(i), i));
+            product.setSpec(spec);
+            products.add(product);
+        }
+        return products;
+    }
+
+    public static Consultation.ConsultationSpec consultation(int index) {
+        Consultation.ConsultationSpec spec = new Consultation.ConsultationSpec();
+        spec.setName("访客 " + index);
+        spec.setEmail("visitor-" + index + "@example.com");
+        spec.setContent("咨询 " + productName(index) + " 的价格和交货期，编号 " + index + "。");
+        return spec;
+    }
+
+    private static Metadata metadata(String name, int index) {
+        Metadata metadata = new Metadata();
+        metadata.setName(name);
+        metadata.setCreationTimestamp(EPOCH.plusSeconds(index));
+        metadata.setVersion(1L);
+        return metadata;
+    }
+
+    private static Product.ProductSpec.Standard standard(String name, String value) {
+        Product.ProductSpec.Standard standard = new Product.ProductSpec.Standard();
+        standard.setName(name);
+        standard.setValue(value);
+        return standard;
+    }
+
+    private static Product.ProductSpec.ProductImage image(String url, int priority) {
+        Product.ProductSpec.ProductImage image = new Product.ProductSpec.ProductImage();
+        image.setUrl(url);
+        image.setPriority(priority);
+        return image;
+    }
+}
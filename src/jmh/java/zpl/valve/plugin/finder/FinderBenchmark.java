@@ -0,0 +1,105 @@
+package zpl.valve.plugin.finder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import run.halo.app.extension.ListResult;
+import zpl.valve.plugin.benchmark.PluginFixture;
+import zpl.valve.plugin.benchmark.SyntheticData;
+import zpl.valve.plugin.finder.impl.HomePageFinderImpl;
+import zpl.valve.plugin.finder.impl.ProductCategoryFinderImpl;
+import zpl.valve.plugin.finder.impl.ProductFinderImpl;
+import zpl.valve.plugin.vo.HomePageVo;
+import zpl.valve.plugin.vo.ProductCategoryVo;
+import zpl.valve.plugin.vo.ProductVo;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 主题 Finder 的读取路径，数据来自内存扩展存储加载出的产品目录快照。
+ * <p>{@code listAll} 与产品数量成正比，其余方法应与产品数量基本无关，
+ * 不同规模之间差距明显时说明读取路径退化为扫描。</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FinderBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    int products;
+
+    private PluginFixture fixture;
+
+    private ProductFinder productFinder;
+
+    private ProductCategoryFinder productCategoryFinder;
+
+    private HomePageFinder homePageFinder;
+
+    private String category;
+
+    private String product;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = new PluginFixture(products);
+        productFinder = new ProductFinderImpl(fixture.productCatalog(),
+            fixture.relatedProductsIndex(), fixture.productFacetIndex(), fixture.pluginMetrics());
+        productCategoryFinder = new ProductCategoryFinderImpl(fixture.productCatalog(),
+            fixture.pluginMetrics());
+        homePageFinder = new HomePageFinderImpl(fixture.homePageContent(),
+            fixture.pluginMetrics());
+        category = SyntheticData.categoryName(SyntheticData.CATEGORIES / 2);
+        product = SyntheticData.productName(products / 2);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public List<ProductVo> productListAll() {
+        return productFinder.listAll().collectList().block();
+    }
+
+    @Benchmark
+    public ListResult<ProductVo> productListByCategory() {
+        return productFinder.listByCategory(category, 1, 12).block();
+    }
+
+    @Benchmark
+    public ListResult<ProductVo> productListByCategoryLastPage() {
+        int pages = (products / SyntheticData.CATEGORIES + 11) / 12;
+        return productFinder.listByCategory(category, pages, 12).block();
+    }
+
+    @Benchmark
+    public List<ProductVo> productListRelated() {
+        return productFinder.listRelated(product).collectList().block();
+    }
+
+    @Benchmark
+    public ListResult<ProductVo> productListByStandards() {
+        return productFinder.listByStandards(category, List.of("材质:不锈钢", "口径:DN50"), 1, 12)
+            .block();
+    }
+
+    @Benchmark
+    public List<ProductCategoryVo> productCategoryListAll() {
+        return productCategoryFinder.listAll().collectList().block();
+    }
+
+    @Benchmark
+    public HomePageVo homePage() {
+        return homePageFinder.get().block();
+    }
+}
@@ -0,0 +1,99 @@
+package zpl.valve.plugin.index;
+
+import run.halo.app.extension.index.KeyComparator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 校验 {@link SortableNumbers} 的编码在 Halo 的 {@link KeyComparator} 下与数值顺序一致，
+ * 由 {@code ./gradlew sortableNumbersCheck} 运行（{@code check} 依赖该任务）。
+ * <p>样本包括负数、正负零、正负无穷、NaN、{@code null}、极大极小值、次正规数、相邻的 double
+ * 和超出 long 精度的整数，另加固定种子的随机值。对样本两两比较，
+ * 比较结果的符号与期望顺序不同时输出前几项并以非零状态退出。</p>
+ * <p>期望顺序：{@code null} 最小；{@code -0.0} 与 {@code 0.0} 相等；NaN 大于正无穷，
+ * 所有 NaN 相等；其余按数值大小。</p>
+ */
+public final class SortableNumbersOrderCheck {
+
+    static final int RANDOM_SAMPLES = 2_000;
+
+    static final long SEED = 20_240_601L;
+
+    private static final int MAX_REPORTED = 20;
+
+    private SortableNumbersOrderCheck() {
+    }
+
+    public static void main(String[] args) {
+        List<Double> samples = samples();
+        List<String> encoded = samples.stream().map(SortableNumbers::encode).toList();
+        List<String> failures = new ArrayList<>();
+        long pairs = 0;
+        for (int i = 0; i < samples.size(); i++) {
+            for (int j = 0; j < samples.size(); j++) {
+                int expected = Integer.signum(expected(samples.get(i), samples.get(j)));
+                int actual = Integer.signum(
+                    KeyComparator.INSTANCE.compare(encoded.get(i), encoded.get(j)));
+                pairs++;
+                if (expected != actual && failures.size() < MAX_REPORTED) {
+                    failures.add(String.format("compare(%s, %s): expected %d, got %d (%s vs %s)",
+                        samples.get(i), samples.get(j), expected, actual, encoded.get(i),
+                        encoded.get(j)));
+                }
+            }
+        }
+        System.out.printf("Compared %d pairs of %d samples%n", pairs, samples.size());
+        if (!failures.isEmpty()) {
+            failures.forEach(failure -> System.err.println("Order mismatch: " + failure));
+            System.exit(1);
+        }
+    }
+
+    static int expected(Double a, Double b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        // 编码时统一了正负零，Double.compare 会把 -0.0 排在 0.0 之前
+        return Double.compare(a == 0.0d ? 0.0d : a, b == 0.0d ? 0.0d : b);
+    }
+
+    static List<Double> samples() {
+        List<Double> samples = new ArrayList<>();
+        samples.add(null);
+        samples.addAll(Arrays.asList(0.0d, -0.0d, Double.NaN,
+            // 非规范形式的 NaN
+            Double.longBitsToDouble(0x7ff0000000000123L),
+            Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+            Double.MAX_VALUE, -Double.MAX_VALUE, Double.MIN_VALUE, -Double.MIN_VALUE,
+            Double.MIN_NORMAL, -Double.MIN_NORMAL, Math.nextDown(Double.MIN_NORMAL),
+            1.0d, -1.0d, Math.nextUp(1.0d), Math.nextDown(1.0d), Math.nextUp(-1.0d),
+            0.1d, -0.1d, 0.5d, -0.5d, 9.99d, 10.0d, 10.01d, -9.99d, -10.0d, -10.01d,
+            99.0d, 100.0d, 1e300, -1e300, 1e-300, -1e-300));
+        for (long value : new long[] {Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE,
+            Long.MIN_VALUE, 1L << 53, (1L << 53) + 1, -(1L << 53), 123_456_789_012_345L}) {
+            samples.add((double) value);
+        }
+        // 各个数量级及其相邻的 double
+        for (int exponent = -20; exponent <= 20; exponent++) {
+            double value = Math.pow(10, exponent);
+            samples.add(value);
+            samples.add(-value);
+            samples.add(Math.nextUp(value));
+            samples.add(Math.nextDown(value));
+        }
+        Random random = new Random(SEED);
+        for (int i = 0; i < RANDOM_SAMPLES; i++) {
+            samples.add(switch (i % 4) {
+                case 0 -> random.nextDouble() * 1_000 - 500;
+                case 1 -> (double) random.nextInt();
+                case 2 -> Double.longBitsToDouble(random.nextLong());
+                default -> (random.nextBoolean() ? 1 : -1)
+                    * Math.pow(10, random.nextInt(600) - 300) * random.nextDouble();
+            });
+        }
+        return samples;
+    }
+}
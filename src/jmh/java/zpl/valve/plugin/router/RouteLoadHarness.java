@@ -0,0 +1,469 @@
+package zpl.valve.plugin.router;
+
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.EntityExchangeResult;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.reactive.result.view.View;
+import org.springframework.web.reactive.result.view.ViewResolver;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import run.halo.app.infra.utils.JsonUtils;
+import run.halo.app.theme.TemplateNameResolver;
+import zpl.valve.plugin.api.ConsultationApi;
+import zpl.valve.plugin.api.ProductSearchApi;
+import zpl.valve.plugin.benchmark.PluginFixture;
+import zpl.valve.plugin.benchmark.SyntheticData;
+import zpl.valve.plugin.cache.ConditionalJsonResponses;
+import zpl.valve.plugin.client.CoalescingReader;
+import zpl.valve.plugin.dedup.ConsultationDeduplicator;
+import zpl.valve.plugin.ingest.ConsultationIngestBuffer;
+import zpl.valve.plugin.metrics.PluginMetrics;
+import zpl.valve.plugin.prerender.StaticPageRenderer;
+import zpl.valve.plugin.ratelimit.ConsultationRateLimiter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HTTP 路由的端到端压测，由 {@code ./gradlew loadTest} 运行。
+ * <p>在内存扩展存储（{@link PluginFixture}）上组装 {@code productRouterFunction}、
+ * {@code productListRouterFunction}、{@code productSearchRoute} 和 {@code consultationRoutes}，
+ * 通过 {@link WebTestClient} 以固定并发发起浏览、搜索、提交咨询的混合请求，
+ * 输出每个路由的 p50/p95/p99 延迟和每秒请求数，超出预算时以非零状态退出，使构建失败。</p>
+ * <p>参数通过系统属性设置（Gradle 中用 {@code -Ploadtest.xxx=...} 传入）：</p>
+ * <ul>
+ *     <li>{@code loadtest.products}：产品数量，默认 {@value #DEFAULT_PRODUCTS}</li>
+ *     <li>{@code loadtest.concurrency}：并发数，默认 {@value #DEFAULT_CONCURRENCY}</li>
+ *     <li>{@code loadtest.warmupSeconds}、{@code loadtest.durationSeconds}：预热和测量时长</li>
+ *     <li>{@code loadtest.mix}：请求比例，默认 {@value #DEFAULT_MIX}</li>
+ *     <li>{@code loadtest.budgets}：预算文件，格式见 {@code load-budgets.properties}</li>
+ *     <li>{@code loadtest.report}：JSON 报告的输出路径</li>
+ * </ul>
+ * <p>页面路由使用把模型序列化为 JSON 的视图代替主题模板，延迟不含 Thymeleaf 渲染；
+ * 内存存储按插件的索引定义逐个扩展求值字段选择器，没有索引结构，包含检索等条件的耗时与实际存储不同。</p>
+ */
+public final class RouteLoadHarness {
+
+    static final int DEFAULT_PRODUCTS = 20_000;
+
+    static final int DEFAULT_CONCURRENCY = 16;
+
+    static final String DEFAULT_MIX = "browse:70,search:25,consult:5";
+
+    static final String PRODUCT = "product";
+    static final String PRODUCT_LIST = "productlist";
+    static final String SEARCH = "search";
+    static final String CONSULTATION = "consultation";
+
+    private static final List<String> ROUTES = List.of(PRODUCT, PRODUCT_LIST, SEARCH, CONSULTATION);
+
+    private static final String PRODUCTS_API =
+        "/apis/console.api.product.plugin.valve.zpl/v1alpha1/products";
+
+    private static final String CONSULTATIONS_API =
+        "/apis/api.consultation.plugin.halo.run/v1alpha1/consultations";
+
+    private static final String[] KEYWORDS = {"球阀", "闸阀", "截止阀", "蝶阀", "不锈钢", "铸铁",
+        "DN50", "PN16", "不锈钢球阀", "黄铜闸阀"};
+
+    /**
+     * 列表页只浏览每个分类的前几页。
+     */
+    private static final int BROWSED_PAGES = 5;
+
+    private final int products;
+
+    private final WebTestClient webClient;
+
+    private final AtomicInteger consultations = new AtomicInteger();
+
+    RouteLoadHarness(int products, WebTestClient webClient) {
+        this.products = products;
+        this.webClient = webClient;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int products = Integer.getInteger("loadtest.products", DEFAULT_PRODUCTS);
+        int concurrency = Integer.getInteger("loadtest.concurrency", DEFAULT_CONCURRENCY);
+        Duration warmup = Duration.ofSeconds(Long.getLong("loadtest.warmupSeconds", 5));
+        Duration duration = Duration.ofSeconds(Long.getLong("loadtest.durationSeconds", 20));
+        Mix mix = Mix.parse(System.getProperty("loadtest.mix", DEFAULT_MIX));
+
+        Path wal = Files.createTempDirectory("dl-plugin-load-wal");
+        System.setProperty("dl-plugin.consultation-wal.dir", wal.toString());
+
+        TemplateNameResolver templateNameResolver = templateNameResolver();
+        List<String> violations;
+        try (PluginFixture fixture = new PluginFixture(products, templateNameResolver)) {
+            RouteLoadHarness harness =
+                new RouteLoadHarness(products, webClient(fixture, templateNameResolver));
+
+            System.out.printf("Products: %d, concurrency: %d, mix: %s%n", products, concurrency,
+                mix);
+            harness.run(mix, concurrency, warmup);
+            Map<String, Stats> results = harness.run(mix, concurrency, duration);
+
+            print(results);
+            String report = System.getProperty("loadtest.report");
+            if (report != null) {
+                writeReport(Path.of(report), products, concurrency, mix, results);
+            }
+            violations = Budgets.load(System.getProperty("loadtest.budgets")).check(results);
+        }
+        if (!violations.isEmpty()) {
+            violations.forEach(violation -> System.err.println("Budget exceeded: " + violation));
+            System.exit(1);
+        }
+    }
+
+    /**
+     * 组装四个路由。静态页预渲染保持关闭，咨询的 IP 限流在没有客户端地址的测试请求上不生效，
+     * 每次提交使用不同的邮箱和内容，不会触发邮箱限流和去重。
+     */
+    static WebTestClient webClient(PluginFixture fixture,
+        TemplateNameResolver templateNameResolver) {
+        PluginMetrics pluginMetrics = fixture.pluginMetrics();
+        CoalescingReader reader = fixture.reader();
+        StaticPageRenderer staticPageRenderer =
+            new StaticPageRenderer(new StandardEnvironment(), fixture.relatedProductsIndex());
+        ConditionalJsonResponses jsonResponses = new ConditionalJsonResponses();
+
+        RouterFunction<ServerResponse> productRoute = new ProductRouter(templateNameResolver,
+            new ProductPageModelLoader(reader, fixture.productCatalog(),
+                fixture.relatedProductsIndex()),
+            fixture.renderedPageCache(), fixture.relatedProductsIndex(), staticPageRenderer,
+            pluginMetrics).productRouterFunction();
+        RouterFunction<ServerResponse> productListRoute = new ProductCategoryRouter(
+            templateNameResolver, fixture.productCatalog(), fixture.renderedPageCache(),
+            staticPageRenderer, pluginMetrics).productListRouterFunction();
+        RouterFunction<ServerResponse> searchRoute = new ProductSearchApi(reader,
+            fixture.productCatalog(), fixture.productSearchIndex(), fixture.productFacetIndex(),
+            jsonResponses, pluginMetrics).productSearchRoute();
+        RouterFunction<ServerResponse> consultationRoutes = new ConsultationApi(fixture.client(),
+            reader, new ConsultationIngestBuffer(fixture.client(), new StandardEnvironment(),
+            fixture.meterRegistry(), pluginMetrics),
+            new ConsultationRateLimiter(new StandardEnvironment()), new ConsultationDeduplicator(), jsonResponses,
+            pluginMetrics).consultationRoutes();
+
+        return WebTestClient
+            .bindToRouterFunction(productRoute.and(productListRoute).and(searchRoute)
+                .and(consultationRoutes))
+            .handlerStrategies(HandlerStrategies.builder()
+                .viewResolver(new ModelView())
+                .build())
+            .configureClient()
+            .responseTimeout(Duration.ofSeconds(30))
+            .build();
+    }
+
+    /**
+     * 以 {@code concurrency} 个线程持续发起请求，直到经过 {@code duration}。
+     */
+    Map<String, Stats> run(Mix mix, int concurrency, Duration duration) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        long deadline = start + duration.toNanos();
+        try {
+            List<Future<Map<String, Samples>>> workers = new ArrayList<>(concurrency);
+            for (int i = 0; i < concurrency; i++) {
+                workers.add(executor.submit(() -> work(mix, deadline)));
+            }
+            Map<String, Samples> merged = new LinkedHashMap<>();
+            for (Future<Map<String, Samples>> worker : workers) {
+                worker.get().forEach((route, samples) ->
+                    merged.computeIfAbsent(route, key -> new Samples()).addAll(samples));
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            Map<String, Stats> results = new LinkedHashMap<>();
+            ROUTES.forEach(route -> {
+                Samples samples = merged.get(route);
+                if (samples != null) {
+                    results.put(route, samples.stats(seconds));
+                }
+            });
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Map<String, Samples> work(Mix mix, long deadline) {
+        Map<String, Samples> samples = new LinkedHashMap<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < deadline) {
+            String route = switch (mix.next(random)) {
+                case "browse" -> random.nextBoolean() ? PRODUCT : PRODUCT_LIST;
+                case "search" -> SEARCH;
+                default -> CONSULTATION;
+            };
+            long start = System.nanoTime();
+            EntityExchangeResult<byte[]> result = request(route, random).expectBody().returnResult();
+            long elapsed = System.nanoTime() - start;
+            samples.computeIfAbsent(route, key -> new Samples())
+                .add(elapsed, result.getStatus().is2xxSuccessful());
+        }
+        return samples;
+    }
+
+    private WebTestClient.ResponseSpec request(String route, ThreadLocalRandom random) {
+        return switch (route) {
+            case PRODUCT -> webClient.get()
+                .uri("/product/{id}", SyntheticData.productName(random.nextInt(products)))
+                .exchange();
+            case PRODUCT_LIST -> webClient.get()
+                .uri("/productlist/{id}/{page}",
+                    SyntheticData.categoryName(random.nextInt(SyntheticData.CATEGORIES)),
+                    1 + random.nextInt(BROWSED_PAGES))
+                .exchange();
+            case SEARCH -> webClient.get()
+                .uri(builder -> builder.path(PRODUCTS_API)
+                    .queryParam("keyword", KEYWORDS[random.nextInt(KEYWORDS.length)])
+                    .queryParam("keywordMode", random.nextBoolean() ? "token" : "contains")
+                    .queryParam("page", 1 + random.nextInt(3))
+                    .queryParam("size", 20)
+                    .build())
+                .exchange();
+            default -> webClient.post()
+                .uri(CONSULTATIONS_API)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(SyntheticData.consultation(consultations.incrementAndGet()))
+                .exchange();
+        };
+    }
+
+    private static void print(Map<String, Stats> results) {
+        System.out.printf("%-14s %10s %10s %10s %10s %10s %8s%n", "route", "requests", "req/s",
+            "p50(ms)", "p95(ms)", "p99(ms)", "errors");
+        results.forEach((route, stats) -> System.out.printf(Locale.ROOT,
+            "%-14s %10d %10.1f %10.2f %10.2f %10.2f %8d%n", route, stats.requests(),
+            stats.requestsPerSecond(), stats.p50(), stats.p95(), stats.p99(), stats.errors()));
+    }
+
+    private static void writeReport(Path path, int products, int concurrency, Mix mix,
+        Map<String, Stats> results) throws IOException {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("products", products);
+        report.put("concurrency", concurrency);
+        report.put("mix", mix.toString());
+        report.put("routes", results);
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        JsonUtils.mapper().writerWithDefaultPrettyPrinter().writeValue(path.toFile(), report);
+    }
+
+    /**
+     * 主题模板名称原样返回默认模板。
+     */
+    private static TemplateNameResolver templateNameResolver() {
+        return (TemplateNameResolver) Proxy.newProxyInstance(
+            TemplateNameResolver.class.getClassLoader(),
+            new Class<?>[] {TemplateNameResolver.class},
+            (proxy, method, args) -> switch (method.getName()) {
+                case "resolveTemplateNameOrDefault" -> Mono.just((String) args[1]);
+                case "toString" -> "TemplateNameResolver";
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "equals" -> proxy == args[0];
+                default -> throw new UnsupportedOperationException(method.toString());
+            });
+    }
+
+    /**
+     * 代替主题模板的视图，把模型序列化为 JSON 写出，响应体大小与模型内容相关。
+     */
+    private static class ModelView implements ViewResolver, View {
+
+        @Override
+        public Mono<View> resolveViewName(String viewName, Locale locale) {
+            return Mono.just(this);
+        }
+
+        @Override
+        public List<MediaType> getSupportedMediaTypes() {
+            return List.of(MediaType.TEXT_HTML);
+        }
+
+        @Override
+        public Mono<Void> render(Map<String, ?> model, MediaType contentType,
+            ServerWebExchange exchange) {
+            return Mono.fromCallable(() -> JsonUtils.mapper().writeValueAsBytes(model))
+                .flatMap(body -> {
+                    exchange.getResponse().getHeaders().setContentType(MediaType.TEXT_HTML);
+                    DataBuffer buffer = exchange.getResponse().bufferFactory().wrap(body);
+                    return exchange.getResponse().writeWith(Mono.just(buffer));
+                });
+        }
+    }
+
+    /**
+     * 请求类型的权重，例如 {@code browse:70,search:25,consult:5}。
+     */
+    record Mix(String[] kinds, int[] cumulative) {
+
+        static Mix parse(String value) {
+            String[] parts = value.split(",");
+            String[] kinds = new String[parts.length];
+            int[] cumulative = new int[parts.length];
+            int total = 0;
+            for (int i = 0; i < parts.length; i++) {
+                String[] pair = parts[i].trim().split(":");
+                if (pair.length != 2 || !List.of("browse", "search", "consult").contains(pair[0])) {
+                    throw new IllegalArgumentException("Invalid loadtest.mix entry: " + parts[i]);
+                }
+                kinds[i] = pair[0];
+                total += Integer.parseInt(pair[1]);
+                cumulative[i] = total;
+            }
+            if (total <= 0) {
+                throw new IllegalArgumentException("loadtest.mix weights must be positive");
+            }
+            return new Mix(kinds, cumulative);
+        }
+
+        String next(ThreadLocalRandom random) {
+            int value = random.nextInt(cumulative[cumulative.length - 1]);
+            for (int i = 0; i < cumulative.length; i++) {
+                if (value < cumulative[i]) {
+                    return kinds[i];
+                }
+            }
+            return kinds[kinds.length - 1];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < kinds.length; i++) {
+                builder.append(i == 0 ? "" : ",").append(kinds[i]).append(':')
+                    .append(cumulative[i] - (i == 0 ? 0 : cumulative[i - 1]));
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * 单个路由的延迟样本（纳秒），每个线程各自记录，结束后合并。
+     */
+    static final class Samples {
+
+        private long[] latencies = new long[1024];
+
+        private int size;
+
+        private int errors;
+
+        void add(long latency, boolean success) {
+            if (size == latencies.length) {
+                latencies = Arrays.copyOf(latencies, size * 2);
+            }
+            latencies[size++] = latency;
+            if (!success) {
+                errors++;
+            }
+        }
+
+        void addAll(Samples other) {
+            if (size + other.size > latencies.length) {
+                latencies = Arrays.copyOf(latencies, Math.max(size + other.size, size * 2));
+            }
+            System.arraycopy(other.latencies, 0, latencies, size, other.size);
+            size += other.size;
+            errors += other.errors;
+        }
+
+        Stats stats(double seconds) {
+            long[] sorted = Arrays.copyOf(latencies, size);
+            Arrays.sort(sorted);
+            return new Stats(size, size / seconds, percentile(sorted, 0.50),
+                percentile(sorted, 0.95), percentile(sorted, 0.99), errors);
+        }
+
+        private static double percentile(long[] sorted, double quantile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(quantile * sorted.length) - 1;
+            return sorted[Math.max(rank, 0)] / 1e6;
+        }
+    }
+
+    /**
+     * 延迟单位为毫秒。
+     */
+    record Stats(int requests, double requestsPerSecond, double p50, double p95, double p99,
+                 int errors) {
+
+        double errorRate() {
+            return requests == 0 ? 0 : (double) errors / requests;
+        }
+    }
+
+    /**
+     * 每个路由的预算，键为 {@code <route>.p50Millis}、{@code <route>.p95Millis}、
+     * {@code <route>.p99Millis}、{@code <route>.minRps} 和 {@code <route>.maxErrorRate}，
+     * 没有配置的项不检查。未指定预算文件时使用 classpath 中的 {@code load-budgets.properties}。
+     */
+    record Budgets(Properties properties) {
+
+        static Budgets load(String path) throws IOException {
+            Properties properties = new Properties();
+            if (path != null) {
+                try (var reader = Files.newBufferedReader(Path.of(path), StandardCharsets.UTF_8)) {
+                    properties.load(reader);
+                }
+                return new Budgets(properties);
+            }
+            try (InputStream in = RouteLoadHarness.class.getResourceAsStream(
+                "/load-budgets.properties")) {
+                if (in != null) {
+                    properties.load(in);
+                }
+            }
+            return new Budgets(properties);
+        }
+
+        List<String> check(Map<String, Stats> results) {
+            List<String> violations = new ArrayList<>();
+            results.forEach((route, stats) -> {
+                max(violations, route, "p50Millis", stats.p50());
+                max(violations, route, "p95Millis", stats.p95());
+                max(violations, route, "p99Millis", stats.p99());
+                max(violations, route, "maxErrorRate", stats.errorRate());
+                String minRps = properties.getProperty(route + ".minRps");
+                if (minRps != null && stats.requestsPerSecond() < Double.parseDouble(minRps)) {
+                    violations.add(String.format(Locale.ROOT, "%s req/s %.1f < %s", route,
+                        stats.requestsPerSecond(), minRps));
+                }
+            });
+            return violations;
+        }
+
+        private void max(List<String> violations, String route, String key, double actual) {
+            String budget = properties.getProperty(route + "." + key);
+            if (budget != null && actual > Double.parseDouble(budget)) {
+                violations.add(String.format(Locale.ROOT, "%s %s %.3f > %s", route, key, actual,
+                    budget));
+            }
+        }
+    }
+}
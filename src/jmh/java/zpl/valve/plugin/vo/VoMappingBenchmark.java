@@ -0,0 +1,48 @@
+package zpl.valve.plugin.vo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import zpl.valve.plugin.benchmark.SyntheticData;
+import zpl.valve.plugin.extension.Product;
+import zpl.valve.plugin.extension.ProductCategory;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 扩展到主题 VO 的映射，{@link ProductVo#from} 包含图片 {@code srcset} 的生成。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class VoMappingBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    int products;
+
+    private List<Product> productList;
+
+    private List<ProductCategory> categoryList;
+
+    @Setup
+    public void setUp() {
+        productList = SyntheticData.products(products);
+        categoryList = SyntheticData.categories();
+    }
+
+    @Benchmark
+    public List<ProductVo> productVos() {
+        return productList.stream().map(ProductVo::from).toList();
+    }
+
+    @Benchmark
+    public List<ProductCategoryVo> productCategoryVos() {
+        return categoryList.stream().map(ProductCategoryVo::from).toList();
+    }
+}
@@ -1,11 +1,12 @@
 package zpl.valve.plugin;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import run.halo.app.extension.Scheme;
 import run.halo.app.extension.SchemeManager;
-import run.halo.app.extension.index.IndexSpec;
 import run.halo.app.plugin.BasePlugin;
 import run.halo.app.plugin.PluginContext;
+import zpl.valve.plugin.catalog.ProductCatalog;
 import zpl.valve.plugin.extension.Advantage;
 import zpl.valve.plugin.extension.ApplicationArea;
 import zpl.valve.plugin.extension.Banner;
@@ -14,12 +15,16 @@ import zpl.valve.plugin.extension.HomeAbout;
 import zpl.valve.plugin.extension.Product;
 import zpl.valve.plugin.extension.ProductCategory;
 import zpl.valve.plugin.extension.Timeline;
+import zpl.valve.plugin.home.HomePageContent;
+import zpl.valve.plugin.index.ExtensionIndexes;
+import zpl.valve.plugin.ingest.ConsultationIngestBuffer;
+import zpl.valve.plugin.metrics.PluginMetrics;
+import zpl.valve.plugin.metrics.SlowQueryLog;
+import zpl.valve.plugin.prerender.StaticPageRenderer;
+import zpl.valve.plugin.theme.ActiveTheme;
 
 import java.io.Console;
 
-import static run.halo.app.extension.index.IndexAttributeFactory.multiValueAttribute;
-import static run.halo.app.extension.index.IndexAttributeFactory.simpleAttribute;
-
 /**
  * <p>Plugin main class to manage the lifecycle of the plugin.</p>
  * <p>This class must be public and have a public constructor.</p>
@@ -28,130 +33,88 @@ import static run.halo.app.extension.index.IndexAttributeFactory.simpleAttribute
  * @author guqing
  * @since 1.0.0
  */
+@Slf4j
 @Component
 public class ValvePlugin extends BasePlugin {
 
     private final SchemeManager schemeManager;
 
+    private final ProductCatalog productCatalog;
+
+    private final ConsultationIngestBuffer consultationIngestBuffer;
+
+    private final HomePageContent homePageContent;
+
+    private final StaticPageRenderer staticPageRenderer;
+
+    private final PluginMetrics pluginMetrics;
+
+    private final SlowQueryLog slowQueryLog;
+
+    private final ActiveTheme activeTheme;
+
     public ValvePlugin(PluginContext pluginContext, SchemeManager schemeManager,
-        SchemeManager schemeManager1) {
+        SchemeManager schemeManager1, ProductCatalog productCatalog,
+        ConsultationIngestBuffer consultationIngestBuffer, HomePageContent homePageContent,
+        StaticPageRenderer staticPageRenderer, PluginMetrics pluginMetrics,
+        SlowQueryLog slowQueryLog, ActiveTheme activeTheme) {
         super(pluginContext);
         this.schemeManager = schemeManager1;
+        this.productCatalog = productCatalog;
+        this.consultationIngestBuffer = consultationIngestBuffer;
+        this.homePageContent = homePageContent;
+        this.staticPageRenderer = staticPageRenderer;
+        this.pluginMetrics = pluginMetrics;
+        this.slowQueryLog = slowQueryLog;
+        this.activeTheme = activeTheme;
     }
 
     @Override
     public void start() {
         // 轮播图
-        schemeManager.register(Banner.class, indexSpecs -> {
-            // 轮播图索引，排序需要指定
-            indexSpecs.add(new IndexSpec()
-                .setName("spec.priority")
-                .setIndexFunc(simpleAttribute(Banner.class,
-                    banner -> String.valueOf(banner.getSpec().getPriority())))
-            );
-        });
+        schemeManager.register(Banner.class,
+            slowQueryLog.indexed(Banner.class, ExtensionIndexes::banner));
         // 时间线
-        schemeManager.register(Timeline.class, indexSpecs -> {
-            // 时间线索引，排序需要指定
-            indexSpecs.add(new IndexSpec()
-                .setName("spec.datetime")
-                .setIndexFunc(
-                    simpleAttribute(Timeline.class, timeline -> timeline.getSpec().getDatetime()))
-            );
-            indexSpecs.add(new IndexSpec()
-                .setName("spec.priority")
-                .setIndexFunc(simpleAttribute(Timeline.class,
-                    timeline -> String.valueOf(timeline.getSpec().getPriority())))
-            );
-        });
+        schemeManager.register(Timeline.class,
+            slowQueryLog.indexed(Timeline.class, ExtensionIndexes::timeline));
         // 首页关于
         schemeManager.register(HomeAbout.class);
         // 应用领域
-        schemeManager.register(ApplicationArea.class, indexSpecs -> {
-            // 应用领域索引，排序需要指定
-            indexSpecs.add(new IndexSpec()
-                .setName("spec.priority")
-                .setIndexFunc(simpleAttribute(ApplicationArea.class,
-                    applicationArea -> String.valueOf(applicationArea.getSpec().getPriority())))
-            );
-        });
+        schemeManager.register(ApplicationArea.class,
+            slowQueryLog.indexed(ApplicationArea.class, ExtensionIndexes::applicationArea));
         // 核心优势
-        schemeManager.register(Advantage.class, indexSpecs -> {
-            // 核心优势索引，排序需要指定
-            indexSpecs.add(new IndexSpec()
-                .setName("spec.priority")
-                .setIndexFunc(simpleAttribute(Advantage.class,
-                    advantage -> String.valueOf(advantage.getSpec().getPriority())))
-            );
-        });
+        schemeManager.register(Advantage.class,
+            slowQueryLog.indexed(Advantage.class, ExtensionIndexes::advantage));
         // 产品分类
-        schemeManager.register(ProductCategory.class, indexSpecs -> {
-            //  产品分类索引，排序需要指定
-            indexSpecs.add(new IndexSpec()
-                .setName("spec.priority")
-                .setIndexFunc(simpleAttribute(ProductCategory.class,
-                    productCategory -> String.valueOf(productCategory.getSpec().getPriority())))
-            );
-        });
+        schemeManager.register(ProductCategory.class,
+            slowQueryLog.indexed(ProductCategory.class, ExtensionIndexes::productCategory));
         // 产品
-        schemeManager.register(Product.class, indexSpecs -> {
-            //  产品索引，排序需要指定
-            indexSpecs.add(new IndexSpec()
-                .setName("spec.priority")
-                .setIndexFunc(simpleAttribute(Product.class,
-                    product -> String.valueOf(product.getSpec().getPriority())))
-            );
-            indexSpecs.add(new IndexSpec()
-                .setName("spec.name")
-                .setIndexFunc(simpleAttribute(Product.class,
-                    product -> String.valueOf(product.getSpec().getName())))
-            );
-            indexSpecs.add(new IndexSpec()
-                .setName("spec.description")
-                .setIndexFunc(simpleAttribute(Product.class,
-                    product -> String.valueOf(product.getSpec().getDescription())))
-            );
-            indexSpecs.add(new IndexSpec()
-                .setName("spec.categoryMetadataName")
-                .setIndexFunc(simpleAttribute(Product.class,
-                    product -> String.valueOf(product.getSpec().getCategoryMetadataName())))
-            );
-            indexSpecs.add(new IndexSpec()
-                .setName("spec.price")
-                .setIndexFunc(simpleAttribute(Product.class,
-                    product -> String.valueOf(product.getSpec().getPrice())))
-            );
-        });
+        schemeManager.register(Product.class,
+            slowQueryLog.indexed(Product.class, ExtensionIndexes::product));
         // 产品咨询
-        schemeManager.register(Consultation.class, indexSpecs -> {
-            //  产品咨询索引，排序需要指定
-            indexSpecs.add(new IndexSpec()
-                .setName("spec.name")
-                .setIndexFunc(simpleAttribute(Consultation.class,
-                    consultation -> String.valueOf(consultation.getSpec().getName())))
-            );
-            indexSpecs.add(new IndexSpec()
-                .setName("spec.status")
-                .setIndexFunc(simpleAttribute(Consultation.class,
-                    consultation -> String.valueOf(consultation.getSpec().getStatus())))
-            );
-            indexSpecs.add(new IndexSpec()
-                .setName("spec.email")
-                .setIndexFunc(simpleAttribute(Consultation.class,
-                    consultation -> String.valueOf(consultation.getSpec().getEmail())))
-            );
-            indexSpecs.add(new IndexSpec()
-                .setName("spec.content")
-                .setIndexFunc(simpleAttribute(Consultation.class,
-                    consultation -> String.valueOf(consultation.getSpec().getContent())))
-            );
-        });
-        System.out.println("插件启动成功！");
+        schemeManager.register(Consultation.class,
+            slowQueryLog.indexed(Consultation.class, ExtensionIndexes::consultation));
+        // 预渲染队列需要在产品目录首次加载之前就绪
+        staticPageRenderer.start();
+        // 产品目录快照依赖上面注册的 Scheme
+        productCatalog.start();
+        homePageContent.start();
+        // 主题变更时淘汰渲染缓存
+        activeTheme.start();
+        // 重放上次未写入的咨询提交
+        consultationIngestBuffer.start();
+        log.info("插件启动成功！");
 
     }
 
     @Override
     public void stop() {
+        // 先写完缓冲中的咨询提交，再注销 Scheme
+        consultationIngestBuffer.stop();
+        activeTheme.stop();
+        homePageContent.stop();
+        productCatalog.stop();
+        staticPageRenderer.stop();
         Scheme bannerScheme = schemeManager.get(Banner.class);
         schemeManager.unregister(bannerScheme);
         Scheme timelineScheme = schemeManager.get(Timeline.class);
@@ -168,6 +131,8 @@ public class ValvePlugin extends BasePlugin {
         schemeManager.unregister(productSchema);
         Scheme consultationSchema = schemeManager.get(Consultation.class);
         schemeManager.unregister(consultationSchema);
-        System.out.println("插件停止！");
+        pluginMetrics.close();
+        slowQueryLog.clear();
+        log.info("插件停止！");
     }
 }
@@ -2,11 +2,19 @@ package zpl.valve.plugin.api;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.server.RouterFunction;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ServerWebInputException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import run.halo.app.extension.ListOptions;
 import run.halo.app.extension.Metadata;
@@ -15,10 +23,20 @@ import run.halo.app.extension.ReactiveExtensionClient;
 import run.halo.app.extension.index.query.Query;
 import run.halo.app.extension.index.query.QueryFactory;
 import run.halo.app.extension.router.selector.FieldSelector;
+import zpl.valve.plugin.cache.ConditionalJsonResponses;
+import zpl.valve.plugin.client.CoalescingReader;
+import zpl.valve.plugin.dedup.ConsultationDeduplicator;
 import zpl.valve.plugin.extension.Consultation;
+import zpl.valve.plugin.ingest.ConsultationIngestBuffer;
+import zpl.valve.plugin.metrics.PluginMetrics;
+import zpl.valve.plugin.metrics.QueryShape;
+import zpl.valve.plugin.ratelimit.ConsultationRateLimiter;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
 import static org.springframework.web.reactive.function.server.RequestPredicates.POST;
@@ -27,41 +45,182 @@ import static org.springframework.web.reactive.function.server.RouterFunctions.r
 @Configuration
 public class ConsultationApi {
 
+    /**
+     * 游标分页支持的排序字段。
+     */
+    private static final KeysetPagination<Consultation> KEYSET = new KeysetPagination<>(Map.of(
+        "metadata.creationTimestamp",
+        consultation -> consultation.getMetadata().getCreationTimestamp().toString(),
+        "metadata.name", consultation -> consultation.getMetadata().getName()
+    ), "metadata.creationTimestamp,desc");
+
+    /**
+     * 导出时每批从存储读取的条数。
+     */
+    static final int EXPORT_BATCH_SIZE = 500;
+
+    private static final String RESPOND_ASYNC = "respond-async";
+
+    private static final String PREFERENCE_APPLIED = "Preference-Applied";
+
     private final ReactiveExtensionClient client;
 
-    public ConsultationApi(ReactiveExtensionClient client) {
+    private final CoalescingReader reader;
+
+    private final ConsultationIngestBuffer ingestBuffer;
+
+    private final ConsultationRateLimiter rateLimiter;
+
+    private final ConsultationDeduplicator deduplicator;
+
+    private final ConditionalJsonResponses responses;
+
+    private final PluginMetrics pluginMetrics;
+
+    public ConsultationApi(ReactiveExtensionClient client, CoalescingReader reader,
+        ConsultationIngestBuffer ingestBuffer, ConsultationRateLimiter rateLimiter,
+        ConsultationDeduplicator deduplicator, ConditionalJsonResponses responses,
+        PluginMetrics pluginMetrics) {
         this.client = client;
+        this.reader = reader;
+        this.ingestBuffer = ingestBuffer;
+        this.rateLimiter = rateLimiter;
+        this.deduplicator = deduplicator;
+        this.responses = responses;
+        this.pluginMetrics = pluginMetrics;
     }
 
     @Bean
     public RouterFunction<ServerResponse> consultationRoutes() {
         return route(GET("/apis/api.consultation.plugin.halo.run/v1alpha1/consultations"),
             this::listConsultations)
-            .andRoute(POST("/apis/api.consultation.plugin.halo.run/v1alpha1/consultations"),
-                this::createConsultation);
+            .andRoute(GET("/apis/api.consultation.plugin.halo.run/v1alpha1/consultations/-/export"),
+                this::exportConsultations)
+            .and(route(POST("/apis/api.consultation.plugin.halo.run/v1alpha1/consultations"),
+                this::createConsultation)
+                .filter(rateLimiter.byClientIp()))
+            .filter(pluginMetrics.routes());
     }
 
     private Mono<ServerResponse> listConsultations(ServerRequest request) {
+        if (KeysetPagination.isRequested(request)) {
+            return Mono.fromSupplier(() -> buildListOptions(request))
+                .flatMap(options -> KEYSET.list(request, options,
+                    (keysetOptions, pageRequest) -> reader.listBy(Consultation.class,
+                        keysetOptions, pageRequest)))
+                .flatMap(page -> responses.ok(request, page, page.items(), page.hasNext(),
+                    page.nextCursor()));
+        }
         return Mono.just(request)
             .map(this::buildListOptions)
             .flatMap(options -> {
                 PageRequestImpl pageRequest = buildPageRequest(request);
-                return client.listBy(Consultation.class, options, pageRequest);
+                return reader.listBy(Consultation.class, options, pageRequest);
             })
-            .flatMap(result -> ServerResponse.ok().bodyValue(result));
+            .flatMap(result -> responses.ok(request, result, result.getItems(),
+                result.getTotal()));
     }
 
+    /**
+     * 按列表接口相同的过滤条件导出咨询，{@code format} 可选 {@code ndjson}（默认）或 {@code csv}。
+     * <p>数据按游标分批读取并逐行写出，客户端读取较慢时会暂停读取下一批，内存占用与导出总量无关。</p>
+     */
+    private Mono<ServerResponse> exportConsultations(ServerRequest request) {
+        return Mono.fromSupplier(() -> ConsultationExportFormat.of(
+                request.queryParam("format").orElse("ndjson")))
+            .flatMap(format -> {
+                ListOptions options = buildListOptions(request);
+                String sort = request.queryParam("sort").orElse("metadata.creationTimestamp,desc");
+                Flux<DataBuffer> body = Flux.concat(
+                    Mono.fromSupplier(format::header),
+                    KEYSET.stream(options, sort, EXPORT_BATCH_SIZE,
+                            (batchOptions, pageRequest) -> pluginMetrics.store("listBy",
+                                Consultation.class, batchOptions,
+                                client.listBy(Consultation.class, batchOptions, pageRequest)))
+                        .map(format::row))
+                    .filter(bytes -> bytes.length > 0)
+                    .map(DefaultDataBufferFactory.sharedInstance::wrap);
+                return ServerResponse.ok()
+                    .contentType(format.mediaType())
+                    .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(format.fileName())
+                        .build()
+                        .toString())
+                    .body(BodyInserters.fromDataBuffers(body));
+            });
+    }
+
+    /**
+     * 创建咨询。是否先写入本地缓冲由服务端决定（{@link ConsultationIngestBuffer#shouldBuffer()}），
+     * 缓冲时返回 202，由后台批量写入存储，响应中的名称即最终创建的咨询名称；请求头带
+     * {@code Prefer: respond-async} 时同时返回 {@code Preference-Applied}。否则直接写入并返回 200。
+     * <p>提交按客户端 IP（路由过滤器）和邮箱限流，超出时返回 429。
+     * 一小时内内容相同的重复提交不会再次创建，直接返回已有的咨询。</p>
+     */
     private Mono<ServerResponse> createConsultation(ServerRequest request) {
         return request.bodyToMono(Consultation.ConsultationSpec.class)
-            .map(spec -> {
+            .switchIfEmpty(Mono.error(
+                () -> new ServerWebInputException("Request body is required")))
+            .flatMap(spec -> rateLimiter.checkEmail(spec.getEmail())
+                .switchIfEmpty(Mono.defer(() -> ingestBuffer.shouldBuffer()
+                    ? submit(spec, prefersAsync(request)) : create(spec))));
+    }
+
+    private Mono<ServerResponse> submit(Consultation.ConsultationSpec spec,
+        boolean prefersAsync) {
+        validate(spec);
+        return deduplicator.submit(spec, () -> ingestBuffer.submit(spec))
+            .flatMap(result -> {
+                ServerResponse.BodyBuilder accepted = ServerResponse.accepted();
+                if (prefersAsync) {
+                    accepted.header(PREFERENCE_APPLIED, RESPOND_ASYNC);
+                }
+                return accepted.bodyValue(Map.of("name", result.name()));
+            });
+    }
+
+    /**
+     * 同步创建，重复提交时返回已有的咨询。
+     */
+    private Mono<ServerResponse> create(Consultation.ConsultationSpec spec) {
+        AtomicReference<Consultation> created = new AtomicReference<>();
+        return deduplicator.submit(spec, () -> {
                 Consultation consultation = new Consultation();
                 consultation.setSpec(spec);
                 consultation.setMetadata(new Metadata());
                 consultation.getMetadata().setGenerateName("consultation-");
-                return consultation;
+                return ingestBuffer.writeThrough(pluginMetrics.store("create",
+                        Consultation.class, QueryShape.WRITE, client.create(consultation)))
+                    .doOnNext(created::set)
+                    .map(result -> result.getMetadata().getName());
             })
-            .flatMap(client::create)
-            .flatMap(created -> ServerResponse.ok().bodyValue(created));
+            .flatMap(result -> result.duplicate()
+                ? pluginMetrics.store("fetch", Consultation.class, QueryShape.BY_NAME,
+                        client.fetch(Consultation.class, result.name()))
+                    .flatMap(existing -> ServerResponse.ok().bodyValue(existing))
+                    // 已有咨询可能还在写后缓冲中
+                    .switchIfEmpty(Mono.defer(() -> ServerResponse.accepted()
+                        .bodyValue(Map.of("name", result.name()))))
+                : ServerResponse.ok().bodyValue(created.get()));
+    }
+
+    private static boolean prefersAsync(ServerRequest request) {
+        return request.headers().header("Prefer").stream()
+            .flatMap(value -> Arrays.stream(value.split(",")))
+            .anyMatch(preference -> RESPOND_ASYNC.equalsIgnoreCase(preference.trim()));
+    }
+
+    /**
+     * 异步写入时无法把存储的校验结果返回给客户端，提前校验必填字段。
+     */
+    private static void validate(Consultation.ConsultationSpec spec) {
+        if (!StringUtils.hasText(spec.getName()) || !StringUtils.hasText(spec.getEmail())
+            || !StringUtils.hasText(spec.getContent())) {
+            throw new ServerWebInputException("name, email and content are required");
+        }
+        if (!StringUtils.hasText(spec.getStatus())) {
+            spec.setStatus("Unread");
+        }
     }
 
     private PageRequestImpl buildPageRequest(ServerRequest request) {
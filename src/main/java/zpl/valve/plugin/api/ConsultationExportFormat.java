@@ -0,0 +1,121 @@
+package zpl.valve.plugin.api;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.springframework.http.MediaType;
+import org.springframework.web.server.ServerWebInputException;
+import run.halo.app.infra.utils.JsonUtils;
+import zpl.valve.plugin.extension.Consultation;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 咨询导出格式，每条咨询编码为独立的一行，便于逐行写出。
+ */
+enum ConsultationExportFormat {
+
+    NDJSON(new MediaType("application", "x-ndjson", StandardCharsets.UTF_8), "ndjson") {
+        @Override
+        byte[] header() {
+            return new byte[0];
+        }
+
+        @Override
+        byte[] row(Consultation consultation) {
+            try {
+                byte[] json = JsonUtils.mapper().writeValueAsBytes(fields(consultation));
+                byte[] line = new byte[json.length + 1];
+                System.arraycopy(json, 0, line, 0, json.length);
+                line[json.length] = '\n';
+                return line;
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException(
+                    "Failed to serialize consultation " + consultation.getMetadata().getName(), e);
+            }
+        }
+    },
+
+    CSV(new MediaType("text", "csv", StandardCharsets.UTF_8), "csv") {
+        @Override
+        byte[] header() {
+            // 带 BOM，避免 Excel 打开中文内容时乱码
+            return ("\uFEFF" + String.join(",", COLUMNS) + "\r\n")
+                .getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        byte[] row(Consultation consultation) {
+            StringBuilder line = new StringBuilder();
+            for (Object value : fields(consultation).values()) {
+                if (!line.isEmpty()) {
+                    line.append(',');
+                }
+                line.append(escapeCsv(value == null ? "" : value.toString()));
+            }
+            return line.append("\r\n").toString().getBytes(StandardCharsets.UTF_8);
+        }
+    };
+
+    private static final String[] COLUMNS =
+        {"metadataName", "creationTimestamp", "name", "email", "content", "status"};
+
+    private final MediaType mediaType;
+
+    private final String extension;
+
+    ConsultationExportFormat(MediaType mediaType, String extension) {
+        this.mediaType = mediaType;
+        this.extension = extension;
+    }
+
+    static ConsultationExportFormat of(String format) {
+        for (ConsultationExportFormat value : values()) {
+            if (value.extension.equalsIgnoreCase(format)) {
+                return value;
+            }
+        }
+        throw new ServerWebInputException("Unsupported export format: " + format);
+    }
+
+    MediaType mediaType() {
+        return mediaType;
+    }
+
+    String fileName() {
+        return "consultations." + extension;
+    }
+
+    /**
+     * 文件开头的内容，例如 CSV 的表头。
+     */
+    abstract byte[] header();
+
+    abstract byte[] row(Consultation consultation);
+
+    private static Map<String, Object> fields(Consultation consultation) {
+        Consultation.ConsultationSpec spec = consultation.getSpec();
+        Instant creationTimestamp = consultation.getMetadata().getCreationTimestamp();
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put(COLUMNS[0], consultation.getMetadata().getName());
+        fields.put(COLUMNS[1], creationTimestamp == null ? null : creationTimestamp.toString());
+        fields.put(COLUMNS[2], spec == null ? null : spec.getName());
+        fields.put(COLUMNS[3], spec == null ? null : spec.getEmail());
+        fields.put(COLUMNS[4], spec == null ? null : spec.getContent());
+        fields.put(COLUMNS[5], spec == null ? null : spec.getStatus());
+        return fields;
+    }
+
+    private static String escapeCsv(String value) {
+        // 咨询内容来自公开表单，以公式字符开头时加前缀，防止在表格软件中被当作公式执行
+        if (!value.isEmpty() && "=+-@".indexOf(value.charAt(0)) >= 0) {
+            value = "'" + value;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0
+            && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,83 @@
+package zpl.valve.plugin.api;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ServerWebInputException;
+import reactor.core.publisher.Mono;
+import zpl.valve.plugin.image.ImageDerivativeService;
+import zpl.valve.plugin.image.ImageVariants;
+import zpl.valve.plugin.metrics.PluginMetrics;
+
+import java.time.Duration;
+
+import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
+import static org.springframework.web.reactive.function.server.RouterFunctions.route;
+
+/**
+ * 图片衍生版本接口，地址由 {@link ImageVariants} 生成。
+ * <p>文件通过 {@link FileSystemResource} 写出，支持零拷贝传输。缓存键包含源文件版本，
+ * 因此可以设置一年的强缓存。</p>
+ */
+@Configuration
+public class ImageDerivativeApi {
+
+    private static final CacheControl CACHE_CONTROL =
+        CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable();
+
+    private static final MediaType WEBP = MediaType.parseMediaType("image/webp");
+
+    private final ImageDerivativeService imageDerivativeService;
+
+    private final PluginMetrics pluginMetrics;
+
+    public ImageDerivativeApi(ImageDerivativeService imageDerivativeService,
+        PluginMetrics pluginMetrics) {
+        this.imageDerivativeService = imageDerivativeService;
+        this.pluginMetrics = pluginMetrics;
+    }
+
+    @Bean
+    public RouterFunction<ServerResponse> imageDerivativeRoute() {
+        return route(GET(ImageVariants.ENDPOINT), this::derivative)
+            .filter(pluginMetrics.routes());
+    }
+
+    private Mono<ServerResponse> derivative(ServerRequest request) {
+        String src = request.queryParam("src")
+            .orElseThrow(() -> new ServerWebInputException("src is required"));
+        int width = parseWidth(request.queryParam("w").orElse(null));
+        String format = request.queryParam("format").orElse(ImageVariants.DEFAULT_FORMAT);
+        if (!ImageDerivativeService.isFormatSupported(format)) {
+            throw new ServerWebInputException("Unsupported format: " + format);
+        }
+        return imageDerivativeService.derive(src, width, format)
+            .flatMap(derivative -> request.checkNotModified(derivative.key())
+                .switchIfEmpty(Mono.defer(() -> ServerResponse.ok()
+                    .contentType(ImageVariants.WEBP.equals(derivative.format())
+                        ? WEBP : MediaType.IMAGE_JPEG)
+                    .eTag(derivative.key())
+                    .cacheControl(CACHE_CONTROL)
+                    .body(BodyInserters.fromResource(
+                        new FileSystemResource(derivative.path()))))))
+            .switchIfEmpty(Mono.defer(() -> ServerResponse.notFound().build()));
+    }
+
+    private static int parseWidth(String value) {
+        try {
+            int width = Integer.parseInt(value);
+            if (ImageVariants.WIDTHS.contains(width)) {
+                return width;
+            }
+        } catch (NumberFormatException e) {
+            // 按不支持的宽度处理
+        }
+        throw new ServerWebInputException("w must be one of " + ImageVariants.WIDTHS);
+    }
+}
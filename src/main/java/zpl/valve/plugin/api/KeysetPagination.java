@@ -0,0 +1,226 @@
+package zpl.valve.plugin.api;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.server.ServerWebInputException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import run.halo.app.extension.Extension;
+import run.halo.app.extension.ListOptions;
+import run.halo.app.extension.ListResult;
+import run.halo.app.extension.PageRequest;
+import run.halo.app.extension.PageRequestImpl;
+import run.halo.app.extension.index.query.Query;
+import run.halo.app.extension.index.query.QueryFactory;
+import run.halo.app.extension.router.selector.FieldSelector;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * 基于游标（keyset）的分页。
+ * <p>请求携带 {@code cursor} 参数时启用：空值表示第一页，之后传入上一页返回的
+ * {@code nextCursor}。游标记录上一页最后一条数据的排序键和 {@code metadata.name}，
+ * 下一页通过范围条件直接定位，不再跳过前面的数据，因此翻到多深开销都一样，
+ * 并发插入也不会导致数据重复或遗漏。</p>
+ * <p>排序字段固定以 {@code metadata.name} 作为第二排序键保证顺序唯一，
+ * 只允许使用构造时登记的排序字段。排序键不能为 null：游标无法表示 null 的位置，
+ * 可能为空的数值字段应编码为 {@code SortableNumbers#NULL}。</p>
+ *
+ * @param <E> 扩展类型
+ */
+final class KeysetPagination<E extends Extension> {
+
+    static final String CURSOR_PARAM = "cursor";
+
+    private static final String NAME_FIELD = "metadata.name";
+
+    private static final String SEPARATOR = "\u0000";
+
+    private final Map<String, Function<E, String>> sortKeys;
+
+    private final String defaultSort;
+
+    /**
+     * @param sortKeys 可用的排序字段及从扩展中取出对应索引值的函数，函数不能返回 null
+     * @param defaultSort 未指定 {@code sort} 参数时的排序，格式同 {@code sort} 参数
+     */
+    KeysetPagination(Map<String, Function<E, String>> sortKeys, String defaultSort) {
+        this.sortKeys = sortKeys;
+        this.defaultSort = defaultSort;
+    }
+
+    static boolean isRequested(ServerRequest request) {
+        return request.queryParam(CURSOR_PARAM).isPresent();
+    }
+
+    /**
+     * 按游标查询一页数据。
+     *
+     * @param options 其他过滤条件，会与游标条件合并
+     * @param lister 实际执行分页查询的函数
+     */
+    Mono<CursorPage<E>> list(ServerRequest request, ListOptions options,
+        BiFunction<ListOptions, PageRequest, Mono<ListResult<E>>> lister) {
+        return Mono.defer(() -> {
+            Cursor cursor = Cursor.from(request, defaultSort);
+            return page(options, cursor, size(request), lister);
+        });
+    }
+
+    /**
+     * 读取 {@code size} 参数，默认 10。
+     *
+     * @throws ServerWebInputException 不是正整数时
+     */
+    static int size(ServerRequest request) {
+        String value = request.queryParam("size").orElse("10");
+        try {
+            int size = Integer.parseInt(value);
+            if (size > 0) {
+                return size;
+            }
+        } catch (NumberFormatException e) {
+            // 按不合法的取值处理
+        }
+        throw new ServerWebInputException("Invalid size: " + value);
+    }
+
+    /**
+     * 按游标逐批读取所有符合条件的数据。
+     * <p>下游消费完当前批次后才会查询下一批，内存中最多保留一批数据，适合导出等大量数据的场景。</p>
+     *
+     * @param sort 排序，格式同 {@code sort} 参数
+     * @param batchSize 每批查询的条数
+     */
+    Flux<E> stream(ListOptions options, String sort, int batchSize,
+        BiFunction<ListOptions, PageRequest, Mono<ListResult<E>>> lister) {
+        return Mono.defer(() -> page(options, Cursor.start(sort), batchSize, lister))
+            .expand(page -> page.hasNext()
+                ? page(options, Cursor.decode(page.nextCursor()), batchSize, lister)
+                : Mono.empty())
+            .concatMapIterable(CursorPage::items, 1);
+    }
+
+    private Mono<CursorPage<E>> page(ListOptions options, Cursor cursor, int size,
+        BiFunction<ListOptions, PageRequest, Mono<ListResult<E>>> lister) {
+        Function<E, String> sortKey = sortKeys.get(cursor.field());
+        if (sortKey == null) {
+            return Mono.error(new ServerWebInputException(
+                "Unsupported sort field for cursor pagination: " + cursor.field()));
+        }
+        ListOptions pageOptions = new ListOptions();
+        pageOptions.setLabelSelector(options.getLabelSelector());
+        pageOptions.setFieldSelector(cursor.hasPosition()
+            ? FieldSelector.of(and(options.getFieldSelector(), seek(cursor)))
+            : options.getFieldSelector());
+        // 多取一条用于判断是否还有下一页
+        PageRequest pageRequest = PageRequestImpl.of(1, size + 1, sort(cursor));
+        return lister.apply(pageOptions, pageRequest)
+            .map(result -> toPage(result.getItems(), size, cursor, sortKey));
+    }
+
+    private CursorPage<E> toPage(List<E> items, int size, Cursor cursor,
+        Function<E, String> sortKey) {
+        boolean hasNext = items.size() > size;
+        List<E> page = hasNext ? items.subList(0, size) : items;
+        String nextCursor = null;
+        if (hasNext) {
+            E last = page.get(page.size() - 1);
+            String lastKey = sortKey.apply(last);
+            if (lastKey == null) {
+                // 写成字符串 "null" 会让下一页从错误的位置开始
+                throw new IllegalStateException("Null sort key " + cursor.field() + " on "
+                    + last.getMetadata().getName() + ", cannot build the next cursor");
+            }
+            nextCursor = new Cursor(cursor.field(), cursor.descending(), lastKey,
+                last.getMetadata().getName()).encode();
+        }
+        return new CursorPage<>(page, size, hasNext, nextCursor);
+    }
+
+    private static Sort sort(Cursor cursor) {
+        Sort.Direction direction = cursor.descending() ? Sort.Direction.DESC : Sort.Direction.ASC;
+        Sort sort = Sort.by(direction, cursor.field());
+        return NAME_FIELD.equals(cursor.field()) ? sort : sort.and(Sort.by(direction, NAME_FIELD));
+    }
+
+    /**
+     * 定位到游标之后的数据：降序时为 (key &lt; v) 或 (key = v 且 name &lt; n)，升序反之。
+     */
+    private static Query seek(Cursor cursor) {
+        boolean desc = cursor.descending();
+        Query afterName = desc
+            ? QueryFactory.lessThan(NAME_FIELD, cursor.lastName())
+            : QueryFactory.greaterThan(NAME_FIELD, cursor.lastName());
+        if (NAME_FIELD.equals(cursor.field())) {
+            return afterName;
+        }
+        Query afterKey = desc
+            ? QueryFactory.lessThan(cursor.field(), cursor.lastKey())
+            : QueryFactory.greaterThan(cursor.field(), cursor.lastKey());
+        return QueryFactory.or(afterKey,
+            QueryFactory.and(QueryFactory.equal(cursor.field(), cursor.lastKey()), afterName));
+    }
+
+    private static Query and(FieldSelector existing, Query query) {
+        return existing == null ? query : QueryFactory.and(existing.query(), query);
+    }
+
+    /**
+     * 游标分页的返回结果。
+     *
+     * @param items 本页数据
+     * @param size 每页条数
+     * @param hasNext 是否还有下一页
+     * @param nextCursor 下一页的游标，没有下一页时为 null
+     */
+    public record CursorPage<T>(List<T> items, int size, boolean hasNext, String nextCursor) {
+    }
+
+    record Cursor(String field, boolean descending, String lastKey, String lastName) {
+
+        static Cursor from(ServerRequest request, String defaultSort) {
+            String token = request.queryParam(CURSOR_PARAM).orElse("");
+            if (!token.isEmpty()) {
+                return decode(token);
+            }
+            return start(request.queryParam("sort").orElse(defaultSort));
+        }
+
+        static Cursor start(String sort) {
+            String[] sortParams = sort.split(",");
+            boolean descending = sortParams.length > 1 && "desc".equalsIgnoreCase(sortParams[1]);
+            return new Cursor(sortParams[0], descending, null, null);
+        }
+
+        boolean hasPosition() {
+            return lastName != null;
+        }
+
+        String encode() {
+            String raw = String.join(SEPARATOR, field, descending ? "desc" : "asc",
+                lastKey, lastName);
+            return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String token) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(token),
+                    StandardCharsets.UTF_8);
+                String[] parts = raw.split(SEPARATOR, -1);
+                if (parts.length != 4) {
+                    throw new IllegalArgumentException("Unexpected cursor layout");
+                }
+                return new Cursor(parts[0], "desc".equals(parts[1]), parts[2], parts[3]);
+            } catch (IllegalArgumentException e) {
+                throw new ServerWebInputException("Invalid cursor: " + token);
+            }
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package zpl.valve.plugin.api;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.StringDecoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.MediaType;
+import org.springframework.util.StringUtils;
+import org.springframework.web.reactive.function.BodyExtractors;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ServerWebInputException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import run.halo.app.extension.ListOptions;
+import run.halo.app.extension.Metadata;
+import run.halo.app.extension.ReactiveExtensionClient;
+import run.halo.app.infra.utils.JsonUtils;
+import zpl.valve.plugin.extension.Product;
+import zpl.valve.plugin.extension.ProductCategory;
+import zpl.valve.plugin.index.ProductSkus;
+import zpl.valve.plugin.metrics.PluginMetrics;
+import zpl.valve.plugin.metrics.QueryShape;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.springframework.web.reactive.function.server.RequestPredicates.POST;
+import static org.springframework.web.reactive.function.server.RouterFunctions.route;
+
+/**
+ * 产品批量导入。
+ * <p>上传内容逐行解析（格式见 {@link ProductImportParser}），按 {@code batchSize} 分批处理，
+ * 每批内最多 {@code parallelism} 个写入同时进行，上一批完成后才读取下一批，
+ * 因此上传文件不会整体加载到内存中。</p>
+ * <p>响应为 NDJSON：每行对应一条导入记录的结果，最后一行是汇总及吞吐量。</p>
+ */
+@Slf4j
+@Configuration
+public class ProductImportApi {
+
+    static final int DEFAULT_PARALLELISM = 4;
+    static final int MAX_PARALLELISM = 16;
+    static final int DEFAULT_BATCH_SIZE = 50;
+    static final int MAX_BATCH_SIZE = 500;
+
+    static final String MODE_CREATE = "create";
+    static final String MODE_UPSERT = "upsert";
+
+    private static final MediaType NDJSON =
+        new MediaType("application", "x-ndjson", StandardCharsets.UTF_8);
+
+    private final ReactiveExtensionClient client;
+
+    private final PluginMetrics pluginMetrics;
+
+    public ProductImportApi(ReactiveExtensionClient client, PluginMetrics pluginMetrics) {
+        this.client = client;
+        this.pluginMetrics = pluginMetrics;
+    }
+
+    @Bean
+    public RouterFunction<ServerResponse> productImportRoute() {
+        return route(POST("/apis/console.api.product.plugin.valve.zpl/v1alpha1/products/-/import"),
+            this::importProducts)
+            .filter(pluginMetrics.routes());
+    }
+
+    private Mono<ServerResponse> importProducts(ServerRequest request) {
+        String format = request.queryParam("format").orElseGet(() -> request.headers()
+            .contentType()
+            .filter(type -> "csv".equalsIgnoreCase(type.getSubtype()))
+            .map(type -> "csv")
+            .orElse("ndjson"));
+        String mode = request.queryParam("mode").orElse(MODE_CREATE);
+        if (!MODE_CREATE.equalsIgnoreCase(mode) && !MODE_UPSERT.equalsIgnoreCase(mode)) {
+            return Mono.error(new ServerWebInputException("Unsupported import mode: " + mode));
+        }
+        boolean upsert = MODE_UPSERT.equalsIgnoreCase(mode);
+        int parallelism = boundedParam(request, "parallelism", DEFAULT_PARALLELISM,
+            MAX_PARALLELISM);
+        int batchSize = boundedParam(request, "batchSize", DEFAULT_BATCH_SIZE, MAX_BATCH_SIZE);
+
+        Flux<String> lines = StringDecoder.textPlainOnly().decode(
+            request.body(BodyExtractors.toDataBuffers()),
+            ResolvableType.forClass(String.class), null, Map.of());
+
+        Flux<DataBuffer> body = Flux.defer(() -> {
+            ImportProgress progress = new ImportProgress();
+            return listCategoryNames()
+                .flatMapMany(categories -> ProductImportParser.parse(lines, format)
+                    .buffer(batchSize)
+                    .concatMap(batch -> Flux.fromIterable(batch)
+                        .flatMapSequential(row -> importRow(row, categories, upsert),
+                            parallelism)))
+                .doOnNext(progress::record)
+                .map(ProductImportApi::toLine)
+                .concatWith(Mono.fromSupplier(() -> {
+                    ImportSummary summary = progress.summary();
+                    log.info("Product import finished: {}", summary);
+                    return toLine(summary);
+                }));
+        }).map(DefaultDataBufferFactory.sharedInstance::wrap);
+
+        return ServerResponse.ok()
+            .contentType(NDJSON)
+            .body(BodyInserters.fromDataBuffers(body));
+    }
+
+    private Mono<Set<String>> listCategoryNames() {
+        ListOptions options = new ListOptions();
+        return pluginMetrics.store("listAll", ProductCategory.class, options,
+                client.listAll(ProductCategory.class, options, Sort.unsorted()))
+            .filter(category -> category.getMetadata().getDeletionTimestamp() == null)
+            .map(category -> category.getMetadata().getName())
+            .collect(Collectors.toSet());
+    }
+
+    private Mono<RowResult> importRow(ProductImportParser.Row row, Set<String> categories,
+        boolean upsert) {
+        if (row.error() != null) {
+            return Mono.just(RowResult.failed(row, row.error()));
+        }
+        Product.ProductSpec spec = row.spec();
+        String invalid = validate(spec, categories);
+        if (invalid != null) {
+            return Mono.just(RowResult.failed(row, invalid));
+        }
+        return checkSku(row, spec)
+            .switchIfEmpty(Mono.defer(() -> write(row, spec, upsert)))
+            .onErrorResume(e -> Mono.just(RowResult.failed(row, e.getMessage())));
+    }
+
+    /**
+     * 编号已被其他产品使用时返回失败结果，否则返回空。
+     * 并发写入同一编号时由唯一索引拒绝后到的一个。
+     */
+    private Mono<RowResult> checkSku(ProductImportParser.Row row, Product.ProductSpec spec) {
+        if (spec.getSku() == null) {
+            return Mono.empty();
+        }
+        ListOptions options = ProductSkus.lookup(List.of(spec.getSku()));
+        return pluginMetrics.store("listAll", Product.class, options,
+                client.listAll(Product.class, options, Sort.unsorted()))
+            .filter(existing -> !existing.getMetadata().getName().equals(row.metadataName()))
+            .next()
+            .map(existing -> RowResult.failed(row, "SKU " + spec.getSku()
+                + " is already used by " + existing.getMetadata().getName()));
+    }
+
+    private Mono<RowResult> write(ProductImportParser.Row row, Product.ProductSpec spec,
+        boolean upsert) {
+        if (StringUtils.hasText(row.metadataName())) {
+            return pluginMetrics.store("fetch", Product.class, QueryShape.BY_NAME,
+                    client.fetch(Product.class, row.metadataName()))
+                .flatMap(existing -> {
+                    if (!upsert) {
+                        return Mono.just(RowResult.failed(row,
+                            "Product " + row.metadataName() + " already exists"));
+                    }
+                    existing.setSpec(spec);
+                    return pluginMetrics.store("update", Product.class, QueryShape.WRITE,
+                            client.update(existing))
+                        .map(updated -> RowResult.of(row, RowResult.UPDATED, updated));
+                })
+                .switchIfEmpty(Mono.defer(() -> create(row, spec)));
+        }
+        return create(row, spec);
+    }
+
+    private Mono<RowResult> create(ProductImportParser.Row row, Product.ProductSpec spec) {
+        Product product = new Product();
+        product.setSpec(spec);
+        product.setMetadata(new Metadata());
+        if (StringUtils.hasText(row.metadataName())) {
+            product.getMetadata().setName(row.metadataName());
+        } else {
+            product.getMetadata().setGenerateName("product-");
+        }
+        return pluginMetrics.store("create", Product.class, QueryShape.WRITE,
+                client.create(product))
+            .map(created -> RowResult.of(row, RowResult.CREATED, created));
+    }
+
+    /**
+     * 校验必填字段和分类引用，并补齐默认值，返回错误信息，校验通过时返回 null。
+     */
+    private static String validate(Product.ProductSpec spec, Set<String> categories) {
+        if (!StringUtils.hasText(spec.getName())) {
+            return "name is required";
+        }
+        if (!StringUtils.hasText(spec.getCategoryMetadataName())) {
+            return "categoryMetadataName is required";
+        }
+        if (!categories.contains(spec.getCategoryMetadataName())) {
+            return "Unknown category: " + spec.getCategoryMetadataName();
+        }
+        if (spec.getStandards() == null) {
+            spec.setStandards(new ArrayList<>());
+        }
+        if (spec.getStandards().stream()
+            .anyMatch(standard -> standard == null || !StringUtils.hasText(standard.getName()))) {
+            return "Standard name is required";
+        }
+        if (spec.getImages() == null) {
+            spec.setImages(new ArrayList<>());
+        }
+        if (spec.getImages().stream()
+            .anyMatch(image -> image == null || !StringUtils.hasText(image.getUrl()))) {
+            return "Image url is required";
+        }
+        if (spec.getPriority() == null) {
+            spec.setPriority(0);
+        }
+        spec.setSku(ProductSkus.normalize(spec.getSku()));
+        return null;
+    }
+
+    private static int boundedParam(ServerRequest request, String name, int defaultValue,
+        int max) {
+        String value = request.queryParam(name).orElse(null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed < 1 || parsed > max) {
+                throw new ServerWebInputException(name + " must be between 1 and " + max);
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new ServerWebInputException("Invalid " + name + ": " + value);
+        }
+    }
+
+    private static byte[] toLine(Object value) {
+        try {
+            byte[] json = JsonUtils.mapper().writeValueAsBytes(value);
+            byte[] line = new byte[json.length + 1];
+            System.arraycopy(json, 0, line, 0, json.length);
+            line[json.length] = '\n';
+            return line;
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize import report", e);
+        }
+    }
+
+    /**
+     * 单条记录的导入结果。
+     *
+     * @param line 记录在上传内容中的起始行号
+     * @param status {@link #CREATED}、{@link #UPDATED} 或 {@link #FAILED}
+     * @param name 产品名称（{@code metadata.name}）
+     * @param error 失败原因
+     */
+    public record RowResult(int line, String status, String name, String error) {
+
+        static final String CREATED = "created";
+        static final String UPDATED = "updated";
+        static final String FAILED = "failed";
+
+        static RowResult of(ProductImportParser.Row row, String status, Product product) {
+            return new RowResult(row.line(), status, product.getMetadata().getName(), null);
+        }
+
+        static RowResult failed(ProductImportParser.Row row, String error) {
+            return new RowResult(row.line(), FAILED, row.metadataName(), error);
+        }
+    }
+
+    /**
+     * 导入汇总。
+     *
+     * @param rowsPerSecond 每秒处理的记录数
+     */
+    public record ImportSummary(long total, long created, long updated, long failed,
+                                long elapsedMillis, double rowsPerSecond) {
+    }
+
+    /**
+     * 导入进度，结果按顺序逐条记录，不存在并发访问。
+     */
+    private static final class ImportProgress {
+
+        private final long startNanos = System.nanoTime();
+
+        private long created;
+
+        private long updated;
+
+        private long failed;
+
+        void record(RowResult result) {
+            switch (result.status()) {
+                case RowResult.CREATED -> created++;
+                case RowResult.UPDATED -> updated++;
+                default -> failed++;
+            }
+        }
+
+        ImportSummary summary() {
+            long total = created + updated + failed;
+            long elapsedNanos = Math.max(System.nanoTime() - startNanos, 1);
+            double rowsPerSecond = total * 1_000_000_000d / elapsedNanos;
+            return new ImportSummary(total, created, updated, failed, elapsedNanos / 1_000_000,
+                Math.round(rowsPerSecond * 100) / 100d);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package zpl.valve.plugin.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SynchronousSink;
+import run.halo.app.infra.utils.JsonUtils;
+import zpl.valve.plugin.extension.Product;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 把逐行读取的上传内容解析为产品导入行。
+ * <p>NDJSON 每行是一个 {@link Product.ProductSpec} 对象，可额外带 {@code metadataName}
+ * 字段指定产品名称。CSV 第一行为表头，列名与 {@link #CSV_COLUMNS} 对应；
+ * {@code standards} 列格式为 {@code 名称=值;名称=值}，{@code images} 列为以 {@code ;}
+ * 分隔的图片地址，按顺序作为图片优先级。带引号的 CSV 字段可以跨行。</p>
+ * <p>解析失败的行不会中断导入，以带错误信息的行返回。CSV 表头缺少必需列时返回一条失败行并结束解析。</p>
+ */
+final class ProductImportParser {
+
+    static final String[] CSV_COLUMNS = {"metadataName", "name", "categoryMetadataName",
+        "description", "priority", "sku", "price", "standards", "images"};
+
+    private ProductImportParser() {
+    }
+
+    static Flux<Row> parse(Flux<String> lines, String format) {
+        if ("csv".equalsIgnoreCase(format)) {
+            return Flux.defer(() -> {
+                CsvState state = new CsvState();
+                return lines.handle(state::accept)
+                    .concatWith(Flux.defer(() -> Flux.fromIterable(state.finish())));
+            });
+        }
+        return Flux.defer(() -> {
+            int[] lineNumber = {0};
+            return lines.handle((String line, SynchronousSink<Row> sink) -> {
+                lineNumber[0]++;
+                if (StringUtils.hasText(line)) {
+                    sink.next(parseJson(lineNumber[0], line));
+                }
+            });
+        });
+    }
+
+    private static Row parseJson(int line, String json) {
+        try {
+            JsonNode node = JsonUtils.mapper().readTree(json);
+            if (!(node instanceof ObjectNode object)) {
+                return Row.failed(line, "Expected a JSON object");
+            }
+            JsonNode metadataName = object.remove("metadataName");
+            Product.ProductSpec spec = JsonUtils.mapper().treeToValue(object, Product.ProductSpec.class);
+            return Row.parsed(line, metadataName == null ? null : metadataName.asText(), spec);
+        } catch (Exception e) {
+            return Row.failed(line, "Malformed JSON: " + e.getMessage());
+        }
+    }
+
+    private static Row parseCsv(int line, Map<String, Integer> header, List<String> fields) {
+        try {
+            Product.ProductSpec spec = new Product.ProductSpec();
+            spec.setName(column(header, fields, "name"));
+            spec.setCategoryMetadataName(column(header, fields, "categoryMetadataName"));
+            spec.setDescription(column(header, fields, "description"));
+            spec.setSku(column(header, fields, "sku"));
+            String priority = column(header, fields, "priority");
+            spec.setPriority(priority == null ? null : Integer.valueOf(priority));
+            String price = column(header, fields, "price");
+            spec.setPrice(price == null ? null : Double.valueOf(price));
+
+            List<Product.ProductSpec.Standard> standards = new ArrayList<>();
+            String standardsColumn = column(header, fields, "standards");
+            if (standardsColumn != null) {
+                for (String pair : standardsColumn.split(";")) {
+                    if (!StringUtils.hasText(pair)) {
+                        continue;
+                    }
+                    int separator = pair.indexOf('=');
+                    if (separator <= 0) {
+                        return Row.failed(line, "Invalid standard: " + pair);
+                    }
+                    Product.ProductSpec.Standard standard = new Product.ProductSpec.Standard();
+                    standard.setName(pair.substring(0, separator).trim());
+                    standard.setValue(pair.substring(separator + 1).trim());
+                    standards.add(standard);
+                }
+            }
+            spec.setStandards(standards);
+
+            List<Product.ProductSpec.ProductImage> images = new ArrayList<>();
+            String imagesColumn = column(header, fields, "images");
+            if (imagesColumn != null) {
+                for (String url : imagesColumn.split(";")) {
+                    if (StringUtils.hasText(url)) {
+                        Product.ProductSpec.ProductImage image = new Product.ProductSpec.ProductImage();
+                        image.setUrl(url.trim());
+                        image.setPriority(images.size());
+                        images.add(image);
+                    }
+                }
+            }
+            spec.setImages(images);
+            return Row.parsed(line, column(header, fields, "metadataName"), spec);
+        } catch (NumberFormatException e) {
+            return Row.failed(line, "Invalid number: " + e.getMessage());
+        }
+    }
+
+    private static String column(Map<String, Integer> header, List<String> fields, String name) {
+        Integer index = header.get(name);
+        if (index == null || index >= fields.size()) {
+            return null;
+        }
+        String value = fields.get(index).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * 导入行。
+     *
+     * @param line 记录在上传内容中的起始行号
+     * @param metadataName 指定的产品名称，可为空
+     * @param spec 解析出的产品信息，解析失败时为空
+     * @param error 解析失败的原因
+     */
+    record Row(int line, String metadataName, Product.ProductSpec spec, String error) {
+
+        static Row parsed(int line, String metadataName, Product.ProductSpec spec) {
+            return new Row(line, metadataName, spec, null);
+        }
+
+        static Row failed(int line, String error) {
+            return new Row(line, null, null, error);
+        }
+    }
+
+    /**
+     * CSV 的逐行解析状态，处理表头和跨行的引号字段。
+     */
+    private static final class CsvState {
+
+        private Map<String, Integer> header;
+
+        private final List<String> fields = new ArrayList<>();
+
+        private final StringBuilder field = new StringBuilder();
+
+        private boolean quoted;
+
+        private int lineNumber;
+
+        private int recordStart;
+
+        void accept(String line, SynchronousSink<Row> sink) {
+            lineNumber++;
+            if (!quoted) {
+                if (line.isEmpty()) {
+                    return;
+                }
+                recordStart = lineNumber;
+            } else {
+                field.append('\n');
+            }
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (quoted) {
+                    if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else if (c == '"') {
+                        quoted = false;
+                    } else {
+                        field.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c != '\uFEFF' || lineNumber != 1 || i != 0) {
+                    field.append(c);
+                }
+            }
+            if (quoted) {
+                // 引号字段尚未结束，继续读取下一行
+                return;
+            }
+            fields.add(field.toString());
+            field.setLength(0);
+            List<String> record = List.copyOf(fields);
+            fields.clear();
+            if (header == null) {
+                header = new HashMap<>();
+                for (int i = 0; i < record.size(); i++) {
+                    header.put(record.get(i).trim(), i);
+                }
+                if (!header.containsKey("name") || !header.containsKey("categoryMetadataName")) {
+                    // 响应已经开始写出，不能再返回 400，以失败行结束导入，后面仍然输出汇总行
+                    sink.next(Row.failed(recordStart,
+                        "CSV header must contain name and categoryMetadataName columns"));
+                    sink.complete();
+                }
+                return;
+            }
+            sink.next(parseCsv(recordStart, header, record));
+        }
+
+        List<Row> finish() {
+            if (quoted) {
+                return List.of(Row.failed(recordStart, "Unterminated quoted field"));
+            }
+            return List.of();
+        }
+    }
+}
@@ -7,18 +7,34 @@ import org.springframework.util.StringUtils;
 import org.springframework.web.reactive.function.server.RouterFunction;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ServerWebInputException;
 import reactor.core.publisher.Mono;
 import run.halo.app.extension.PageRequestImpl;
-import run.halo.app.extension.ReactiveExtensionClient;
 import run.halo.app.extension.ListOptions;
+import run.halo.app.extension.ListResult;
 import run.halo.app.extension.PageRequest;
 import run.halo.app.extension.index.query.QueryFactory;
 import run.halo.app.extension.index.query.Query;
 import run.halo.app.extension.router.selector.FieldSelector;
+import zpl.valve.plugin.cache.ConditionalJsonResponses;
+import zpl.valve.plugin.catalog.CatalogSnapshot;
+import zpl.valve.plugin.catalog.ProductCatalog;
+import zpl.valve.plugin.client.CoalescingReader;
 import zpl.valve.plugin.extension.Product;
+import zpl.valve.plugin.index.ProductStandards;
+import zpl.valve.plugin.index.SortableNumbers;
+import zpl.valve.plugin.metrics.PluginMetrics;
+import zpl.valve.plugin.search.ProductFacetIndex;
+import zpl.valve.plugin.search.ProductSearchIndex;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
 import static org.springframework.web.reactive.function.server.RouterFunctions.route;
@@ -26,29 +42,186 @@ import static org.springframework.web.reactive.function.server.RouterFunctions.r
 @Configuration
 public class ProductSearchApi {
 
-    private final ReactiveExtensionClient client;
+    /**
+     * 关键词匹配方式：{@code contains} 对字段做子串匹配（默认），{@code token} 使用分词倒排索引。
+     */
+    static final String KEYWORD_MODE_CONTAINS = "contains";
+    static final String KEYWORD_MODE_TOKEN = "token";
 
-    public ProductSearchApi(ReactiveExtensionClient client) {
-        this.client = client;
+    /**
+     * 游标分页支持的排序字段，取值方式与 ValvePlugin 中注册的索引一致。
+     */
+    private static final KeysetPagination<Product> KEYSET = new KeysetPagination<>(Map.of(
+        "metadata.creationTimestamp",
+        product -> product.getMetadata().getCreationTimestamp().toString(),
+        "metadata.name", product -> product.getMetadata().getName(),
+        "spec.priority", product -> SortableNumbers.encode(product.getSpec().getPriority()),
+        "spec.price", product -> SortableNumbers.encode(product.getSpec().getPrice())
+    ), "metadata.creationTimestamp,desc");
+
+    private final CoalescingReader reader;
+
+    private final ProductCatalog productCatalog;
+
+    private final ProductSearchIndex productSearchIndex;
+
+    private final ProductFacetIndex productFacetIndex;
+
+    private final ConditionalJsonResponses responses;
+
+    private final PluginMetrics pluginMetrics;
+
+    public ProductSearchApi(CoalescingReader reader, ProductCatalog productCatalog,
+        ProductSearchIndex productSearchIndex, ProductFacetIndex productFacetIndex,
+        ConditionalJsonResponses responses, PluginMetrics pluginMetrics) {
+        this.reader = reader;
+        this.productCatalog = productCatalog;
+        this.productSearchIndex = productSearchIndex;
+        this.productFacetIndex = productFacetIndex;
+        this.responses = responses;
+        this.pluginMetrics = pluginMetrics;
     }
 
     @Bean
     public RouterFunction<ServerResponse> productSearchRoute() {
-        return route(GET("/apis/console.api.product.plugin.valve.zpl/v1alpha1/products"), this::listProducts);
+        return route(GET("/apis/console.api.product.plugin.valve.zpl/v1alpha1/products"), this::listProducts)
+            .andRoute(GET("/apis/console.api.product.plugin.valve.zpl/v1alpha1/products/-/facets"),
+                this::facetedSearch)
+            .filter(pluginMetrics.routes());
     }
 
     private Mono<ServerResponse> listProducts(ServerRequest request) {
+        String keyword = request.queryParam("keyword").filter(StringUtils::hasText).orElse(null);
+        String keywordMode = request.queryParam("keywordMode").orElse(KEYWORD_MODE_CONTAINS);
+        boolean tokenMode = keyword != null && KEYWORD_MODE_TOKEN.equalsIgnoreCase(keywordMode);
+        if (KeysetPagination.isRequested(request)) {
+            return listByCursor(request, tokenMode ? keyword : null)
+                .flatMap(page -> responses.ok(request, page, page.items(), page.hasNext(),
+                    page.nextCursor()));
+        }
+        if (tokenMode) {
+            return searchByToken(request, keyword)
+                .flatMap(result -> responses.ok(request, result, result.getItems(),
+                    result.getTotal()));
+        }
         return Mono.just(request)
-            .map(this::buildListOptions)
-            .flatMap(options -> {
-                PageRequestImpl pageRequest = buildPageRequest(request);
-                System.out.println("pageRequest: " + options.toString());
-                return client.listBy(Product.class, options, pageRequest);
+            .map(ProductSearchApi::buildListOptions)
+            .flatMap(options -> reader.listBy(Product.class, options, buildPageRequest(request)))
+            .flatMap(result -> responses.ok(request, result, result.getItems(),
+                result.getTotal()));
+    }
+
+    /**
+     * 分面搜索，一次返回当前页的产品和所有分面的计数。
+     * <p>{@code category}、{@code priceBucket}、{@code standard}（{@code 名称:值}）都可以重复，
+     * 同一参数的多个取值为 OR，不同参数之间为 AND；{@code keyword} 通过分词倒排索引匹配。
+     * 结果按产品目录的默认顺序排列。</p>
+     */
+    private Mono<ServerResponse> facetedSearch(ServerRequest request) {
+        int page = Integer.parseInt(request.queryParam("page").orElse("1"));
+        int size = Integer.parseInt(request.queryParam("size").orElse("10"));
+        String keyword = request.queryParam("keyword").filter(StringUtils::hasText).orElse(null);
+        Map<String, Set<String>> standards = parseStandards(request);
+        Mono<Set<String>> restriction = keyword == null
+            ? Mono.just(Set.of())
+            : matchByToken(keyword).map(Map::keySet);
+        return productCatalog.snapshot()
+            .zipWith(restriction, (catalog, matched) -> {
+                ProductFacetIndex.Result result = productFacetIndex.search(
+                    new ProductFacetIndex.Query(keyword == null ? null : matched,
+                        queryParamValues(request, "category"),
+                        queryParamValues(request, "priceBucket"), standards));
+                List<Product> products = result.names().stream()
+                    .flatMap(name -> catalog.getProduct(name).stream())
+                    .sorted(CatalogSnapshot.PRODUCT_ORDER)
+                    .toList();
+                ListResult<Product> paged = CatalogSnapshot.page(products, page, size);
+                return new FacetedProducts(paged.getPage(), paged.getSize(), paged.getTotal(),
+                    paged.getItems(), result.facets());
             })
             .flatMap(result -> ServerResponse.ok().bodyValue(result));
     }
 
-    private PageRequestImpl buildPageRequest(ServerRequest request) {
+    /**
+     * 解析重复的 {@code standard=名称:值} 参数，见 {@link ProductStandards#parseFilters}。
+     */
+    private static Map<String, Set<String>> parseStandards(ServerRequest request) {
+        try {
+            return ProductStandards.parseFilters(request.queryParams().get("standard"));
+        } catch (IllegalArgumentException e) {
+            throw new ServerWebInputException(e.getMessage());
+        }
+    }
+
+    private static Set<String> queryParamValues(ServerRequest request, String name) {
+        List<String> values = request.queryParams().get(name);
+        if (values == null) {
+            return Set.of();
+        }
+        Set<String> result = new LinkedHashSet<>();
+        values.stream().filter(StringUtils::hasText).forEach(result::add);
+        return result;
+    }
+
+    /**
+     * 游标分页，tokenKeyword 不为空时先通过倒排索引匹配关键词。游标分页按排序字段定位，
+     * 不支持按相关度排序。
+     */
+    private Mono<KeysetPagination.CursorPage<Product>> listByCursor(ServerRequest request,
+        String tokenKeyword) {
+        Mono<ListOptions> options = tokenKeyword == null
+            ? Mono.fromSupplier(() -> buildListOptions(request))
+            : matchByToken(tokenKeyword)
+                .filter(scores -> !scores.isEmpty())
+                .map(scores -> buildListOptions(request, scores.keySet()));
+        return options
+            .flatMap(listOptions -> KEYSET.list(request, listOptions,
+                (keysetOptions, pageRequest) -> reader.listBy(Product.class, keysetOptions,
+                    pageRequest)))
+            .switchIfEmpty(Mono.fromSupplier(() -> new KeysetPagination.CursorPage<>(List.of(),
+                KeysetPagination.size(request), false, null)));
+    }
+
+    private Mono<ListResult<Product>> searchByToken(ServerRequest request, String keyword) {
+        PageRequestImpl pageRequest = buildPageRequest(request);
+        return matchByToken(keyword)
+            .flatMap(scores -> {
+                if (scores.isEmpty()) {
+                    return Mono.just(new ListResult<>(pageRequest.getPageNumber(),
+                        pageRequest.getPageSize(), 0, List.<Product>of()));
+                }
+                ListOptions options = buildListOptions(request, scores.keySet());
+                if (request.queryParam("sort").isPresent()) {
+                    return reader.listBy(Product.class, options, pageRequest);
+                }
+                // 未指定排序时按相关度排序，命中的产品已经过滤，直接在内存中分页
+                Comparator<Product> relevance = Comparator
+                    .comparingInt((Product product) -> scores.get(product.getMetadata().getName()))
+                    .reversed()
+                    .thenComparing(product -> product.getMetadata().getName());
+                return reader.listAll(Product.class, options, Sort.unsorted())
+                    .sort(relevance)
+                    .collectList()
+                    .map(products -> CatalogSnapshot.page(products, pageRequest.getPageNumber(),
+                        pageRequest.getPageSize()));
+            });
+    }
+
+    /**
+     * 通过倒排索引匹配关键词，返回命中的产品名称及得分。
+     */
+    private Mono<Map<String, Integer>> matchByToken(String keyword) {
+        // 等待产品目录首次加载完成，此时倒排索引也已建立
+        return productCatalog.snapshot()
+            .map(catalog -> {
+                Map<String, Integer> scores = new HashMap<>();
+                productSearchIndex.search(keyword)
+                    .forEach(hit -> scores.put(hit.name(), hit.score()));
+                return scores;
+            });
+    }
+
+    static PageRequestImpl buildPageRequest(ServerRequest request) {
         int page = Integer.parseInt(request.queryParam("page").orElse("1"));
         int size = Integer.parseInt(request.queryParam("size").orElse("10"));
         String sortParam = request.queryParam("sort").orElse("metadata.creationTimestamp,desc");
@@ -62,20 +235,31 @@ public class ProductSearchApi {
         return PageRequestImpl.of(page, size, sort);
     }
 
-    private ListOptions buildListOptions(ServerRequest request) {
+    static ListOptions buildListOptions(ServerRequest request) {
+        return buildListOptions(request, null);
+    }
+
+    /**
+     * 构建查询条件，matchedNames 不为空时表示关键词已通过倒排索引匹配，只按产品名称过滤。
+     */
+    static ListOptions buildListOptions(ServerRequest request, Collection<String> matchedNames) {
         ListOptions options = new ListOptions();
         List<Query> queries = new ArrayList<>();
 
         // 处理搜索关键词
-        request.queryParam("keyword").ifPresent(keyword -> {
-            if (StringUtils.hasText(keyword)) {
-                Query keywordQuery = QueryFactory.or(
-                    QueryFactory.contains("spec.name", keyword),
-                    QueryFactory.contains("spec.description", keyword)
-                );
-                queries.add(keywordQuery);
-            }
-        });
+        if (matchedNames != null) {
+            queries.add(QueryFactory.in("metadata.name", matchedNames));
+        } else {
+            request.queryParam("keyword").ifPresent(keyword -> {
+                if (StringUtils.hasText(keyword)) {
+                    Query keywordQuery = QueryFactory.or(
+                        QueryFactory.contains("spec.name", keyword),
+                        QueryFactory.contains("spec.description", keyword)
+                    );
+                    queries.add(keywordQuery);
+                }
+            });
+        }
 
         // 处理分类过滤
         request.queryParam("category").ifPresent(category -> {
@@ -85,20 +269,21 @@ public class ProductSearchApi {
             }
         });
 
-        // 处理价格范围过滤
-        request.queryParam("minPrice").ifPresent(minPrice -> {
-            if (StringUtils.hasText(minPrice)) {
-                Query minPriceQuery = QueryFactory.greaterThanOrEqual("spec.price", minPrice);
-                queries.add(minPriceQuery);
-            }
-        });
+        // 处理规格过滤，同一规格名称的多个值为 OR，不同名称之间为 AND
+        ProductStandards.toTerms(parseStandards(request)).values().forEach(terms ->
+            queries.add(terms.size() == 1
+                ? QueryFactory.equal(ProductStandards.INDEX_NAME, terms.iterator().next())
+                : QueryFactory.in(ProductStandards.INDEX_NAME, terms)));
 
-        request.queryParam("maxPrice").ifPresent(maxPrice -> {
-            if (StringUtils.hasText(maxPrice)) {
-                Query maxPriceQuery = QueryFactory.lessThanOrEqual("spec.price", maxPrice);
-                queries.add(maxPriceQuery);
-            }
-        });
+        // 处理价格范围过滤，索引值是保序编码，单边范围用无穷补齐，同时排除未设置价格的产品
+        String minPrice = request.queryParam("minPrice").filter(StringUtils::hasText).orElse(null);
+        String maxPrice = request.queryParam("maxPrice").filter(StringUtils::hasText).orElse(null);
+        if (minPrice != null || maxPrice != null) {
+            Query priceQuery = QueryFactory.between("spec.price",
+                minPrice == null ? SortableNumbers.MIN : encodePrice("minPrice", minPrice),
+                maxPrice == null ? SortableNumbers.MAX : encodePrice("maxPrice", maxPrice));
+            queries.add(priceQuery);
+        }
 
         // 处理创建时间范围过滤
         request.queryParam("createdAfter").ifPresent(createdAfter -> {
@@ -123,4 +308,19 @@ public class ProductSearchApi {
 
         return options;
     }
-}
\ No newline at end of file
+
+    private static String encodePrice(String paramName, String value) {
+        try {
+            return SortableNumbers.encode(Double.parseDouble(value));
+        } catch (NumberFormatException e) {
+            throw new ServerWebInputException("Invalid " + paramName + ": " + value);
+        }
+    }
+
+    /**
+     * 分面搜索结果，分页字段与 {@link ListResult} 一致。
+     */
+    public record FacetedProducts(int page, int size, long total, List<Product> items,
+                                  ProductFacetIndex.Facets facets) {
+    }
+}
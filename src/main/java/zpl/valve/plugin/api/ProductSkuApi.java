@@ -0,0 +1,114 @@
+package zpl.valve.plugin.api;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.data.domain.Sort;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ServerWebInputException;
+import reactor.core.publisher.Mono;
+import zpl.valve.plugin.client.CoalescingReader;
+import zpl.valve.plugin.extension.Product;
+import zpl.valve.plugin.index.ProductSkus;
+import zpl.valve.plugin.metrics.PluginMetrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
+import static org.springframework.web.reactive.function.server.RequestPredicates.POST;
+import static org.springframework.web.reactive.function.server.RouterFunctions.route;
+
+/**
+ * 按产品编号查询，通过 {@code spec.sku} 唯一索引定位，不扫描全部产品。
+ * <p>批量查询的请求体为编号数组，最多 {@value #MAX_BATCH_SIZE} 个，只执行一次索引查询。</p>
+ */
+@Configuration
+public class ProductSkuApi {
+
+    static final int MAX_BATCH_SIZE = 500;
+
+    private static final String BY_SKU =
+        "/apis/console.api.product.plugin.valve.zpl/v1alpha1/products/by-sku";
+
+    private final CoalescingReader reader;
+
+    private final PluginMetrics pluginMetrics;
+
+    public ProductSkuApi(CoalescingReader reader, PluginMetrics pluginMetrics) {
+        this.reader = reader;
+        this.pluginMetrics = pluginMetrics;
+    }
+
+    @Bean
+    public RouterFunction<ServerResponse> productSkuRoute() {
+        return route(GET(BY_SKU + "/{sku}"), this::getBySku)
+            .andRoute(POST(BY_SKU), this::getBySkus)
+            .filter(pluginMetrics.routes());
+    }
+
+    private Mono<ServerResponse> getBySku(ServerRequest request) {
+        String sku = ProductSkus.normalize(request.pathVariable("sku"));
+        if (sku == null) {
+            return ServerResponse.notFound().build();
+        }
+        return reader.listAll(Product.class, ProductSkus.lookup(List.of(sku)), Sort.unsorted())
+            .next()
+            .flatMap(product -> ServerResponse.ok().bodyValue(product))
+            .switchIfEmpty(Mono.defer(() -> ServerResponse.notFound().build()));
+    }
+
+    private Mono<ServerResponse> getBySkus(ServerRequest request) {
+        return request.bodyToMono(new ParameterizedTypeReference<List<String>>() {
+            })
+            .switchIfEmpty(Mono.error(new ServerWebInputException("SKU list is required")))
+            .flatMap(body -> {
+                Set<String> skus = new LinkedHashSet<>();
+                body.forEach(sku -> {
+                    String normalized = ProductSkus.normalize(sku);
+                    if (normalized != null) {
+                        skus.add(normalized);
+                    }
+                });
+                if (skus.size() > MAX_BATCH_SIZE) {
+                    return Mono.error(new ServerWebInputException(
+                        "At most " + MAX_BATCH_SIZE + " SKUs per request"));
+                }
+                if (skus.isEmpty()) {
+                    return Mono.just(new SkuLookup(Map.of(), List.of()));
+                }
+                return reader.listAll(Product.class, ProductSkus.lookup(skus), Sort.unsorted())
+                    .collectMap(product -> ProductSkus.normalize(product.getSpec().getSku()))
+                    .map(found -> {
+                        // 按请求顺序返回
+                        Map<String, Product> items = new LinkedHashMap<>();
+                        List<String> missing = new ArrayList<>();
+                        for (String sku : skus) {
+                            Product product = found.get(sku);
+                            if (product != null) {
+                                items.put(sku, product);
+                            } else {
+                                missing.add(sku);
+                            }
+                        }
+                        return new SkuLookup(items, missing);
+                    });
+            })
+            .flatMap(result -> ServerResponse.ok().bodyValue(result));
+    }
+
+    /**
+     * 批量查询结果。
+     *
+     * @param items 编号 -> 产品
+     * @param missing 没有对应产品的编号
+     */
+    public record SkuLookup(Map<String, Product> items, List<String> missing) {
+    }
+}
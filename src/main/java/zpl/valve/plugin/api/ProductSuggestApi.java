@@ -0,0 +1,79 @@
+package zpl.valve.plugin.api;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.CacheControl;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ServerWebInputException;
+import reactor.core.publisher.Mono;
+import zpl.valve.plugin.catalog.ProductCatalog;
+import zpl.valve.plugin.metrics.PluginMetrics;
+import zpl.valve.plugin.search.ProductSuggestIndex;
+
+import java.time.Duration;
+
+import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
+import static org.springframework.web.reactive.function.server.RouterFunctions.route;
+
+/**
+ * 搜索框输入提示接口，逐键调用，只读取内存中的前缀树（见 {@link ProductSuggestIndex}）。
+ * <p>相同前缀的结果允许在浏览器和代理中缓存 {@link #CACHE_CONTROL} 的时长，
+ * 回删、重复输入不会再次请求。</p>
+ */
+@Configuration
+public class ProductSuggestApi {
+
+    static final int DEFAULT_LIMIT = 8;
+
+    private static final CacheControl CACHE_CONTROL =
+        CacheControl.maxAge(Duration.ofSeconds(30)).cachePublic();
+
+    private final ProductCatalog productCatalog;
+
+    private final ProductSuggestIndex productSuggestIndex;
+
+    private final PluginMetrics pluginMetrics;
+
+    public ProductSuggestApi(ProductCatalog productCatalog,
+        ProductSuggestIndex productSuggestIndex, PluginMetrics pluginMetrics) {
+        this.productCatalog = productCatalog;
+        this.productSuggestIndex = productSuggestIndex;
+        this.pluginMetrics = pluginMetrics;
+    }
+
+    @Bean
+    public RouterFunction<ServerResponse> productSuggestRoute() {
+        return route(GET("/apis/api.product.plugin.valve.zpl/v1alpha1/products/-/suggest"),
+            this::suggest)
+            .filter(pluginMetrics.routes());
+    }
+
+    private Mono<ServerResponse> suggest(ServerRequest request) {
+        String prefix = request.queryParam("q").orElse("");
+        int limit = parseLimit(request.queryParam("limit").orElse(null));
+        // 等待产品目录首次加载完成，此时前缀树也已建立
+        return productCatalog.snapshot()
+            .map(catalog -> productSuggestIndex.suggest(prefix, limit))
+            .flatMap(suggestions -> ServerResponse.ok()
+                .cacheControl(CACHE_CONTROL)
+                .bodyValue(suggestions));
+    }
+
+    private static int parseLimit(String value) {
+        if (value == null) {
+            return DEFAULT_LIMIT;
+        }
+        try {
+            int limit = Integer.parseInt(value);
+            if (limit > 0 && limit <= ProductSuggestIndex.MAX_SUGGESTIONS) {
+                return limit;
+            }
+        } catch (NumberFormatException e) {
+            // 按超出范围处理
+        }
+        throw new ServerWebInputException(
+            "limit must be between 1 and " + ProductSuggestIndex.MAX_SUGGESTIONS);
+    }
+}
@@ -0,0 +1,64 @@
+package zpl.valve.plugin.api;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ServerWebInputException;
+import reactor.core.publisher.Mono;
+import zpl.valve.plugin.metrics.PluginMetrics;
+import zpl.valve.plugin.metrics.SlowQueryLog;
+
+import static org.springframework.web.reactive.function.server.RequestPredicates.DELETE;
+import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
+import static org.springframework.web.reactive.function.server.RouterFunctions.route;
+
+/**
+ * 管理端的慢查询列表，按最大耗时列出插件最慢的查询形状，见 {@link SlowQueryLog}。
+ * <p>{@code limit} 默认 {@value #DEFAULT_LIMIT}，最多 {@value #MAX_LIMIT}；
+ * DELETE 清空已汇总的数据，用于调整查询后重新观察。</p>
+ */
+@Configuration
+public class SlowQueryApi {
+
+    static final int DEFAULT_LIMIT = 20;
+
+    static final int MAX_LIMIT = 100;
+
+    private static final String SLOW_QUERIES =
+        "/apis/console.api.product.plugin.valve.zpl/v1alpha1/slow-queries";
+
+    private final SlowQueryLog slowQueryLog;
+
+    private final PluginMetrics pluginMetrics;
+
+    public SlowQueryApi(SlowQueryLog slowQueryLog, PluginMetrics pluginMetrics) {
+        this.slowQueryLog = slowQueryLog;
+        this.pluginMetrics = pluginMetrics;
+    }
+
+    @Bean
+    public RouterFunction<ServerResponse> slowQueryRoute() {
+        return route(GET(SLOW_QUERIES), this::listSlowQueries)
+            .andRoute(DELETE(SLOW_QUERIES), request -> {
+                slowQueryLog.clear();
+                return ServerResponse.noContent().build();
+            })
+            .filter(pluginMetrics.routes());
+    }
+
+    private Mono<ServerResponse> listSlowQueries(ServerRequest request) {
+        int limit;
+        try {
+            limit = request.queryParam("limit").map(Integer::parseInt).orElse(DEFAULT_LIMIT);
+        } catch (NumberFormatException e) {
+            return Mono.error(new ServerWebInputException("limit must be a number"));
+        }
+        if (limit < 1 || limit > MAX_LIMIT) {
+            return Mono.error(new ServerWebInputException(
+                "limit must be between 1 and " + MAX_LIMIT));
+        }
+        return ServerResponse.ok().bodyValue(slowQueryLog.slowest(limit));
+    }
+}
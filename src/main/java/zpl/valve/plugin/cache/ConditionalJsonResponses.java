@@ -0,0 +1,211 @@
+package zpl.valve.plugin.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+import run.halo.app.extension.Extension;
+import run.halo.app.infra.utils.JsonUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 插件列表接口的条件请求和压缩响应。
+ * <p>强 {@code ETag} 由请求路径、排序后的查询参数、本页各扩展的名称和 {@code metadata.version}
+ * 以及分页状态（总数、游标）计算得到：扩展的任何修改都会增加版本号，因此相同的 ETag 对应完全相同的
+ * 响应体，不需要先序列化再计算摘要。请求的 {@code If-None-Match} 匹配时直接返回 304。</p>
+ * <p>不小于 {@value #MIN_COMPRESS_BYTES} 字节的响应按 ETag 缓存序列化结果和 gzip 压缩结果，
+ * 数据未变化的重复查询只需查询存储，不再序列化和压缩。压缩后的表示使用带 {@value #GZIP_SUFFIX}
+ * 后缀的 ETag，条件请求比较时忽略后缀。</p>
+ */
+@Component
+public class ConditionalJsonResponses {
+
+    static final int MIN_COMPRESS_BYTES = 1024;
+    static final int MAX_ENTRIES = 256;
+    static final long MAX_BYTES = 16L * 1024 * 1024;
+
+    static final String GZIP_SUFFIX = "-gz";
+
+    /**
+     * 允许浏览器保存响应，但每次使用前都需要重新验证。
+     */
+    private static final CacheControl CACHE_CONTROL = CacheControl.noCache();
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long totalBytes;
+
+    /**
+     * 返回 JSON 响应，支持 {@code If-None-Match} 和 gzip 压缩。
+     *
+     * @param body 响应体
+     * @param items 响应中的扩展，用于计算 ETag
+     * @param state 影响响应体的其他分页状态，例如总数、下一页游标
+     */
+    public Mono<ServerResponse> ok(ServerRequest request, Object body,
+        List<? extends Extension> items, Object... state) {
+        String etag = etag(request, items, state);
+        if (notModified(request, etag)) {
+            return ServerResponse.status(HttpStatus.NOT_MODIFIED)
+                .eTag(quote(etag))
+                .cacheControl(CACHE_CONTROL)
+                .varyBy(HttpHeaders.ACCEPT_ENCODING)
+                .build();
+        }
+        Entry entry = get(etag);
+        if (entry == null) {
+            entry = serialize(body);
+            if (entry.gzip() != null) {
+                put(etag, entry);
+            }
+        }
+        ServerResponse.BodyBuilder builder = ServerResponse.ok()
+            .contentType(MediaType.APPLICATION_JSON)
+            .cacheControl(CACHE_CONTROL)
+            .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (entry.gzip() != null && acceptsGzip(request)) {
+            return builder.eTag(quote(etag + GZIP_SUFFIX))
+                .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                .bodyValue(entry.gzip());
+        }
+        return builder.eTag(quote(etag)).bodyValue(entry.json());
+    }
+
+    static String etag(ServerRequest request, List<? extends Extension> items, Object... state) {
+        StringBuilder key = new StringBuilder(64 + items.size() * 48);
+        key.append(request.path()).append('?');
+        new TreeMap<>(request.queryParams()).forEach((name, values) ->
+            key.append(name).append('=').append(values).append('&'));
+        for (Object value : state) {
+            key.append('|').append(value);
+        }
+        for (Extension item : items) {
+            key.append('|').append(item.getMetadata().getName())
+                .append(':').append(item.getMetadata().getVersion());
+        }
+        return DigestUtils.md5DigestAsHex(key.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    static boolean notModified(ServerRequest request, String etag) {
+        for (String header : request.headers().header(HttpHeaders.IF_NONE_MATCH)) {
+            for (String value : header.split(",")) {
+                String candidate = value.trim();
+                if (candidate.equals("*")) {
+                    return true;
+                }
+                if (candidate.startsWith("W/")) {
+                    candidate = candidate.substring(2);
+                }
+                candidate = StringUtils.trimLeadingCharacter(
+                    StringUtils.trimTrailingCharacter(candidate, '"'), '"');
+                if (candidate.endsWith(GZIP_SUFFIX)) {
+                    candidate = candidate.substring(0, candidate.length() - GZIP_SUFFIX.length());
+                }
+                if (candidate.equals(etag)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 客户端是否接受 gzip，{@code q=0} 视为不接受。
+     */
+    static boolean acceptsGzip(ServerRequest request) {
+        for (String header : request.headers().header(HttpHeaders.ACCEPT_ENCODING)) {
+            for (String value : header.split(",")) {
+                String[] parts = value.trim().split(";");
+                String coding = parts[0].trim();
+                if (!coding.equalsIgnoreCase("gzip") && !coding.equals("*")) {
+                    continue;
+                }
+                boolean rejected = false;
+                for (int i = 1; i < parts.length; i++) {
+                    String parameter = parts[i].trim();
+                    if (parameter.startsWith("q=")) {
+                        try {
+                            rejected = Double.parseDouble(parameter.substring(2)) <= 0;
+                        } catch (NumberFormatException e) {
+                            rejected = true;
+                        }
+                    }
+                }
+                if (!rejected) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static Entry serialize(Object body) {
+        byte[] json;
+        try {
+            json = JsonUtils.mapper().writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize response", e);
+        }
+        if (json.length < MIN_COMPRESS_BYTES) {
+            return new Entry(json, null);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Entry(json, out.toByteArray());
+    }
+
+    private static String quote(String etag) {
+        return "\"" + etag + "\"";
+    }
+
+    synchronized Entry get(String etag) {
+        return entries.get(etag);
+    }
+
+    synchronized void put(String etag, Entry entry) {
+        if (entry.bytes() > MAX_BYTES / 8) {
+            return;
+        }
+        Entry previous = entries.put(etag, entry);
+        if (previous != null) {
+            totalBytes -= previous.bytes();
+        }
+        totalBytes += entry.bytes();
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > MAX_ENTRIES || totalBytes > MAX_BYTES) && eldest.hasNext()) {
+            totalBytes -= eldest.next().getValue().bytes();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * 序列化结果，gzip 为空表示响应较小，不压缩也不缓存。
+     */
+    record Entry(byte[] json, byte[] gzip) {
+
+        long bytes() {
+            return json.length + (gzip == null ? 0 : gzip.length);
+        }
+    }
+}
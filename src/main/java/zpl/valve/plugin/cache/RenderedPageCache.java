@@ -0,0 +1,314 @@
+package zpl.valve.plugin.cache;
+
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseCookie;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.function.server.HandlerFilterFunction;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import run.halo.app.theme.TemplateNameResolver;
+import zpl.valve.plugin.catalog.CatalogListener;
+import zpl.valve.plugin.catalog.CatalogSnapshot;
+import zpl.valve.plugin.catalog.ProductCatalog;
+import zpl.valve.plugin.extension.Product;
+import zpl.valve.plugin.extension.ProductCategory;
+import zpl.valve.plugin.theme.ActiveTheme;
+import zpl.valve.plugin.theme.ThemeListener;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * 主题页面渲染结果缓存。
+ * <p>以路由、路径参数、模板名称、主题版本（{@link ActiveTheme#version()}）和请求语言作为键
+ * 缓存渲染后的 HTML，同时按条目数和总字节数限制容量，
+ * 超出后淘汰最久未访问的条目。命中时直接返回缓存内容并附带 {@code ETag}、
+ * {@code Last-Modified}，请求携带匹配的 {@code If-None-Match} 时返回 304。</p>
+ * <p>每个条目带有依赖标签（{@link #productTag}、{@link #categoryTag}），产品变更时只淘汰
+ * 依赖该产品或其所在分类的页面；分类变更会影响所有页面的分类导航，因此清空缓存。
+ * 键中不包含目录代数，目录变化后靠上述标签淘汰失效页面，其余页面继续命中；渲染期间目录代数发生变化的结果
+ * 不会写入缓存，避免缓存旧数据。主题、主题设置或系统设置变化时清空缓存。</p>
+ * <p>已登录用户的请求（页面可能包含用户信息）不读写缓存；不同语言的访客使用各自的条目。</p>
+ */
+@Component
+public class RenderedPageCache implements CatalogListener, ThemeListener {
+
+    static final int MAX_ENTRIES = 1000;
+    static final long MAX_BYTES = 64L * 1024 * 1024;
+    static final int MAX_ENTRY_BYTES = 1024 * 1024;
+
+    private final TemplateNameResolver templateNameResolver;
+
+    private final ProductCatalog productCatalog;
+
+    private final ActiveTheme activeTheme;
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long totalBytes;
+
+    public RenderedPageCache(TemplateNameResolver templateNameResolver,
+        ProductCatalog productCatalog, ActiveTheme activeTheme) {
+        this.templateNameResolver = templateNameResolver;
+        this.productCatalog = productCatalog;
+        this.activeTheme = activeTheme;
+    }
+
+    public static String productTag(String name) {
+        return "product:" + name;
+    }
+
+    public static String categoryTag(String name) {
+        return "category:" + name;
+    }
+
+    /**
+     * 创建用于主题路由的缓存过滤器。
+     *
+     * @param route 路由标识，用于区分不同页面
+     * @param defaultTemplateName 页面默认模板名称
+     * @param tags 根据请求和当前目录快照计算页面依赖标签
+     */
+    public HandlerFilterFunction<ServerResponse, ServerResponse> filter(String route,
+        String defaultTemplateName,
+        BiFunction<ServerRequest, CatalogSnapshot, Set<String>> tags) {
+        return (request, next) -> authenticated(request).flatMap(authenticated -> {
+            if (authenticated) {
+                // 已登录用户的页面可能包含用户信息，不读写缓存
+                return next.handle(request);
+            }
+            return templateNameResolver
+                .resolveTemplateNameOrDefault(request.exchange(), defaultTemplateName)
+                .flatMap(templateName -> {
+                    long generation = productCatalog.generation();
+                    Key key = new Key(route, new TreeMap<>(request.pathVariables()), templateName,
+                        activeTheme.version(), locale(request));
+                    Entry entry = get(key);
+                    if (entry != null) {
+                        return request.checkNotModified(entry.lastModified(), entry.etag())
+                            .switchIfEmpty(Mono.defer(() -> ServerResponse.ok()
+                                .contentType(entry.contentType())
+                                .eTag(entry.etag())
+                                .lastModified(entry.lastModified())
+                                .bodyValue(entry.body())));
+                    }
+                    if (!productCatalog.isReady()) {
+                        // 目录尚未加载完成时无法判断依赖，直接渲染且不缓存
+                        return next.handle(request);
+                    }
+                    return productCatalog.snapshot()
+                        .flatMap(snapshot -> next.handle(request)
+                            .map(response -> response.statusCode().is2xxSuccessful()
+                                ? new CachingResponse(response, rendered -> put(key, generation,
+                                    tags.apply(request, snapshot), rendered))
+                                : response));
+                });
+        });
+    }
+
+    @Override
+    public void onThemeChanged(String previous, String current) {
+        clear();
+    }
+
+    @Override
+    public void onReload(CatalogSnapshot snapshot) {
+        clear();
+    }
+
+    @Override
+    public void onProductChanged(CatalogSnapshot snapshot, Product previous, Product current) {
+        Set<String> tags = new HashSet<>();
+        for (Product product : new Product[] {previous, current}) {
+            if (product == null) {
+                continue;
+            }
+            tags.add(productTag(product.getMetadata().getName()));
+            if (product.getSpec() != null) {
+                tags.add(categoryTag(product.getSpec().getCategoryMetadataName()));
+            }
+        }
+        evict(tags);
+    }
+
+    @Override
+    public void onCategoryChanged(CatalogSnapshot snapshot, ProductCategory previous,
+        ProductCategory current) {
+        clear();
+    }
+
+    /**
+     * 淘汰依赖指定产品的页面，用于产品本身未变化但页面内容受其他产品影响的情况（例如相关产品）。
+     */
+    public void evictProducts(Collection<String> names) {
+        Set<String> tags = new HashSet<>();
+        names.forEach(name -> tags.add(productTag(name)));
+        evict(tags);
+    }
+
+    /**
+     * 请求是否来自已登录用户（匿名认证不算），这类请求的页面可能包含用户信息，不应使用共享的缓存结果。
+     */
+    public static Mono<Boolean> authenticated(ServerRequest request) {
+        return request.principal()
+            .map(principal -> principal instanceof Authentication authentication
+                && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken))
+            .defaultIfEmpty(false);
+    }
+
+    private static String locale(ServerRequest request) {
+        Locale locale = request.exchange().getLocaleContext().getLocale();
+        return locale == null ? "" : locale.toLanguageTag();
+    }
+
+    synchronized Entry get(Key key) {
+        return entries.get(key);
+    }
+
+    synchronized void put(Key key, long generation, Set<String> tags, Rendered rendered) {
+        if (rendered.body().length > MAX_ENTRY_BYTES
+            || generation != productCatalog.generation()) {
+            return;
+        }
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            totalBytes -= previous.body().length;
+        }
+        entries.put(key, new Entry(rendered.body(), rendered.etag(), rendered.contentType(),
+            rendered.lastModified(), Set.copyOf(tags)));
+        totalBytes += rendered.body().length;
+        Iterator<Entry> eldest = entries.values().iterator();
+        while ((entries.size() > MAX_ENTRIES || totalBytes > MAX_BYTES) && eldest.hasNext()) {
+            totalBytes -= eldest.next().body().length;
+            eldest.remove();
+        }
+    }
+
+    synchronized void evict(Set<String> tags) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.tags().stream().anyMatch(tags::contains)) {
+                totalBytes -= entry.body().length;
+                iterator.remove();
+            }
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    record Key(String route, Map<String, String> pathVariables, String templateName,
+               String theme, String locale) {
+    }
+
+    record Entry(byte[] body, String etag, MediaType contentType, Instant lastModified,
+                 Set<String> tags) {
+    }
+
+    record Rendered(byte[] body, String etag, MediaType contentType, Instant lastModified) {
+    }
+
+    /**
+     * 包装渲染响应，在写出时截获完整的响应体，补充 ETag 和 Last-Modified 后再写给客户端。
+     */
+    private static class CachingResponse implements ServerResponse {
+
+        private final ServerResponse delegate;
+
+        private final Consumer<Rendered> onRendered;
+
+        CachingResponse(ServerResponse delegate, Consumer<Rendered> onRendered) {
+            this.delegate = delegate;
+            this.onRendered = onRendered;
+        }
+
+        @Override
+        public HttpStatusCode statusCode() {
+            return delegate.statusCode();
+        }
+
+        @Deprecated
+        public int rawStatusCode() {
+            return delegate.statusCode().value();
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return delegate.headers();
+        }
+
+        @Override
+        public MultiValueMap<String, ResponseCookie> cookies() {
+            return delegate.cookies();
+        }
+
+        @Override
+        public Mono<Void> writeTo(ServerWebExchange exchange, Context context) {
+            CapturingResponse response = new CapturingResponse(exchange.getResponse(), onRendered);
+            return delegate.writeTo(exchange.mutate().response(response).build(), context);
+        }
+    }
+
+    private static class CapturingResponse extends ServerHttpResponseDecorator {
+
+        private final Consumer<Rendered> onRendered;
+
+        CapturingResponse(ServerHttpResponse delegate, Consumer<Rendered> onRendered) {
+            super(delegate);
+            this.onRendered = onRendered;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            return DataBufferUtils.join(Flux.from(body))
+                .flatMap(buffer -> {
+                    byte[] bytes = new byte[buffer.readableByteCount()];
+                    buffer.read(bytes);
+                    DataBufferUtils.release(buffer);
+
+                    Instant lastModified = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+                    String etag = DigestUtils.md5DigestAsHex(bytes);
+                    getHeaders().setETag("\"" + etag + "\"");
+                    getHeaders().setLastModified(lastModified);
+                    onRendered.accept(new Rendered(bytes, etag, getHeaders().getContentType(),
+                        lastModified));
+                    return super.writeWith(Mono.just(bufferFactory().wrap(bytes)));
+                })
+                .switchIfEmpty(Mono.defer(() -> super.writeWith(Flux.empty())));
+        }
+
+        @Override
+        public Mono<Void> writeAndFlushWith(
+            Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            return writeWith(Flux.from(body).flatMapSequential(Flux::from));
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package zpl.valve.plugin.catalog;
+
+import zpl.valve.plugin.extension.Product;
+import zpl.valve.plugin.extension.ProductCategory;
+
+/**
+ * 产品目录变更监听器，由 {@link ProductCatalog} 在新快照发布之后串行回调。
+ * <p>实现类注册为 Spring Bean 即可生效，回调中不应执行阻塞操作。</p>
+ */
+public interface CatalogListener {
+
+    /**
+     * 全量加载完成，实现类应基于该快照重建自身状态。
+     */
+    default void onReload(CatalogSnapshot snapshot) {
+    }
+
+    /**
+     * 产品发生变更，新增时 previous 为 null，删除时 current 为 null。
+     */
+    default void onProductChanged(CatalogSnapshot snapshot, Product previous, Product current) {
+    }
+
+    /**
+     * 产品分类发生变更，新增时 previous 为 null，删除时 current 为 null。
+     */
+    default void onCategoryChanged(CatalogSnapshot snapshot, ProductCategory previous,
+        ProductCategory current) {
+    }
+}
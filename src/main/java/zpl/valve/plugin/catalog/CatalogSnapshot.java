@@ -0,0 +1,261 @@
+package zpl.valve.plugin.catalog;
+
+import run.halo.app.extension.ExtensionOperator;
+import run.halo.app.extension.ListResult;
+import zpl.valve.plugin.extension.Product;
+import zpl.valve.plugin.extension.ProductCategory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * 产品目录的不可变快照。
+ * <p>每次变更都会基于旧快照复制出新的实例（写时复制），读取方拿到的实例永远不会被修改。</p>
+ * <p>产品和分类都按 {@code spec.priority}、{@code metadata.creationTimestamp}、
+ * {@code metadata.name} 升序排列，与主题查询的默认排序一致（未设置优先级的排在最前，
+ * 与 {@link zpl.valve.plugin.index.SortableNumbers} 的索引编码保持一致）。</p>
+ */
+public final class CatalogSnapshot {
+
+    public static final Comparator<Product> PRODUCT_ORDER = Comparator
+        .comparing((Product product) -> product.getSpec() == null
+                ? null : product.getSpec().getPriority(),
+            Comparator.nullsFirst(Comparator.<Integer>naturalOrder()))
+        .thenComparing(product -> product.getMetadata().getCreationTimestamp(),
+            Comparator.nullsLast(Comparator.<Instant>naturalOrder()))
+        .thenComparing(product -> product.getMetadata().getName());
+
+    static final Comparator<ProductCategory> CATEGORY_ORDER = Comparator
+        .comparing((ProductCategory category) -> category.getSpec() == null
+                ? null : category.getSpec().getPriority(),
+            Comparator.nullsFirst(Comparator.<Integer>naturalOrder()))
+        .thenComparing(category -> category.getMetadata().getCreationTimestamp(),
+            Comparator.nullsLast(Comparator.<Instant>naturalOrder()))
+        .thenComparing(category -> category.getMetadata().getName());
+
+    private final long generation;
+    private final Map<String, Product> productsByName;
+    private final List<Product> products;
+    private final Map<String, List<Product>> productsByCategory;
+    private final Map<String, ProductCategory> categoriesByName;
+    private final List<ProductCategory> categories;
+
+    private CatalogSnapshot(long generation, Map<String, Product> productsByName,
+        List<Product> products, Map<String, List<Product>> productsByCategory,
+        Map<String, ProductCategory> categoriesByName, List<ProductCategory> categories) {
+        // 传入的集合都已是只读视图，未变化的部分在新旧快照之间直接共享
+        this.generation = generation;
+        this.productsByName = productsByName;
+        this.products = products;
+        this.productsByCategory = productsByCategory;
+        this.categoriesByName = categoriesByName;
+        this.categories = categories;
+    }
+
+    /**
+     * 从全量数据构建快照，用于首次加载和全量重建。
+     */
+    static CatalogSnapshot of(long generation, Collection<Product> products,
+        Collection<ProductCategory> categories) {
+        Map<String, Product> productsByName = new HashMap<>();
+        for (Product product : products) {
+            productsByName.put(product.getMetadata().getName(), product);
+        }
+        List<Product> sortedProducts = new ArrayList<>(productsByName.values());
+        sortedProducts.sort(PRODUCT_ORDER);
+
+        Map<String, List<Product>> productsByCategory = new HashMap<>();
+        for (Product product : sortedProducts) {
+            String category = categoryOf(product);
+            if (category != null) {
+                productsByCategory.computeIfAbsent(category, key -> new ArrayList<>())
+                    .add(product);
+            }
+        }
+        productsByCategory.replaceAll((key, list) -> Collections.unmodifiableList(list));
+
+        Map<String, ProductCategory> categoriesByName = new HashMap<>();
+        for (ProductCategory category : categories) {
+            categoriesByName.put(category.getMetadata().getName(), category);
+        }
+        List<ProductCategory> sortedCategories = new ArrayList<>(categoriesByName.values());
+        sortedCategories.sort(CATEGORY_ORDER);
+
+        return new CatalogSnapshot(generation, Collections.unmodifiableMap(productsByName),
+            Collections.unmodifiableList(sortedProducts),
+            Collections.unmodifiableMap(productsByCategory),
+            Collections.unmodifiableMap(categoriesByName),
+            Collections.unmodifiableList(sortedCategories));
+    }
+
+    /**
+     * 新增或更新一个产品，只重排受影响的分类；版本号未变化时返回当前快照。
+     */
+    CatalogSnapshot withProduct(Product product) {
+        String name = product.getMetadata().getName();
+        Product previous = productsByName.get(name);
+        if (previous != null && Objects.equals(previous.getMetadata().getVersion(),
+            product.getMetadata().getVersion())) {
+            return this;
+        }
+        Map<String, Product> nextByName = new HashMap<>(productsByName);
+        nextByName.put(name, product);
+
+        Map<String, List<Product>> nextByCategory = new HashMap<>(productsByCategory);
+        if (previous != null) {
+            removeFromCategory(nextByCategory, categoryOf(previous), name);
+        }
+        String category = categoryOf(product);
+        if (category != null) {
+            nextByCategory.put(category, replace(
+                nextByCategory.getOrDefault(category, List.of()), name, product, PRODUCT_ORDER));
+        }
+
+        return new CatalogSnapshot(generation + 1, Collections.unmodifiableMap(nextByName),
+            replace(products, name, product, PRODUCT_ORDER),
+            Collections.unmodifiableMap(nextByCategory), categoriesByName, categories);
+    }
+
+    /**
+     * 移除一个产品；产品不存在时返回当前快照。
+     */
+    CatalogSnapshot withoutProduct(String name) {
+        Product previous = productsByName.get(name);
+        if (previous == null) {
+            return this;
+        }
+        Map<String, Product> nextByName = new HashMap<>(productsByName);
+        nextByName.remove(name);
+        Map<String, List<Product>> nextByCategory = new HashMap<>(productsByCategory);
+        removeFromCategory(nextByCategory, categoryOf(previous), name);
+
+        return new CatalogSnapshot(generation + 1, Collections.unmodifiableMap(nextByName),
+            replace(products, name, null, PRODUCT_ORDER),
+            Collections.unmodifiableMap(nextByCategory), categoriesByName, categories);
+    }
+
+    /**
+     * 新增或更新一个产品分类；版本号未变化时返回当前快照。
+     */
+    CatalogSnapshot withCategory(ProductCategory category) {
+        String name = category.getMetadata().getName();
+        ProductCategory previous = categoriesByName.get(name);
+        if (previous != null && Objects.equals(previous.getMetadata().getVersion(),
+            category.getMetadata().getVersion())) {
+            return this;
+        }
+        Map<String, ProductCategory> nextByName = new HashMap<>(categoriesByName);
+        nextByName.put(name, category);
+        return new CatalogSnapshot(generation + 1, productsByName, products, productsByCategory,
+            Collections.unmodifiableMap(nextByName),
+            replace(categories, name, category, CATEGORY_ORDER));
+    }
+
+    /**
+     * 移除一个产品分类；分类不存在时返回当前快照。
+     */
+    CatalogSnapshot withoutCategory(String name) {
+        if (!categoriesByName.containsKey(name)) {
+            return this;
+        }
+        Map<String, ProductCategory> nextByName = new HashMap<>(categoriesByName);
+        nextByName.remove(name);
+        return new CatalogSnapshot(generation + 1, productsByName, products, productsByCategory,
+            Collections.unmodifiableMap(nextByName),
+            replace(categories, name, null, CATEGORY_ORDER));
+    }
+
+    /**
+     * 快照的代数，每次实际发生变更时加一。
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    public Optional<Product> getProduct(String name) {
+        return Optional.ofNullable(productsByName.get(name));
+    }
+
+    public Optional<ProductCategory> getCategory(String name) {
+        return Optional.ofNullable(categoriesByName.get(name));
+    }
+
+    public List<Product> getProducts() {
+        return products;
+    }
+
+    public List<Product> getProductsByCategory(String categoryMetadataName) {
+        return productsByCategory.getOrDefault(categoryMetadataName, List.of());
+    }
+
+    public List<ProductCategory> getCategories() {
+        return categories;
+    }
+
+    /**
+     * 分页获取某个分类下的产品，分页规则同 {@link #page(List, int, int)}。
+     */
+    public ListResult<Product> listByCategory(String categoryMetadataName, int page, int size) {
+        return page(getProductsByCategory(categoryMetadataName), page, size);
+    }
+
+    /**
+     * 对内存中的有序列表分页，页码从 1 开始，size 小于等于 0 时返回全部。
+     */
+    public static <T> ListResult<T> page(List<T> items, int page, int size) {
+        if (size <= 0) {
+            return new ListResult<>(0, 0, items.size(), items);
+        }
+        int pageNum = Math.max(page, 1);
+        long from = (long) (pageNum - 1) * size;
+        if (from >= items.size()) {
+            return new ListResult<>(pageNum, size, items.size(), List.of());
+        }
+        int to = (int) Math.min(from + size, items.size());
+        return new ListResult<>(pageNum, size, items.size(), items.subList((int) from, to));
+    }
+
+    private static void removeFromCategory(Map<String, List<Product>> byCategory,
+        String category, String name) {
+        if (category == null) {
+            return;
+        }
+        List<Product> remaining = replace(byCategory.getOrDefault(category, List.of()), name,
+            null, PRODUCT_ORDER);
+        if (remaining.isEmpty()) {
+            byCategory.remove(category);
+        } else {
+            byCategory.put(category, remaining);
+        }
+    }
+
+    /**
+     * 复制有序列表，去掉同名元素后把新元素按二分查找插入，replacement 为 null 时只做删除。
+     */
+    private static <T extends ExtensionOperator> List<T> replace(List<T> sorted, String name,
+        T replacement, Comparator<? super T> order) {
+        List<T> next = new ArrayList<>(sorted.size() + 1);
+        for (T item : sorted) {
+            if (!name.equals(item.getMetadata().getName())) {
+                next.add(item);
+            }
+        }
+        if (replacement != null) {
+            int index = Collections.binarySearch(next, replacement, order);
+            next.add(index < 0 ? -index - 1 : index, replacement);
+        }
+        return Collections.unmodifiableList(next);
+    }
+
+    private static String categoryOf(Product product) {
+        return product.getSpec() == null ? null : product.getSpec().getCategoryMetadataName();
+    }
+}
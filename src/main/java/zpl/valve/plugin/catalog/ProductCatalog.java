@@ -0,0 +1,324 @@
+package zpl.valve.plugin.catalog;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+import run.halo.app.extension.Extension;
+import run.halo.app.extension.GroupVersionKind;
+import run.halo.app.extension.ListOptions;
+import run.halo.app.extension.ReactiveExtensionClient;
+import run.halo.app.extension.Watcher;
+import zpl.valve.plugin.extension.Product;
+import zpl.valve.plugin.extension.ProductCategory;
+import zpl.valve.plugin.metrics.PluginMetrics;
+import zpl.valve.plugin.metrics.QueryShape;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 基于扩展监听维护的产品目录快照。
+ * <p>所有变更（首次加载、产品变更、分类变更）都在同一条流水线上串行处理，
+ * 收到事件后按名称重新获取最新数据再合并到快照中，避免乱序事件覆盖新数据。</p>
+ * <p>读取方通过 {@link #snapshot()} 获取当前快照，不会访问扩展存储。</p>
+ * <p>全量加载重试后仍然失败时，{@value #RELOAD_RETRY_SECONDS} 秒后重新加载；首次加载完成之前收到的
+ * 变更事件也会触发重新加载。首次加载完成之前，{@link #snapshot()} 最多等待
+ * {@value #SNAPSHOT_TIMEOUT_SECONDS} 秒，之后直接从扩展存储加载一份临时快照（代数为 0，不通知监听器），
+ * 仍然失败时返回 503。</p>
+ */
+@Slf4j
+@Component
+public class ProductCatalog {
+
+    private static final GroupVersionKind PRODUCT_GVK =
+        GroupVersionKind.fromExtension(Product.class);
+    private static final GroupVersionKind CATEGORY_GVK =
+        GroupVersionKind.fromExtension(ProductCategory.class);
+
+    static final long RELOAD_RETRY_SECONDS = 10;
+
+    static final long SNAPSHOT_TIMEOUT_SECONDS = 5;
+
+    /**
+     * 临时快照的缓存时间，避免首次加载完成之前每个请求都访问扩展存储。
+     */
+    private static final Duration FALLBACK_TTL = Duration.ofSeconds(5);
+
+    private final ReactiveExtensionClient client;
+
+    private final ObjectProvider<CatalogListener> listeners;
+
+    private final PluginMetrics pluginMetrics;
+
+    private final Sinks.Many<CatalogSnapshot> snapshots = Sinks.many().replay().latest();
+
+    private final Mono<CatalogSnapshot> fallback;
+
+    private final AtomicBoolean reloadScheduled = new AtomicBoolean();
+
+    private volatile CatalogSnapshot current;
+
+    private volatile Sinks.Many<Change> changes;
+
+    private CatalogWatcher watcher;
+
+    private Disposable subscription;
+
+    public ProductCatalog(ReactiveExtensionClient client,
+        ObjectProvider<CatalogListener> listeners, PluginMetrics pluginMetrics) {
+        this.client = client;
+        this.listeners = listeners;
+        this.pluginMetrics = pluginMetrics;
+        this.fallback = load(0)
+            .doOnError(e -> log.warn("Failed to load a fallback catalog snapshot", e))
+            .onErrorMap(e -> new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                "Product catalog is not available", e))
+            .cache(snapshot -> FALLBACK_TTL, e -> Duration.ZERO, () -> Duration.ZERO);
+    }
+
+    /**
+     * 开始监听产品和产品分类的变更并加载全量数据，需要在 Scheme 注册之后调用。
+     */
+    public synchronized void start() {
+        if (subscription != null && !subscription.isDisposed()) {
+            return;
+        }
+        changes = Sinks.many().unicast().onBackpressureBuffer();
+        subscription = changes.asFlux()
+            .startWith(Change.reload())
+            .concatMap(change -> apply(change).map(snapshot -> new Applied(change, snapshot)))
+            .subscribe(this::publish);
+        watcher = new CatalogWatcher();
+        client.watch(watcher);
+    }
+
+    public synchronized void stop() {
+        if (watcher != null) {
+            watcher.dispose();
+            watcher = null;
+        }
+        if (changes != null) {
+            changes.tryEmitComplete();
+            changes = null;
+        }
+        if (subscription != null) {
+            subscription.dispose();
+            subscription = null;
+        }
+    }
+
+    /**
+     * 获取当前快照，首次加载完成之前会等待加载结果，超时后从扩展存储加载临时快照。
+     */
+    public Mono<CatalogSnapshot> snapshot() {
+        CatalogSnapshot snapshot = current;
+        if (snapshot != null) {
+            return Mono.just(snapshot);
+        }
+        return snapshots.asFlux().next()
+            .timeout(Duration.ofSeconds(SNAPSHOT_TIMEOUT_SECONDS), fallback);
+    }
+
+    /**
+     * 首次加载是否已完成。
+     */
+    public boolean isReady() {
+        return current != null;
+    }
+
+    /**
+     * 当前快照的代数，尚未加载时为 0。
+     */
+    public long generation() {
+        CatalogSnapshot snapshot = current;
+        return snapshot == null ? 0 : snapshot.getGeneration();
+    }
+
+    private void publish(Applied applied) {
+        CatalogSnapshot previous = current;
+        CatalogSnapshot snapshot = applied.snapshot();
+        if (snapshot == previous) {
+            return;
+        }
+        current = snapshot;
+        snapshots.tryEmitNext(snapshot);
+        listeners.orderedStream().forEach(listener -> {
+            try {
+                notifyListener(listener, applied.change(), previous, snapshot);
+            } catch (RuntimeException e) {
+                log.warn("Catalog listener {} failed on {}", listener, applied.change(), e);
+            }
+        });
+    }
+
+    private static void notifyListener(CatalogListener listener, Change change,
+        CatalogSnapshot previous, CatalogSnapshot snapshot) {
+        switch (change.kind()) {
+            case RELOAD -> listener.onReload(snapshot);
+            case PRODUCT -> listener.onProductChanged(snapshot,
+                previous.getProduct(change.name()).orElse(null),
+                snapshot.getProduct(change.name()).orElse(null));
+            case CATEGORY -> listener.onCategoryChanged(snapshot,
+                previous.getCategory(change.name()).orElse(null),
+                snapshot.getCategory(change.name()).orElse(null));
+        }
+    }
+
+    private Mono<CatalogSnapshot> apply(Change change) {
+        CatalogSnapshot base = current;
+        if (change.kind() != Change.Kind.RELOAD && base == null) {
+            // 首次加载失败时无法增量合并，改为全量加载
+            scheduleReload(Duration.ZERO);
+            return Mono.empty();
+        }
+        Mono<CatalogSnapshot> next = switch (change.kind()) {
+            case RELOAD -> reload(base);
+            case PRODUCT -> pluginMetrics.store("fetch", Product.class, QueryShape.BY_NAME,
+                    client.fetch(Product.class, change.name()))
+                .filter(product -> product.getMetadata().getDeletionTimestamp() == null)
+                .map(base::withProduct)
+                .switchIfEmpty(Mono.fromSupplier(() -> base.withoutProduct(change.name())));
+            case CATEGORY -> pluginMetrics.store("fetch", ProductCategory.class,
+                    QueryShape.BY_NAME, client.fetch(ProductCategory.class, change.name()))
+                .filter(category -> category.getMetadata().getDeletionTimestamp() == null)
+                .map(base::withCategory)
+                .switchIfEmpty(Mono.fromSupplier(() -> base.withoutCategory(change.name())));
+        };
+        return next.onErrorResume(e -> {
+            log.warn("Failed to apply catalog change {}", change, e);
+            if (change.kind() == Change.Kind.RELOAD) {
+                scheduleReload(Duration.ofSeconds(RELOAD_RETRY_SECONDS));
+            }
+            return Mono.empty();
+        });
+    }
+
+    /**
+     * 安排一次全量加载，已经安排的加载执行之前不会重复安排。
+     */
+    private void scheduleReload(Duration delay) {
+        if (!reloadScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        Mono.delay(delay).subscribe(tick -> {
+            reloadScheduled.set(false);
+            emit(Change.reload());
+        });
+    }
+
+    private Mono<CatalogSnapshot> reload(CatalogSnapshot base) {
+        return load(base == null ? 1 : base.getGeneration() + 1)
+            .retryWhen(Retry.backoff(5, Duration.ofMillis(200)));
+    }
+
+    private Mono<CatalogSnapshot> load(long generation) {
+        ListOptions options = new ListOptions();
+        return Mono.zip(
+                pluginMetrics.store("listAll", Product.class, options,
+                        client.listAll(Product.class, options, Sort.unsorted()))
+                    .filter(product -> product.getMetadata().getDeletionTimestamp() == null)
+                    .collectList(),
+                pluginMetrics.store("listAll", ProductCategory.class, options,
+                        client.listAll(ProductCategory.class, options, Sort.unsorted()))
+                    .filter(category -> category.getMetadata().getDeletionTimestamp() == null)
+                    .collectList())
+            .map(tuple -> CatalogSnapshot.of(generation, tuple.getT1(), tuple.getT2()));
+    }
+
+    private void notifyChange(Extension extension) {
+        if (extension == null) {
+            return;
+        }
+        GroupVersionKind gvk = extension.groupVersionKind();
+        String name = extension.getMetadata().getName();
+        Change change;
+        if (PRODUCT_GVK.groupKind().equals(gvk.groupKind())) {
+            change = Change.product(name);
+        } else if (CATEGORY_GVK.groupKind().equals(gvk.groupKind())) {
+            change = Change.category(name);
+        } else {
+            return;
+        }
+        emit(change);
+    }
+
+    private void emit(Change change) {
+        Sinks.Many<Change> sink = changes;
+        if (sink == null) {
+            return;
+        }
+        // 监听回调可能来自多个线程，由 busyLooping 处理并发发射
+        sink.emitNext(change, Sinks.EmitFailureHandler.busyLooping(Duration.ofSeconds(1)));
+    }
+
+    record Applied(Change change, CatalogSnapshot snapshot) {
+    }
+
+    record Change(Kind kind, String name) {
+        enum Kind {
+            RELOAD,
+            PRODUCT,
+            CATEGORY
+        }
+
+        static Change reload() {
+            return new Change(Kind.RELOAD, null);
+        }
+
+        static Change product(String name) {
+            return new Change(Kind.PRODUCT, name);
+        }
+
+        static Change category(String name) {
+            return new Change(Kind.CATEGORY, name);
+        }
+    }
+
+    private class CatalogWatcher implements Watcher {
+
+        private volatile boolean disposed;
+
+        private Runnable disposeHook;
+
+        @Override
+        public void onAdd(Extension extension) {
+            notifyChange(extension);
+        }
+
+        @Override
+        public void onUpdate(Extension oldExtension, Extension newExtension) {
+            notifyChange(newExtension);
+        }
+
+        @Override
+        public void onDelete(Extension extension) {
+            notifyChange(extension);
+        }
+
+        @Override
+        public void registerDisposeHook(Runnable dispose) {
+            this.disposeHook = dispose;
+        }
+
+        @Override
+        public void dispose() {
+            disposed = true;
+            if (Objects.nonNull(disposeHook)) {
+                disposeHook.run();
+            }
+        }
+
+        @Override
+        public boolean isDisposed() {
+            return disposed;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package zpl.valve.plugin.client;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import run.halo.app.extension.Extension;
+import run.halo.app.extension.ListOptions;
+import run.halo.app.extension.ListResult;
+import run.halo.app.extension.PageRequest;
+import run.halo.app.extension.ReactiveExtensionClient;
+import zpl.valve.plugin.metrics.PluginMetrics;
+import zpl.valve.plugin.metrics.QueryShape;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * {@link ReactiveExtensionClient} 读操作的合并层（single-flight）。
+ * <p>查询键（扩展类型、名称或分页与排序）相同的并发请求共享同一个进行中的查询，
+ * 查询结束后立即移除，之后的请求会重新执行，因此不会返回过期数据。</p>
+ * <p>只合并按名称获取和不带标签、字段选择器的列表查询。查询条件没有可靠的相等性和字符串形式，
+ * 无法安全地作为键，带条件的查询直接交给 {@link ReactiveExtensionClient}；排序按各排序项的属性、方向和
+ * 空值处理拼成键，不依赖 {@link Sort#toString()}。</p>
+ * <p>返回的对象在多个调用方之间共享，调用方不应修改。实际执行的查询记入
+ * {@link PluginMetrics#STORE} 指标，被合并的请求不重复计时；执行与合并的次数记入
+ * {@link PluginMetrics#COALESCING}，按操作、扩展类型和查询形状区分，不使用原始查询键作为标签。</p>
+ */
+@Component
+public class CoalescingReader {
+
+    private final ReactiveExtensionClient client;
+
+    private final PluginMetrics pluginMetrics;
+
+    private final Map<String, Mono<?>> inflight = new ConcurrentHashMap<>();
+
+    public CoalescingReader(ReactiveExtensionClient client, PluginMetrics pluginMetrics) {
+        this.client = client;
+        this.pluginMetrics = pluginMetrics;
+    }
+
+    public <E extends Extension> Flux<E> listAll(Class<E> type, ListOptions options, Sort sort) {
+        if (!isUnfiltered(options)) {
+            return pluginMetrics.store("listAll", type, options,
+                client.listAll(type, options, sort));
+        }
+        String key = "listAll|" + type.getName() + "|" + sortKey(sort);
+        return coalesce(key, "listAll", type, QueryShape.of(options), () -> pluginMetrics.store(
+                "listAll", type, options, client.listAll(type, options, sort).collectList()))
+            .flatMapIterable(items -> items);
+    }
+
+    public <E extends Extension> Mono<ListResult<E>> listBy(Class<E> type, ListOptions options,
+        PageRequest pageRequest) {
+        if (!isUnfiltered(options)) {
+            return pluginMetrics.store("listBy", type, options,
+                client.listBy(type, options, pageRequest));
+        }
+        String key = "listBy|" + type.getName()
+            + "|" + pageRequest.getPageNumber() + "," + pageRequest.getPageSize()
+            + "|" + sortKey(pageRequest.getSort());
+        return coalesce(key, "listBy", type, QueryShape.of(options), () -> pluginMetrics.store(
+            "listBy", type, options, client.listBy(type, options, pageRequest)));
+    }
+
+    public <E extends Extension> Mono<E> fetch(Class<E> type, String name) {
+        String key = "fetch|" + type.getName() + "|" + name;
+        return coalesce(key, "fetch", type, QueryShape.BY_NAME, () -> pluginMetrics.store("fetch",
+            type, QueryShape.BY_NAME, client.fetch(type, name)));
+    }
+
+    static boolean isUnfiltered(ListOptions options) {
+        return options == null
+            || options.getFieldSelector() == null
+            && (options.getLabelSelector() == null
+            || options.getLabelSelector().getMatchers() == null
+            || options.getLabelSelector().getMatchers().isEmpty());
+    }
+
+    static String sortKey(Sort sort) {
+        if (sort == null || sort.isUnsorted()) {
+            return "";
+        }
+        StringBuilder key = new StringBuilder();
+        for (Sort.Order order : sort) {
+            if (!key.isEmpty()) {
+                key.append(',');
+            }
+            // 属性名中不会出现逗号和冒号
+            key.append(order.getProperty()).append(':').append(order.getDirection())
+                .append(':').append(order.isIgnoreCase() ? "i" : "")
+                .append(':').append(order.getNullHandling());
+        }
+        return key.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> Mono<T> coalesce(String key, String operation, Class<?> type, String shape,
+        Supplier<Mono<T>> source) {
+        return Mono.defer(() -> {
+            boolean[] executed = {false};
+            Mono<?> shared = inflight.computeIfAbsent(key, k -> {
+                executed[0] = true;
+                return source.get()
+                    .doFinally(signal -> inflight.remove(k))
+                    .share();
+            });
+            pluginMetrics.coalescing(operation, type, shape, executed[0]);
+            return (Mono<T>) shared;
+        });
+    }
+}
@@ -0,0 +1,137 @@
+package zpl.valve.plugin.dedup;
+
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import zpl.valve.plugin.extension.Consultation;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 咨询重复提交检测。
+ * <p>对规范化后的（姓名、邮箱、内容）计算 SHA-256 指纹，先查按时间窗口淘汰的布隆过滤器，
+ * 命中后再查精确的 LRU 确认，确认重复时直接返回已有的咨询名称，不再创建。
+ * 同一指纹的并发提交只会执行一次创建，其余请求等待并复用其结果。</p>
+ * <p>布隆过滤器和 LRU 的容量都是固定的，内存占用与提交量无关。LRU 被挤出的旧指纹会被当作新提交处理。</p>
+ */
+@Component
+public class ConsultationDeduplicator {
+
+    static final Duration WINDOW = Duration.ofHours(1);
+
+    /**
+     * 每一代 2^20 位（128 KiB），7 个哈希函数，每代约 10 万条时误判率约 1%。
+     */
+    static final int BLOOM_BITS = 1 << 20;
+    static final int BLOOM_HASHES = 7;
+
+    static final int MAX_RECENT = 10_000;
+
+    private final TimeWindowedBloomFilter bloomFilter =
+        new TimeWindowedBloomFilter(BLOOM_BITS, BLOOM_HASHES, WINDOW);
+
+    private final LinkedHashMap<String, Recent> recent = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Recent> eldest) {
+            return size() > MAX_RECENT;
+        }
+    };
+
+    private final Map<String, Mono<String>> inflight = new ConcurrentHashMap<>();
+
+    /**
+     * 提交咨询，重复时返回已有咨询的名称，否则调用 creator 创建并记录其名称。
+     *
+     * @param creator 创建咨询，返回创建后的咨询名称
+     */
+    public Mono<Result> submit(Consultation.ConsultationSpec spec, Supplier<Mono<String>> creator) {
+        return Mono.defer(() -> {
+            byte[] digest = fingerprint(spec);
+            String key = HexFormat.of().formatHex(digest);
+            ByteBuffer hashes = ByteBuffer.wrap(digest);
+            long h1 = hashes.getLong();
+            long h2 = hashes.getLong();
+            if (bloomFilter.mightContain(h1, h2)) {
+                String existing = findRecent(key);
+                if (existing != null) {
+                    return Mono.just(new Result(existing, true));
+                }
+            }
+            boolean[] owner = {false};
+            Mono<String> shared = inflight.computeIfAbsent(key, k -> {
+                owner[0] = true;
+                return creator.get()
+                    .doOnNext(name -> {
+                        bloomFilter.put(h1, h2);
+                        remember(k, name);
+                    })
+                    .doFinally(signal -> inflight.remove(k))
+                    .cache();
+            });
+            return shared.map(name -> new Result(name, !owner[0]));
+        });
+    }
+
+    private synchronized String findRecent(String key) {
+        Recent entry = recent.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.recordedAt() > WINDOW.toNanos()) {
+            recent.remove(key);
+            return null;
+        }
+        return entry.name();
+    }
+
+    private synchronized void remember(String key, String name) {
+        recent.put(key, new Recent(name, System.nanoTime()));
+    }
+
+    static byte[] fingerprint(Consultation.ConsultationSpec spec) {
+        String normalized = normalize(spec.getName()) + '\u0000'
+            + normalize(spec.getEmail()) + '\u0000'
+            + normalize(spec.getContent());
+        try {
+            return MessageDigest.getInstance("SHA-256")
+                .digest(normalized.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 统一全半角、大小写，合并连续空白。
+     */
+    private static String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        return Normalizer.normalize(value, Normalizer.Form.NFKC)
+            .strip()
+            .replaceAll("\\s+", " ")
+            .toLowerCase(Locale.ROOT);
+    }
+
+    private record Recent(String name, long recordedAt) {
+    }
+
+    /**
+     * 提交结果。
+     *
+     * @param name 咨询名称
+     * @param duplicate 是否为重复提交
+     */
+    public record Result(String name, boolean duplicate) {
+    }
+}
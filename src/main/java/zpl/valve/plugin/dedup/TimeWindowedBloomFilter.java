@@ -0,0 +1,110 @@
+package zpl.valve.plugin.dedup;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * 按时间窗口淘汰的布隆过滤器。
+ * <p>内部保留两代位图，当前代写满半个窗口后成为上一代，原来的上一代被丢弃，
+ * 因此一个元素至少在半个窗口、至多在一个窗口内可以被查到，占用内存固定为两个位图。</p>
+ * <p>位图用 {@link AtomicLongArray} 按 CAS 置位，读写都不加锁。</p>
+ */
+public class TimeWindowedBloomFilter {
+
+    private final int bits;
+
+    private final int hashes;
+
+    private final long generationNanos;
+
+    private final LongSupplier nanoClock;
+
+    private final AtomicReference<Generations> generations;
+
+    /**
+     * @param bits 每一代位图的位数，向上取整为 64 的倍数
+     * @param hashes 每个元素使用的哈希函数个数
+     * @param window 元素可被查到的最长时间
+     */
+    public TimeWindowedBloomFilter(int bits, int hashes, Duration window) {
+        this(bits, hashes, window, System::nanoTime);
+    }
+
+    TimeWindowedBloomFilter(int bits, int hashes, Duration window, LongSupplier nanoClock) {
+        this.bits = (bits + 63) / 64 * 64;
+        this.hashes = hashes;
+        this.generationNanos = window.toNanos() / 2;
+        this.nanoClock = nanoClock;
+        this.generations = new AtomicReference<>(new Generations(
+            new AtomicLongArray(this.bits / 64), new AtomicLongArray(this.bits / 64),
+            nanoClock.getAsLong()));
+    }
+
+    /**
+     * 添加元素，h1 和 h2 是元素的两个独立 64 位哈希值。
+     */
+    public void put(long h1, long h2) {
+        AtomicLongArray current = rotateIfDue().current();
+        for (int i = 0; i < hashes; i++) {
+            int bit = index(h1, h2, i);
+            int word = bit >>> 6;
+            long mask = 1L << (bit & 63);
+            long value;
+            do {
+                value = current.get(word);
+                if ((value & mask) != 0) {
+                    break;
+                }
+            } while (!current.compareAndSet(word, value, value | mask));
+        }
+    }
+
+    /**
+     * 元素可能存在时返回 true，返回 false 时一定不存在。
+     */
+    public boolean mightContain(long h1, long h2) {
+        Generations snapshot = rotateIfDue();
+        return contains(snapshot.current(), h1, h2) || contains(snapshot.previous(), h1, h2);
+    }
+
+    private boolean contains(AtomicLongArray bitmap, long h1, long h2) {
+        for (int i = 0; i < hashes; i++) {
+            int bit = index(h1, h2, i);
+            if ((bitmap.get(bit >>> 6) & (1L << (bit & 63))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 双重哈希（Kirsch-Mitzenmacher）生成第 i 个位置。
+     */
+    private int index(long h1, long h2, int i) {
+        return (int) Long.remainderUnsigned(h1 + i * h2, bits);
+    }
+
+    private Generations rotateIfDue() {
+        long now = nanoClock.getAsLong();
+        while (true) {
+            Generations snapshot = generations.get();
+            if (now - snapshot.startedAt() < generationNanos) {
+                return snapshot;
+            }
+            Generations rotated = now - snapshot.startedAt() < generationNanos * 2
+                ? new Generations(new AtomicLongArray(bits / 64), snapshot.current(), now)
+                // 超过一整个窗口没有访问，两代都已过期
+                : new Generations(new AtomicLongArray(bits / 64),
+                    new AtomicLongArray(bits / 64), now);
+            if (generations.compareAndSet(snapshot, rotated)) {
+                return rotated;
+            }
+        }
+    }
+
+    private record Generations(AtomicLongArray current, AtomicLongArray previous,
+                               long startedAt) {
+    }
+}
@@ -0,0 +1,11 @@
+package zpl.valve.plugin.finder;
+
+import reactor.core.publisher.Mono;
+import zpl.valve.plugin.vo.HomePageVo;
+
+public interface HomePageFinder {
+    /**
+     * 获取首页全部板块，数据来自内存中的快照，不访问扩展存储。
+     */
+    Mono<HomePageVo> get();
+}
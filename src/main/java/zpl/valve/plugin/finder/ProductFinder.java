@@ -7,9 +7,24 @@ import zpl.valve.plugin.extension.Product;
 import zpl.valve.plugin.vo.ProductCategoryVo;
 import zpl.valve.plugin.vo.ProductVo;
 
+import java.util.List;
+
 public interface ProductFinder {
     Flux<ProductVo> listAll();
 
     Mono<ListResult<ProductVo>> listByCategory(String categoryMetadataName, Integer page,
         Integer size);
+
+    /**
+     * 按相关度列出与指定产品共享规格或分类的产品，最多 6 个。
+     */
+    Flux<ProductVo> listRelated(String productMetadataName);
+
+    /**
+     * 按规格筛选产品，条件写作 {@code 名称:值}，同一名称的多个值为 OR，不同名称之间为 AND。
+     *
+     * @param categoryMetadataName 分类名称，为空时不限分类
+     */
+    Mono<ListResult<ProductVo>> listByStandards(String categoryMetadataName,
+        List<String> standards, Integer page, Integer size);
 }
\ No newline at end of file
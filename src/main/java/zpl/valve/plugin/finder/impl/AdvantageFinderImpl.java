@@ -1,37 +1,27 @@
 package zpl.valve.plugin.finder.impl;
 
-import org.springframework.data.domain.Sort;
 import reactor.core.publisher.Flux;
-import run.halo.app.extension.ListOptions;
-import run.halo.app.extension.ReactiveExtensionClient;
 import run.halo.app.theme.finders.Finder;
-import zpl.valve.plugin.extension.Advantage;
-import zpl.valve.plugin.extension.Banner;
 import zpl.valve.plugin.finder.AdvantageFinder;
-import zpl.valve.plugin.finder.BannerFinder;
+import zpl.valve.plugin.home.HomePageContent;
+import zpl.valve.plugin.metrics.PluginMetrics;
+import zpl.valve.plugin.vo.HomePageVo;
 import zpl.valve.plugin.vo.AdvantageVo;
-import zpl.valve.plugin.vo.BannerVo;
-
-import static org.springframework.data.domain.Sort.Order.asc;
 
 @Finder("advantageFinder")
 public class AdvantageFinderImpl implements AdvantageFinder {
-    private final ReactiveExtensionClient client;
+    private final HomePageContent homePageContent;
+
+    private final PluginMetrics pluginMetrics;
 
-    public AdvantageFinderImpl(ReactiveExtensionClient client) {
-        this.client = client;
+    public AdvantageFinderImpl(HomePageContent homePageContent, PluginMetrics pluginMetrics) {
+        this.homePageContent = homePageContent;
+        this.pluginMetrics = pluginMetrics;
     }
 
     @Override
     public Flux<AdvantageVo> listAll() {
-        return client.listAll(Advantage.class, new ListOptions(), defaultLinkSort())
-            .map(AdvantageVo::from);
-    }
-
-    static Sort defaultLinkSort() {
-        return Sort.by(asc("spec.priority"),
-            asc("metadata.creationTimestamp"),
-            asc("metadata.name")
-        );
+        return pluginMetrics.finder("advantageFinder", "listAll", homePageContent.snapshot()
+            .flatMapIterable(HomePageVo::getAdvantages));
     }
 }
@@ -1,37 +1,27 @@
 package zpl.valve.plugin.finder.impl;
 
-import org.springframework.data.domain.Sort;
 import reactor.core.publisher.Flux;
-import run.halo.app.extension.ListOptions;
-import run.halo.app.extension.ReactiveExtensionClient;
 import run.halo.app.theme.finders.Finder;
-import zpl.valve.plugin.extension.ApplicationArea;
-import zpl.valve.plugin.extension.Banner;
 import zpl.valve.plugin.finder.ApplicationAreaFinder;
-import zpl.valve.plugin.finder.BannerFinder;
+import zpl.valve.plugin.home.HomePageContent;
+import zpl.valve.plugin.metrics.PluginMetrics;
+import zpl.valve.plugin.vo.HomePageVo;
 import zpl.valve.plugin.vo.ApplicationAreaVo;
-import zpl.valve.plugin.vo.BannerVo;
-
-import static org.springframework.data.domain.Sort.Order.asc;
 
 @Finder("applicationAreaFinder")
 public class ApplicationAreaFinderImpl implements ApplicationAreaFinder {
-    private final ReactiveExtensionClient client;
+    private final HomePageContent homePageContent;
+
+    private final PluginMetrics pluginMetrics;
 
-    public ApplicationAreaFinderImpl(ReactiveExtensionClient client) {
-        this.client = client;
+    public ApplicationAreaFinderImpl(HomePageContent homePageContent, PluginMetrics pluginMetrics) {
+        this.homePageContent = homePageContent;
+        this.pluginMetrics = pluginMetrics;
     }
 
     @Override
     public Flux<ApplicationAreaVo> listAll() {
-        return client.listAll(ApplicationArea.class, new ListOptions(), defaultLinkSort())
-            .map(ApplicationAreaVo::from);
-    }
-
-    static Sort defaultLinkSort() {
-        return Sort.by(asc("spec.priority"),
-            asc("metadata.creationTimestamp"),
-            asc("metadata.name")
-        );
+        return pluginMetrics.finder("applicationAreaFinder", "listAll", homePageContent.snapshot()
+            .flatMapIterable(HomePageVo::getApplicationAreas));
     }
 }
@@ -1,36 +1,27 @@
 package zpl.valve.plugin.finder.impl;
 
-import org.springframework.data.domain.Sort;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.Mono;
-import run.halo.app.extension.ListOptions;
-import run.halo.app.extension.ReactiveExtensionClient;
 import run.halo.app.theme.finders.Finder;
-import zpl.valve.plugin.extension.Banner;
 import zpl.valve.plugin.finder.BannerFinder;
+import zpl.valve.plugin.home.HomePageContent;
+import zpl.valve.plugin.metrics.PluginMetrics;
+import zpl.valve.plugin.vo.HomePageVo;
 import zpl.valve.plugin.vo.BannerVo;
 
-import static org.springframework.data.domain.Sort.Order.asc;
-import static run.halo.app.extension.index.query.QueryFactory.*;
-
 @Finder("bannerFinder")
 public class BannerFinderImpl implements BannerFinder {
-    private final ReactiveExtensionClient client;
+    private final HomePageContent homePageContent;
+
+    private final PluginMetrics pluginMetrics;
 
-    public BannerFinderImpl(ReactiveExtensionClient client) {
-        this.client = client;
+    public BannerFinderImpl(HomePageContent homePageContent, PluginMetrics pluginMetrics) {
+        this.homePageContent = homePageContent;
+        this.pluginMetrics = pluginMetrics;
     }
 
     @Override
     public Flux<BannerVo> listAll() {
-        return client.listAll(Banner.class, new ListOptions(), defaultLinkSort())
-            .map(BannerVo::from);
-    }
-
-    static Sort defaultLinkSort() {
-        return Sort.by(asc("spec.priority"),
-            asc("metadata.creationTimestamp"),
-            asc("metadata.name")
-        );
+        return pluginMetrics.finder("bannerFinder", "listAll", homePageContent.snapshot()
+            .flatMapIterable(HomePageVo::getBanners));
     }
 }
@@ -1,39 +1,27 @@
 package zpl.valve.plugin.finder.impl;
 
-import org.springframework.data.domain.Sort;
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import run.halo.app.extension.ListOptions;
-import run.halo.app.extension.ReactiveExtensionClient;
 import run.halo.app.theme.finders.Finder;
-import zpl.valve.plugin.extension.HomeAbout;
-import zpl.valve.plugin.extension.Timeline;
 import zpl.valve.plugin.finder.HomeAboutFinder;
-import zpl.valve.plugin.finder.TimelineFinder;
+import zpl.valve.plugin.home.HomePageContent;
+import zpl.valve.plugin.metrics.PluginMetrics;
 import zpl.valve.plugin.vo.HomeAboutVo;
-import zpl.valve.plugin.vo.TimelineVo;
-
-import static org.springframework.data.domain.Sort.Order.asc;
+import zpl.valve.plugin.vo.HomePageVo;
 
 @Finder("homeAboutFinder")
 public class HomeAboutFinderImpl implements HomeAboutFinder {
-    private final ReactiveExtensionClient client;
+    private final HomePageContent homePageContent;
+
+    private final PluginMetrics pluginMetrics;
 
-    public HomeAboutFinderImpl(ReactiveExtensionClient client) {
-        this.client = client;
+    public HomeAboutFinderImpl(HomePageContent homePageContent, PluginMetrics pluginMetrics) {
+        this.homePageContent = homePageContent;
+        this.pluginMetrics = pluginMetrics;
     }
 
     @Override
     public Mono<HomeAboutVo> get() {
-        return client.listAll(HomeAbout.class, new ListOptions(), defaultLinkSort())
-            .map(HomeAboutVo::from)
-            .next();
-    }
-
-    static Sort defaultLinkSort() {
-        return Sort.by(
-            asc("metadata.creationTimestamp"),
-            asc("metadata.name")
-        );
+        return pluginMetrics.finder("homeAboutFinder", "get", homePageContent.snapshot()
+            .mapNotNull(HomePageVo::getHomeAbout));
     }
-}
\ No newline at end of file
+}
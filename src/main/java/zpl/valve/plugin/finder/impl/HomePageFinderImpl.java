@@ -0,0 +1,25 @@
+package zpl.valve.plugin.finder.impl;
+
+import reactor.core.publisher.Mono;
+import run.halo.app.theme.finders.Finder;
+import zpl.valve.plugin.finder.HomePageFinder;
+import zpl.valve.plugin.home.HomePageContent;
+import zpl.valve.plugin.metrics.PluginMetrics;
+import zpl.valve.plugin.vo.HomePageVo;
+
+@Finder("homePageFinder")
+public class HomePageFinderImpl implements HomePageFinder {
+    private final HomePageContent homePageContent;
+
+    private final PluginMetrics pluginMetrics;
+
+    public HomePageFinderImpl(HomePageContent homePageContent, PluginMetrics pluginMetrics) {
+        this.homePageContent = homePageContent;
+        this.pluginMetrics = pluginMetrics;
+    }
+
+    @Override
+    public Mono<HomePageVo> get() {
+        return pluginMetrics.finder("homePageFinder", "get", homePageContent.snapshot());
+    }
+}
@@ -1,37 +1,28 @@
 package zpl.valve.plugin.finder.impl;
 
-import org.springframework.data.domain.Sort;
 import reactor.core.publisher.Flux;
-import run.halo.app.extension.ListOptions;
-import run.halo.app.extension.ReactiveExtensionClient;
 import run.halo.app.theme.finders.Finder;
-import zpl.valve.plugin.extension.Banner;
-import zpl.valve.plugin.extension.ProductCategory;
-import zpl.valve.plugin.finder.BannerFinder;
+import zpl.valve.plugin.catalog.CatalogSnapshot;
+import zpl.valve.plugin.catalog.ProductCatalog;
 import zpl.valve.plugin.finder.ProductCategoryFinder;
-import zpl.valve.plugin.vo.BannerVo;
+import zpl.valve.plugin.metrics.PluginMetrics;
 import zpl.valve.plugin.vo.ProductCategoryVo;
 
-import static org.springframework.data.domain.Sort.Order.asc;
-
 @Finder("productCategoryFinder")
 public class ProductCategoryFinderImpl implements ProductCategoryFinder {
-    private final ReactiveExtensionClient client;
+    private final ProductCatalog productCatalog;
+
+    private final PluginMetrics pluginMetrics;
 
-    public ProductCategoryFinderImpl(ReactiveExtensionClient client) {
-        this.client = client;
+    public ProductCategoryFinderImpl(ProductCatalog productCatalog, PluginMetrics pluginMetrics) {
+        this.productCatalog = productCatalog;
+        this.pluginMetrics = pluginMetrics;
     }
 
     @Override
     public Flux<ProductCategoryVo> listAll() {
-        return client.listAll(ProductCategory.class, new ListOptions(), defaultLinkSort())
-            .map(ProductCategoryVo::from);
-    }
-
-    static Sort defaultLinkSort() {
-        return Sort.by(asc("spec.priority"),
-            asc("metadata.creationTimestamp"),
-            asc("metadata.name")
-        );
+        return pluginMetrics.finder("productCategoryFinder", "listAll", productCatalog.snapshot()
+            .flatMapIterable(CatalogSnapshot::getCategories)
+            .map(ProductCategoryVo::from));
     }
 }
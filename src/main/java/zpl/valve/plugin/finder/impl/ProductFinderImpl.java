@@ -1,57 +1,100 @@
 package zpl.valve.plugin.finder.impl;
 
-import org.springframework.data.domain.Sort;
+import org.springframework.util.StringUtils;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import run.halo.app.extension.ListOptions;
 import run.halo.app.extension.ListResult;
-import run.halo.app.extension.PageRequestImpl;
-import run.halo.app.extension.ReactiveExtensionClient;
-import run.halo.app.extension.index.query.EqualQuery;
 import run.halo.app.theme.finders.Finder;
+import zpl.valve.plugin.catalog.CatalogSnapshot;
+import zpl.valve.plugin.catalog.ProductCatalog;
 import zpl.valve.plugin.extension.Product;
 import zpl.valve.plugin.finder.ProductFinder;
+import zpl.valve.plugin.index.ProductStandards;
+import zpl.valve.plugin.metrics.PluginMetrics;
+import zpl.valve.plugin.related.RelatedProductsIndex;
+import zpl.valve.plugin.search.ProductFacetIndex;
 import zpl.valve.plugin.vo.ProductVo;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
-import static org.springframework.data.domain.Sort.Order.asc;
-
 @Finder("productFinder")
 public class ProductFinderImpl implements ProductFinder {
-    private final ReactiveExtensionClient client;
+    private final ProductCatalog productCatalog;
+
+    private final RelatedProductsIndex relatedProductsIndex;
+
+    private final ProductFacetIndex productFacetIndex;
+
+    private final PluginMetrics pluginMetrics;
 
-    public ProductFinderImpl(ReactiveExtensionClient client) {
-        this.client = client;
+    public ProductFinderImpl(ProductCatalog productCatalog,
+        RelatedProductsIndex relatedProductsIndex, ProductFacetIndex productFacetIndex,
+        PluginMetrics pluginMetrics) {
+        this.productCatalog = productCatalog;
+        this.relatedProductsIndex = relatedProductsIndex;
+        this.productFacetIndex = productFacetIndex;
+        this.pluginMetrics = pluginMetrics;
     }
 
     @Override
     public Flux<ProductVo> listAll() {
-        return client.listAll(Product.class, new ListOptions(), defaultLinkSort())
-            .map(ProductVo::from);
+        return pluginMetrics.finder("productFinder", "listAll", productCatalog.snapshot()
+            .flatMapIterable(CatalogSnapshot::getProducts)
+            .map(ProductVo::from));
     }
 
     @Override
     public Mono<ListResult<ProductVo>> listByCategory(String categoryMetadataName, Integer page, Integer size) {
-        PageRequestImpl pageRequest = new PageRequestImpl(page, size, defaultLinkSort());
-        ListOptions.ListOptionsBuilder listOptionsBuilder = new ListOptions.ListOptionsBuilder();
-        listOptionsBuilder.andQuery(
-            new EqualQuery("spec.categoryMetadataName", categoryMetadataName)
-        );
-        return client.listBy(Product.class, listOptionsBuilder.build(), pageRequest).map(
-            (resultList) -> new ListResult<>(
-                resultList.getPage(),
-                resultList.getSize(),
-                resultList.getTotal(),
-                resultList.getItems().stream().map(ProductVo::from).collect(Collectors.toList())
-            )
-        );
+        int pageNum = Objects.requireNonNullElse(page, 1);
+        int pageSize = Objects.requireNonNullElse(size, 10);
+        return pluginMetrics.finder("productFinder", "listByCategory", productCatalog.snapshot()
+            .map(catalog -> catalog.listByCategory(categoryMetadataName, pageNum, pageSize))
+            .map(
+                (resultList) -> new ListResult<>(
+                    resultList.getPage(),
+                    resultList.getSize(),
+                    resultList.getTotal(),
+                    resultList.getItems().stream().map(ProductVo::from).collect(Collectors.toList())
+                )
+            ));
     }
 
-    static Sort defaultLinkSort() {
-        return Sort.by(asc("spec.priority"),
-            asc("metadata.creationTimestamp"),
-            asc("metadata.name")
-        );
+    @Override
+    public Flux<ProductVo> listRelated(String productMetadataName) {
+        return pluginMetrics.finder("productFinder", "listRelated", productCatalog.snapshot()
+            .flatMapIterable(catalog -> relatedProductsIndex.related(productMetadataName)
+                .orElse(List.of())
+                .stream()
+                .flatMap(name -> catalog.getProduct(name).stream())
+                .toList())
+            .map(ProductVo::from));
+    }
+
+    @Override
+    public Mono<ListResult<ProductVo>> listByStandards(String categoryMetadataName,
+        List<String> standards, Integer page, Integer size) {
+        int pageNum = Objects.requireNonNullElse(page, 1);
+        int pageSize = Objects.requireNonNullElse(size, 10);
+        Map<String, Set<String>> filters = ProductStandards.parseFilters(standards);
+        Set<String> categories = StringUtils.hasText(categoryMetadataName)
+            ? Set.of(categoryMetadataName) : Set.of();
+        // 规格条件通过分面索引的位图求交集，不访问扩展存储
+        return pluginMetrics.finder("productFinder", "listByStandards", productCatalog.snapshot()
+            .map(catalog -> {
+                List<Product> products = productFacetIndex.search(
+                        new ProductFacetIndex.Query(null, categories, Set.of(), filters))
+                    .names()
+                    .stream()
+                    .flatMap(name -> catalog.getProduct(name).stream())
+                    .sorted(CatalogSnapshot.PRODUCT_ORDER)
+                    .toList();
+                ListResult<Product> result = CatalogSnapshot.page(products, pageNum, pageSize);
+                return new ListResult<>(result.getPage(), result.getSize(), result.getTotal(),
+                    result.getItems().stream().map(ProductVo::from).toList());
+            }));
     }
 }
@@ -0,0 +1,318 @@
+package zpl.valve.plugin.home;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+import run.halo.app.extension.Extension;
+import run.halo.app.extension.GroupKind;
+import run.halo.app.extension.GroupVersionKind;
+import run.halo.app.extension.ListOptions;
+import run.halo.app.extension.ReactiveExtensionClient;
+import run.halo.app.extension.Watcher;
+import zpl.valve.plugin.catalog.CatalogListener;
+import zpl.valve.plugin.catalog.CatalogSnapshot;
+import zpl.valve.plugin.catalog.ProductCatalog;
+import zpl.valve.plugin.extension.Advantage;
+import zpl.valve.plugin.extension.ApplicationArea;
+import zpl.valve.plugin.extension.Banner;
+import zpl.valve.plugin.extension.HomeAbout;
+import zpl.valve.plugin.extension.ProductCategory;
+import zpl.valve.plugin.extension.Timeline;
+import zpl.valve.plugin.metrics.PluginMetrics;
+import zpl.valve.plugin.vo.AdvantageVo;
+import zpl.valve.plugin.vo.ApplicationAreaVo;
+import zpl.valve.plugin.vo.BannerVo;
+import zpl.valve.plugin.vo.HomeAboutVo;
+import zpl.valve.plugin.vo.HomePageVo;
+import zpl.valve.plugin.vo.ProductCategoryVo;
+import zpl.valve.plugin.vo.TimelineVo;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import static org.springframework.data.domain.Sort.Order.asc;
+
+/**
+ * 首页内容快照。
+ * <p>轮播图、首页关于、核心优势、应用领域、时间线通过扩展监听感知变更，任一类型变更后
+ * 重新查询这五类数据生成新快照；连续的变更合并为一次重建（重建进行中最多再排队一次）。
+ * 产品分类直接取自产品目录快照（见 {@link CatalogListener}），不额外查询。</p>
+ * <p>读取方通过 {@link #snapshot()} 获取当前快照，首页渲染不访问扩展存储。</p>
+ * <p>重建重试后仍然失败时，{@value #REBUILD_RETRY_SECONDS} 秒后再次重建。首个快照生成之前，
+ * {@link #snapshot()} 最多等待 {@value #SNAPSHOT_TIMEOUT_SECONDS} 秒，之后直接从扩展存储和产品目录
+ * 生成一份临时快照，仍然失败时返回 503。</p>
+ */
+@Slf4j
+@Component
+public class HomePageContent implements CatalogListener {
+
+    private static final Set<GroupKind> WATCHED = Set.of(
+        GroupVersionKind.fromExtension(Banner.class).groupKind(),
+        GroupVersionKind.fromExtension(HomeAbout.class).groupKind(),
+        GroupVersionKind.fromExtension(Advantage.class).groupKind(),
+        GroupVersionKind.fromExtension(ApplicationArea.class).groupKind(),
+        GroupVersionKind.fromExtension(Timeline.class).groupKind());
+
+    private static final Sort PRIORITY_SORT = Sort.by(asc("spec.priority"),
+        asc("metadata.creationTimestamp"),
+        asc("metadata.name"));
+
+    private static final Sort TIMELINE_SORT = Sort.by(asc("spec.datetime"),
+        asc("spec.priority"),
+        asc("metadata.creationTimestamp"),
+        asc("metadata.name"));
+
+    private static final Sort HOME_ABOUT_SORT = Sort.by(asc("metadata.creationTimestamp"),
+        asc("metadata.name"));
+
+    static final long REBUILD_RETRY_SECONDS = 10;
+
+    static final long SNAPSHOT_TIMEOUT_SECONDS = 5;
+
+    /**
+     * 临时快照的缓存时间，避免首个快照生成之前每个请求都访问扩展存储。
+     */
+    private static final Duration FALLBACK_TTL = Duration.ofSeconds(5);
+
+    private final ReactiveExtensionClient client;
+
+    private final ProductCatalog productCatalog;
+
+    private final PluginMetrics pluginMetrics;
+
+    private final Sinks.Many<HomePageVo> snapshots = Sinks.many().replay().latest();
+
+    private final Mono<HomePageVo> fallback;
+
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+
+    private volatile HomePageVo current;
+
+    /**
+     * 从扩展存储查询的五个板块，产品分类为空。
+     */
+    private HomePageVo sections;
+
+    private List<ProductCategoryVo> categories;
+
+    private volatile Sinks.Many<Boolean> changes;
+
+    private ContentWatcher watcher;
+
+    private Disposable subscription;
+
+    public HomePageContent(ReactiveExtensionClient client, ProductCatalog productCatalog,
+        PluginMetrics pluginMetrics) {
+        this.client = client;
+        this.productCatalog = productCatalog;
+        this.pluginMetrics = pluginMetrics;
+        this.fallback = Mono.zip(loadSections(), productCatalog.snapshot())
+            .map(tuple -> tuple.getT1().toBuilder()
+                .productCategories(categories(tuple.getT2()))
+                .build())
+            .doOnError(e -> log.warn("Failed to build a fallback home page snapshot", e))
+            .onErrorMap(e -> e instanceof ResponseStatusException ? e
+                : new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Home page content is not available", e))
+            .cache(snapshot -> FALLBACK_TTL, e -> Duration.ZERO, () -> Duration.ZERO);
+    }
+
+    /**
+     * 开始监听首页相关扩展的变更并生成首个快照，需要在 Scheme 注册之后调用。
+     */
+    public synchronized void start() {
+        if (subscription != null && !subscription.isDisposed()) {
+            return;
+        }
+        changes = Sinks.many().unicast().onBackpressureBuffer();
+        subscription = changes.asFlux()
+            .startWith(Boolean.TRUE)
+            // 重建期间到达的变更只保留一个，重建完成后再处理
+            .onBackpressureLatest()
+            .concatMap(change -> rebuild(), 1)
+            .subscribe(this::publishSections);
+        watcher = new ContentWatcher();
+        client.watch(watcher);
+    }
+
+    public synchronized void stop() {
+        if (watcher != null) {
+            watcher.dispose();
+            watcher = null;
+        }
+        if (changes != null) {
+            changes.tryEmitComplete();
+            changes = null;
+        }
+        if (subscription != null) {
+            subscription.dispose();
+            subscription = null;
+        }
+    }
+
+    /**
+     * 获取当前快照，首次生成之前会等待生成结果，超时后从扩展存储生成临时快照。
+     */
+    public Mono<HomePageVo> snapshot() {
+        HomePageVo snapshot = current;
+        if (snapshot != null) {
+            return Mono.just(snapshot);
+        }
+        return snapshots.asFlux().next()
+            .timeout(Duration.ofSeconds(SNAPSHOT_TIMEOUT_SECONDS), fallback);
+    }
+
+    @Override
+    public void onReload(CatalogSnapshot snapshot) {
+        publishCategories(snapshot);
+    }
+
+    @Override
+    public void onCategoryChanged(CatalogSnapshot snapshot, ProductCategory previous,
+        ProductCategory current) {
+        publishCategories(snapshot);
+    }
+
+    private Mono<HomePageVo> rebuild() {
+        return loadSections()
+            .retryWhen(Retry.backoff(5, Duration.ofMillis(200)))
+            .onErrorResume(e -> {
+                log.warn("Failed to rebuild home page snapshot", e);
+                scheduleRebuild();
+                return Mono.empty();
+            });
+    }
+
+    /**
+     * 安排一次重建，已经安排的重建执行之前不会重复安排。
+     */
+    private void scheduleRebuild() {
+        if (!rebuildScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        Mono.delay(Duration.ofSeconds(REBUILD_RETRY_SECONDS)).subscribe(tick -> {
+            rebuildScheduled.set(false);
+            emit();
+        });
+    }
+
+    private Mono<HomePageVo> loadSections() {
+        return Mono.zip(
+                list(Banner.class, PRIORITY_SORT, BannerVo::from),
+                list(HomeAbout.class, HOME_ABOUT_SORT, HomeAboutVo::from),
+                list(Advantage.class, PRIORITY_SORT, AdvantageVo::from),
+                list(ApplicationArea.class, PRIORITY_SORT, ApplicationAreaVo::from),
+                list(Timeline.class, TIMELINE_SORT, TimelineVo::from))
+            .map(tuple -> HomePageVo.builder()
+                .banners(tuple.getT1())
+                .homeAbout(tuple.getT2().isEmpty() ? null : tuple.getT2().get(0))
+                .advantages(tuple.getT3())
+                .applicationAreas(tuple.getT4())
+                .timelines(tuple.getT5())
+                .productCategories(List.of())
+                .build());
+    }
+
+    private <E extends Extension, V> Mono<List<V>> list(Class<E> type, Sort sort,
+        Function<E, V> mapper) {
+        ListOptions options = new ListOptions();
+        return pluginMetrics.store("listAll", type, options, client.listAll(type, options, sort))
+            .filter(extension -> extension.getMetadata().getDeletionTimestamp() == null)
+            .map(mapper)
+            .collectList()
+            .map(List::copyOf);
+    }
+
+    private synchronized void publishSections(HomePageVo sections) {
+        this.sections = sections;
+        publish();
+    }
+
+    private synchronized void publishCategories(CatalogSnapshot snapshot) {
+        this.categories = categories(snapshot);
+        publish();
+    }
+
+    private static List<ProductCategoryVo> categories(CatalogSnapshot snapshot) {
+        return snapshot.getCategories().stream()
+            .map(ProductCategoryVo::from)
+            .toList();
+    }
+
+    /**
+     * 两部分都已就绪时合成新快照，调用方持有锁。
+     */
+    private void publish() {
+        if (sections == null || categories == null) {
+            return;
+        }
+        HomePageVo snapshot = sections.toBuilder().productCategories(categories).build();
+        current = snapshot;
+        snapshots.tryEmitNext(snapshot);
+    }
+
+    private void notifyChange(Extension extension) {
+        if (extension != null && WATCHED.contains(extension.groupVersionKind().groupKind())) {
+            emit();
+        }
+    }
+
+    private void emit() {
+        Sinks.Many<Boolean> sink = changes;
+        if (sink == null) {
+            return;
+        }
+        // 监听回调可能来自多个线程，由 busyLooping 处理并发发射
+        sink.emitNext(Boolean.TRUE, Sinks.EmitFailureHandler.busyLooping(Duration.ofSeconds(1)));
+    }
+
+    private class ContentWatcher implements Watcher {
+
+        private volatile boolean disposed;
+
+        private Runnable disposeHook;
+
+        @Override
+        public void onAdd(Extension extension) {
+            notifyChange(extension);
+        }
+
+        @Override
+        public void onUpdate(Extension oldExtension, Extension newExtension) {
+            notifyChange(newExtension);
+        }
+
+        @Override
+        public void onDelete(Extension extension) {
+            notifyChange(extension);
+        }
+
+        @Override
+        public void registerDisposeHook(Runnable dispose) {
+            this.disposeHook = dispose;
+        }
+
+        @Override
+        public void dispose() {
+            disposed = true;
+            if (Objects.nonNull(disposeHook)) {
+                disposeHook.run();
+            }
+        }
+
+        @Override
+        public boolean isDisposed() {
+            return disposed;
+        }
+    }
+}
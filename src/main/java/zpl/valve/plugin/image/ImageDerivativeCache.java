@@ -0,0 +1,167 @@
+package zpl.valve.plugin.image;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * 图片衍生版本的磁盘缓存。
+ * <p>按总字节数限制容量，超出后删除最久未访问的文件。首次使用时扫描缓存目录，
+ * 按文件修改时间恢复访问顺序。文件先写入临时文件再原子移动，读取方不会看到写了一半的文件。</p>
+ * <p>最近 {@link #STREAMING_GRACE} 内被读取的文件可能还在向客户端传输，淘汰时跳过，
+ * 此时总字节数可以暂时超出上限。进程中断留下的临时文件在扫描目录时删除，
+ * 修改时间在 {@link #TEMP_FILE_GRACE} 以内的临时文件可能仍在写入（例如插件重载前的实例），
+ * 保留不动，由写入方自己删除。</p>
+ */
+@Slf4j
+class ImageDerivativeCache {
+
+    private static final String SUFFIX = ".img";
+
+    private static final String TEMP_PREFIX = "derivative-";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    static final Duration STREAMING_GRACE = Duration.ofMinutes(1);
+
+    static final Duration TEMP_FILE_GRACE = Duration.ofMinutes(10);
+
+    private final Path directory;
+
+    private final long maxBytes;
+
+    /**
+     * 缓存键 -> 文件大小和最近读取时间，按访问顺序排列。
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long totalBytes;
+
+    private boolean opened;
+
+    ImageDerivativeCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 获取缓存文件，不存在时返回 null。
+     */
+    synchronized Path get(String key) throws IOException {
+        open();
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        Path path = pathOf(key);
+        if (!Files.exists(path)) {
+            totalBytes -= entries.remove(key).size();
+            return null;
+        }
+        entries.put(key, new Entry(entry.size(), System.currentTimeMillis()));
+        return path;
+    }
+
+    /**
+     * 创建用于写入的临时文件，写完后调用 {@link #commit}。
+     */
+    Path createTempFile() throws IOException {
+        synchronized (this) {
+            open();
+        }
+        return Files.createTempFile(directory, TEMP_PREFIX, TEMP_SUFFIX);
+    }
+
+    synchronized Path commit(String key, Path tempFile) throws IOException {
+        open();
+        Path path = pathOf(key);
+        Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+        long size = Files.size(path);
+        long now = System.currentTimeMillis();
+        Entry previous = entries.put(key, new Entry(size, now));
+        totalBytes += size - (previous == null ? 0 : previous.size());
+        long streamingSince = now - STREAMING_GRACE.toMillis();
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Entry> entry = eldest.next();
+            if (entry.getValue().accessed() > streamingSince) {
+                // 按访问顺序排列，后面的文件读取得更晚
+                break;
+            }
+            Files.deleteIfExists(pathOf(entry.getKey()));
+            totalBytes -= entry.getValue().size();
+            eldest.remove();
+        }
+        return path;
+    }
+
+    private void open() throws IOException {
+        if (opened) {
+            return;
+        }
+        Files.createDirectories(directory);
+        deleteStaleTempFiles();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(path -> path.getFileName().toString().endsWith(SUFFIX))
+                .sorted(Comparator.comparing(ImageDerivativeCache::lastModified))
+                .forEach(path -> {
+                    String name = path.getFileName().toString();
+                    try {
+                        long size = Files.size(path);
+                        // 上次运行时的读取时间无从得知，记为 0
+                        entries.put(name.substring(0, name.length() - SUFFIX.length()),
+                            new Entry(size, 0));
+                        totalBytes += size;
+                    } catch (IOException e) {
+                        log.debug("Skip unreadable derivative {}", path, e);
+                    }
+                });
+        }
+        opened = true;
+    }
+
+    private void deleteStaleTempFiles() throws IOException {
+        FileTime staleBefore = FileTime.fromMillis(
+            System.currentTimeMillis() - TEMP_FILE_GRACE.toMillis());
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(path -> {
+                    String name = path.getFileName().toString();
+                    return name.startsWith(TEMP_PREFIX) && name.endsWith(TEMP_SUFFIX);
+                })
+                .filter(path -> lastModified(path).compareTo(staleBefore) < 0)
+                .forEach(path -> {
+                    try {
+                        Files.deleteIfExists(path);
+                    } catch (IOException e) {
+                        log.debug("Failed to delete stale temp file {}", path, e);
+                    }
+                });
+        }
+    }
+
+    private Path pathOf(String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private record Entry(long size, long accessed) {
+    }
+}
@@ -0,0 +1,247 @@
+package zpl.valve.plugin.image;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.UriUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 按需生成本地附件图片的缩放版本。
+ * <p>源文件取自 Halo 工作目录下的 {@code attachments/upload}，生成结果写入磁盘缓存
+ * （{@link #MAX_CACHE_BYTES}），缓存键包含源文件的修改时间和大小，源文件替换后自动失效。
+ * 同一衍生版本的并发请求只生成一次，同时进行的解码数量受 {@link #MAX_CONCURRENT_ENCODES} 限制。</p>
+ * <p>解码前先从文件头读取尺寸，像素数超过 {@link #MAX_SOURCE_PIXELS} 的源图片不处理，
+ * 避免解码时占用过多内存。</p>
+ */
+@Slf4j
+@Component
+public class ImageDerivativeService {
+
+    static final long MAX_CACHE_BYTES = 512L * 1024 * 1024;
+
+    static final int MAX_CONCURRENT_ENCODES =
+        Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    static final float QUALITY = 0.82f;
+
+    /**
+     * 源图片的最大像素数，解码后约占 {@code 4 * MAX_SOURCE_PIXELS} 字节。
+     */
+    static final long MAX_SOURCE_PIXELS = 24_000_000L;
+
+    private final Path uploadRoot;
+
+    private final ImageDerivativeCache cache;
+
+    private final Semaphore encodePermits = new Semaphore(MAX_CONCURRENT_ENCODES);
+
+    private final Map<String, Mono<Derivative>> inflight = new ConcurrentHashMap<>();
+
+    public ImageDerivativeService(Environment environment) {
+        Path workDir = Path.of(environment.getProperty("halo.work-dir",
+            Path.of(System.getProperty("user.home"), ".halo2").toString()));
+        this.uploadRoot = workDir.resolve("attachments").resolve("upload").normalize();
+        this.cache = new ImageDerivativeCache(
+            workDir.resolve("dl-plugin").resolve("image-cache"), MAX_CACHE_BYTES);
+    }
+
+    /**
+     * 获取衍生版本，源图片不存在或无法解码时返回空。
+     *
+     * @param src 本地附件地址，以 {@code /upload/} 开头
+     * @param width {@link ImageVariants#WIDTHS} 中的宽度
+     * @param format {@link ImageVariants#JPEG} 或 {@link ImageVariants#WEBP}
+     */
+    public Mono<Derivative> derive(String src, int width, String format) {
+        return Mono.fromCallable(() -> {
+                Path source = resolveSource(src);
+                return source == null ? null : new Source(source, cacheKey(source, width, format));
+            })
+            .subscribeOn(Schedulers.boundedElastic())
+            .flatMap(source -> inflight.computeIfAbsent(source.key(), key -> Mono
+                .fromCallable(() -> getOrCreate(key, source.path(), width, format))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(Mono::justOrEmpty)
+                .doFinally(signal -> inflight.remove(key))
+                .cache()));
+    }
+
+    public static boolean isFormatSupported(String format) {
+        return ImageVariants.JPEG.equals(format) || ImageVariants.WEBP.equals(format)
+            && ImageVariants.WEBP.equals(ImageVariants.DEFAULT_FORMAT);
+    }
+
+    /**
+     * 解析本地附件路径，不是本地附件或文件不存在时返回 null。
+     */
+    private Path resolveSource(String src) {
+        if (!ImageVariants.isLocal(src)) {
+            return null;
+        }
+        String relative = UriUtils.decode(src.substring(ImageVariants.LOCAL_PREFIX.length()),
+            StandardCharsets.UTF_8);
+        Path path = uploadRoot.resolve(relative).normalize();
+        // 防止通过 ../ 访问附件目录之外的文件
+        if (!path.startsWith(uploadRoot) || !Files.isRegularFile(path)) {
+            return null;
+        }
+        return path;
+    }
+
+    private Optional<Derivative> getOrCreate(String key, Path source, int width, String format)
+        throws IOException, InterruptedException {
+        Path cached = cache.get(key);
+        if (cached != null) {
+            return Optional.of(new Derivative(cached, key, format));
+        }
+        encodePermits.acquire();
+        try {
+            BufferedImage image = decode(source);
+            if (image == null) {
+                return Optional.empty();
+            }
+            Path temp = cache.createTempFile();
+            try {
+                write(resize(image, width), format, temp);
+                return Optional.of(new Derivative(cache.commit(key, temp), key, format));
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } finally {
+            encodePermits.release();
+        }
+    }
+
+    /**
+     * 解码源图片，格式不支持或像素数超过 {@link #MAX_SOURCE_PIXELS} 时返回 null。
+     */
+    private static BufferedImage decode(Path source) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source.toFile())) {
+            ImageReader reader = reader(input);
+            if (reader == null) {
+                log.debug("Unsupported image {}", source);
+                return null;
+            }
+            try {
+                reader.setInput(input, true, true);
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > MAX_SOURCE_PIXELS) {
+                    log.warn("Image {} is too large to resize: {}x{}", source,
+                        reader.getWidth(0), reader.getHeight(0));
+                    return null;
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static ImageReader reader(ImageInputStream input) {
+        if (input == null) {
+            return null;
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        return readers.hasNext() ? readers.next() : null;
+    }
+
+    /**
+     * 按宽度等比缩放，不放大。输出格式不支持透明，透明区域以白色填充。
+     */
+    private static BufferedImage resize(BufferedImage source, int width) {
+        int targetWidth = Math.min(width, source.getWidth());
+        int targetHeight = Math.max(1,
+            (int) Math.round((double) source.getHeight() * targetWidth / source.getWidth()));
+        BufferedImage target = new BufferedImage(targetWidth, targetHeight,
+            BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING,
+                RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, targetWidth, targetHeight);
+            graphics.drawImage(source, 0, 0, targetWidth, targetHeight, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    private static void write(BufferedImage image, String format, Path target) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if (!writers.hasNext()) {
+            throw new IOException("No image writer for " + format);
+        }
+        ImageWriter writer = writers.next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        if (param.canWriteCompressed()) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            String[] types = param.getCompressionTypes();
+            if (types != null && types.length > 0) {
+                param.setCompressionType(
+                    Arrays.asList(types).contains("Lossy") ? "Lossy" : types[0]);
+            }
+            param.setCompressionQuality(QUALITY);
+        }
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(target.toFile())) {
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private static String cacheKey(Path source, int width, String format) throws IOException {
+        String raw = source + "|" + Files.getLastModifiedTime(source).toMillis()
+            + "|" + Files.size(source) + "|" + width + "|" + format;
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                .digest(raw.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record Source(Path path, String key) {
+    }
+
+    /**
+     * 生成好的衍生版本。
+     *
+     * @param path 缓存文件
+     * @param key 缓存键，可作为 ETag
+     * @param format 图片格式
+     */
+    public record Derivative(Path path, String key, String format) {
+    }
+}
@@ -0,0 +1,63 @@
+package zpl.valve.plugin.image;
+
+import org.springframework.web.util.UriComponentsBuilder;
+
+import javax.imageio.ImageIO;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 图片衍生版本的地址。
+ * <p>只有本地附件（{@code /upload/} 开头）会生成衍生版本，其他地址原样使用。
+ * 宽度固定为 {@link #WIDTHS} 中的几档，避免任意宽度撑满缓存。</p>
+ * <p>{@code srcset} 在视图对象映射时生成，不读取源文件，总是列出全部档位。衍生版本不放大，
+ * 源图片比某一档窄时该档返回源图片宽度的版本。</p>
+ */
+public final class ImageVariants {
+
+    public static final String ENDPOINT =
+        "/apis/api.product.plugin.valve.zpl/v1alpha1/images/derivative";
+
+    public static final String LOCAL_PREFIX = "/upload/";
+
+    public static final List<Integer> WIDTHS = List.of(320, 640, 960, 1280, 1920);
+
+    public static final String JPEG = "jpeg";
+
+    public static final String WEBP = "webp";
+
+    /**
+     * 运行环境中注册了 WebP 编码器时默认输出 WebP，否则输出 JPEG。
+     */
+    public static final String DEFAULT_FORMAT =
+        ImageIO.getImageWritersByFormatName(WEBP).hasNext() ? WEBP : JPEG;
+
+    private ImageVariants() {
+    }
+
+    public static boolean isLocal(String src) {
+        return src != null && src.startsWith(LOCAL_PREFIX);
+    }
+
+    public static String url(String src, int width, String format) {
+        return UriComponentsBuilder.fromPath(ENDPOINT)
+            .queryParam("src", src)
+            .queryParam("w", width)
+            .queryParam("format", format)
+            .encode()
+            .build()
+            .toUriString();
+    }
+
+    /**
+     * 生成 {@code srcset} 属性值，非本地附件返回 null。
+     */
+    public static String srcset(String src) {
+        if (!isLocal(src)) {
+            return null;
+        }
+        return WIDTHS.stream()
+            .map(width -> url(src, width, DEFAULT_FORMAT) + " " + width + "w")
+            .collect(Collectors.joining(", "));
+    }
+}
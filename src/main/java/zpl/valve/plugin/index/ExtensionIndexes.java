@@ -0,0 +1,139 @@
+package zpl.valve.plugin.index;
+
+import run.halo.app.extension.index.IndexSpec;
+import run.halo.app.extension.index.IndexSpecs;
+import zpl.valve.plugin.extension.Advantage;
+import zpl.valve.plugin.extension.ApplicationArea;
+import zpl.valve.plugin.extension.Banner;
+import zpl.valve.plugin.extension.Consultation;
+import zpl.valve.plugin.extension.Product;
+import zpl.valve.plugin.extension.ProductCategory;
+import zpl.valve.plugin.extension.Timeline;
+
+import static run.halo.app.extension.index.IndexAttributeFactory.multiValueAttribute;
+import static run.halo.app.extension.index.IndexAttributeFactory.simpleAttribute;
+
+/**
+ * 插件各扩展类型的索引定义，注册 Scheme 时使用。
+ * <p>基准测试的内存存储也按这些定义计算索引值，保证查询条件的匹配结果与插件一致。</p>
+ */
+public final class ExtensionIndexes {
+
+    private ExtensionIndexes() {
+    }
+
+    public static void banner(IndexSpecs indexSpecs) {
+        // 轮播图索引，排序需要指定
+        indexSpecs.add(new IndexSpec()
+            .setName("spec.priority")
+            .setIndexFunc(simpleAttribute(Banner.class,
+                banner -> SortableNumbers.encode(banner.getSpec().getPriority())))
+        );
+    }
+
+    public static void timeline(IndexSpecs indexSpecs) {
+        // 时间线索引，排序需要指定
+        indexSpecs.add(new IndexSpec()
+            .setName("spec.datetime")
+            .setIndexFunc(
+                simpleAttribute(Timeline.class, timeline -> timeline.getSpec().getDatetime()))
+        );
+        indexSpecs.add(new IndexSpec()
+            .setName("spec.priority")
+            .setIndexFunc(simpleAttribute(Timeline.class,
+                timeline -> SortableNumbers.encode(timeline.getSpec().getPriority())))
+        );
+    }
+
+    public static void applicationArea(IndexSpecs indexSpecs) {
+        // 应用领域索引，排序需要指定
+        indexSpecs.add(new IndexSpec()
+            .setName("spec.priority")
+            .setIndexFunc(simpleAttribute(ApplicationArea.class,
+                applicationArea -> SortableNumbers.encode(applicationArea.getSpec().getPriority())))
+        );
+    }
+
+    public static void advantage(IndexSpecs indexSpecs) {
+        // 核心优势索引，排序需要指定
+        indexSpecs.add(new IndexSpec()
+            .setName("spec.priority")
+            .setIndexFunc(simpleAttribute(Advantage.class,
+                advantage -> SortableNumbers.encode(advantage.getSpec().getPriority())))
+        );
+    }
+
+    public static void productCategory(IndexSpecs indexSpecs) {
+        //  产品分类索引，排序需要指定
+        indexSpecs.add(new IndexSpec()
+            .setName("spec.priority")
+            .setIndexFunc(simpleAttribute(ProductCategory.class,
+                productCategory -> SortableNumbers.encode(productCategory.getSpec().getPriority())))
+        );
+    }
+
+    public static void product(IndexSpecs indexSpecs) {
+        //  产品索引，排序需要指定
+        indexSpecs.add(new IndexSpec()
+            .setName("spec.priority")
+            .setIndexFunc(simpleAttribute(Product.class,
+                product -> SortableNumbers.encode(product.getSpec().getPriority())))
+        );
+        indexSpecs.add(new IndexSpec()
+            .setName("spec.name")
+            .setIndexFunc(simpleAttribute(Product.class,
+                product -> String.valueOf(product.getSpec().getName())))
+        );
+        indexSpecs.add(new IndexSpec()
+            .setName("spec.description")
+            .setIndexFunc(simpleAttribute(Product.class,
+                product -> String.valueOf(product.getSpec().getDescription())))
+        );
+        indexSpecs.add(new IndexSpec()
+            .setName("spec.categoryMetadataName")
+            .setIndexFunc(simpleAttribute(Product.class,
+                product -> String.valueOf(product.getSpec().getCategoryMetadataName())))
+        );
+        indexSpecs.add(new IndexSpec()
+            .setName("spec.price")
+            .setIndexFunc(simpleAttribute(Product.class,
+                product -> SortableNumbers.encode(product.getSpec().getPrice())))
+        );
+        // 产品编号唯一，未设置编号的产品不建立索引
+        indexSpecs.add(new IndexSpec()
+            .setName(ProductSkus.INDEX_NAME)
+            .setUnique(true)
+            .setIndexFunc(simpleAttribute(Product.class,
+                product -> ProductSkus.normalize(product.getSpec().getSku())))
+        );
+        // 规格按 名称=值 建立多值索引
+        indexSpecs.add(new IndexSpec()
+            .setName(ProductStandards.INDEX_NAME)
+            .setIndexFunc(multiValueAttribute(Product.class, ProductStandards::terms))
+        );
+    }
+
+    public static void consultation(IndexSpecs indexSpecs) {
+        //  产品咨询索引，排序需要指定
+        indexSpecs.add(new IndexSpec()
+            .setName("spec.name")
+            .setIndexFunc(simpleAttribute(Consultation.class,
+                consultation -> String.valueOf(consultation.getSpec().getName())))
+        );
+        indexSpecs.add(new IndexSpec()
+            .setName("spec.status")
+            .setIndexFunc(simpleAttribute(Consultation.class,
+                consultation -> String.valueOf(consultation.getSpec().getStatus())))
+        );
+        indexSpecs.add(new IndexSpec()
+            .setName("spec.email")
+            .setIndexFunc(simpleAttribute(Consultation.class,
+                consultation -> String.valueOf(consultation.getSpec().getEmail())))
+        );
+        indexSpecs.add(new IndexSpec()
+            .setName("spec.content")
+            .setIndexFunc(simpleAttribute(Consultation.class,
+                consultation -> String.valueOf(consultation.getSpec().getContent())))
+        );
+    }
+}
@@ -0,0 +1,39 @@
+package zpl.valve.plugin.index;
+
+import org.springframework.util.StringUtils;
+import run.halo.app.extension.ListOptions;
+import run.halo.app.extension.index.query.QueryFactory;
+import run.halo.app.extension.router.selector.FieldSelector;
+
+import java.util.Collection;
+
+/**
+ * 产品编号（{@code spec.sku}）索引。
+ * <p>编号去掉首尾空白后建立唯一索引，未设置编号的产品不参与索引，因此可以有任意多个。
+ * 写入重复编号时扩展存储会拒绝该次创建或更新。</p>
+ */
+public final class ProductSkus {
+
+    public static final String INDEX_NAME = "spec.sku";
+
+    private ProductSkus() {
+    }
+
+    /**
+     * 规范化编号，空白编号返回 null。
+     */
+    public static String normalize(String sku) {
+        return StringUtils.hasText(sku) ? sku.trim() : null;
+    }
+
+    /**
+     * 按编号查询产品的条件，编号需已规范化。
+     */
+    public static ListOptions lookup(Collection<String> skus) {
+        ListOptions options = new ListOptions();
+        options.setFieldSelector(FieldSelector.of(skus.size() == 1
+            ? QueryFactory.equal(INDEX_NAME, skus.iterator().next())
+            : QueryFactory.in(INDEX_NAME, skus)));
+        return options;
+    }
+}
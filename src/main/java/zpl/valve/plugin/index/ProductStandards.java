@@ -0,0 +1,84 @@
+package zpl.valve.plugin.index;
+
+import org.springframework.util.StringUtils;
+import zpl.valve.plugin.extension.Product;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 产品规格（{@code spec.standards}）的多值索引。
+ * <p>每个规格索引为一个 {@code 名称=值} 词项，名称和值去掉首尾空白，例如
+ * {@code 公称压力=1.6MPa}。一个产品有多个规格时对应多个词项，按任一词项查询都能命中。</p>
+ * <p>查询条件写作 {@code 名称:值}，同一名称的多个值为 OR，不同名称之间为 AND。</p>
+ */
+public final class ProductStandards {
+
+    public static final String INDEX_NAME = "spec.standards";
+
+    private ProductStandards() {
+    }
+
+    public static String term(String name, String value) {
+        return name.trim() + "=" + value.trim();
+    }
+
+    /**
+     * 产品的全部规格词项，忽略名称或值为空的规格。
+     */
+    public static Set<String> terms(Product product) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (product.getSpec() == null || product.getSpec().getStandards() == null) {
+            return terms;
+        }
+        for (Product.ProductSpec.Standard standard : product.getSpec().getStandards()) {
+            if (standard != null && StringUtils.hasText(standard.getName())
+                && StringUtils.hasText(standard.getValue())) {
+                terms.add(term(standard.getName(), standard.getValue()));
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * 解析 {@code 名称:值} 形式的查询条件，返回 规格名称 -> 规格值，同一名称的多个值合并。
+     *
+     * @throws IllegalArgumentException 条件不是 {@code 名称:值} 形式
+     */
+    public static Map<String, Set<String>> parseFilters(Collection<String> filters) {
+        Map<String, Set<String>> standards = new LinkedHashMap<>();
+        if (filters == null) {
+            return standards;
+        }
+        for (String filter : filters) {
+            if (!StringUtils.hasText(filter)) {
+                continue;
+            }
+            int separator = filter.indexOf(':');
+            if (separator <= 0 || separator == filter.length() - 1) {
+                throw new IllegalArgumentException("Invalid standard: " + filter
+                    + ", expected name:value");
+            }
+            standards.computeIfAbsent(filter.substring(0, separator).trim(),
+                    key -> new LinkedHashSet<>())
+                .add(filter.substring(separator + 1).trim());
+        }
+        return standards;
+    }
+
+    /**
+     * 把解析后的条件转换为索引词项，每个规格名称对应一组 OR 的词项。
+     */
+    public static Map<String, Set<String>> toTerms(Map<String, Set<String>> filters) {
+        Map<String, Set<String>> terms = new LinkedHashMap<>();
+        filters.forEach((name, values) -> {
+            Set<String> group = new LinkedHashSet<>();
+            values.forEach(value -> group.add(term(name, value)));
+            terms.put(name, group);
+        });
+        return terms;
+    }
+}
@@ -0,0 +1,76 @@
+package zpl.valve.plugin.index;
+
+/**
+ * 数值类索引（如 {@code spec.priority}、{@code spec.price}）的保序编码。
+ * <p>Halo 的索引值都是字符串，由 {@code KeyComparator} 比较：其中的连续数字按数值比较，
+ * 其余字符逐个比较。直接使用 {@code String.valueOf} 时小数点会把数值拆成两段，
+ * 十六进制编码中的字母也会把数字拆成多段分别按数值比较，都不能保证顺序。
+ * 这里把数值统一转换为 double，再把 IEEE 754 位模式变换为无符号可比较的形式，
+ * 输出补零到 {@value #WIDTH} 位的十进制字符串：只含数字且定长，
+ * 按字典序和按数值比较的结果相同，都与数值大小一致。</p>
+ * <ul>
+ *     <li>整数和小数使用同一种编码，可以互相比较；</li>
+ *     <li>负数、正负无穷都能正确排序；</li>
+ *     <li>{@code null} 编码为 {@link #NULL}，排在所有数值之前。</li>
+ * </ul>
+ * <p>Halo 在注册 Scheme 时会根据已存储的扩展重建索引，因此更换编码后无需迁移数据，
+ * 插件重新启动（升级）时索引会以新编码重建。</p>
+ */
+public final class SortableNumbers {
+
+    /**
+     * {@code null} 的编码，小于任何数值（包括负无穷）的编码。
+     */
+    public static final String NULL = "00000000000000000000";
+
+    /**
+     * 负无穷的编码，可作为范围查询的下界。
+     */
+    public static final String MIN = encode(Double.NEGATIVE_INFINITY);
+
+    /**
+     * 正无穷的编码，可作为范围查询的上界。
+     */
+    public static final String MAX = encode(Double.POSITIVE_INFINITY);
+
+    /**
+     * 无符号 64 位整数的最大值有 20 位十进制数字。
+     */
+    private static final int WIDTH = 20;
+
+    private SortableNumbers() {
+    }
+
+    public static String encode(Number number) {
+        if (number == null) {
+            return NULL;
+        }
+        return encode(number.doubleValue());
+    }
+
+    public static String encode(double value) {
+        // 统一 -0.0 与 0.0，NaN 使用规范形式
+        long bits = Double.doubleToLongBits(value == 0.0d ? 0.0d : value);
+        // 正数翻转符号位，负数翻转全部位，得到与数值同序的无符号整数
+        bits ^= (bits >> 63) | Long.MIN_VALUE;
+        String digits = Long.toUnsignedString(bits);
+        return "0".repeat(WIDTH - digits.length()) + digits;
+    }
+
+    /**
+     * 把编码还原为数值，{@link #NULL} 还原为 {@code null}。
+     *
+     * @throws IllegalArgumentException 编码格式不正确时
+     */
+    public static Double decode(String encoded) {
+        if (encoded == null || encoded.length() != WIDTH) {
+            throw new IllegalArgumentException("Invalid sortable number: " + encoded);
+        }
+        if (NULL.equals(encoded)) {
+            return null;
+        }
+        long bits = Long.parseUnsignedLong(encoded);
+        bits ^= ((~bits) >> 63) | Long.MIN_VALUE;
+        return Double.longBitsToDouble(bits);
+    }
+}
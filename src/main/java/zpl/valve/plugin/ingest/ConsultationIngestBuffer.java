@@ -0,0 +1,316 @@
+package zpl.valve.plugin.ingest;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+import run.halo.app.extension.Metadata;
+import run.halo.app.extension.ReactiveExtensionClient;
+import zpl.valve.plugin.extension.Consultation;
+import zpl.valve.plugin.metrics.PluginMetrics;
+import zpl.valve.plugin.metrics.QueryShape;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 咨询提交的写后缓冲（write-behind）。
+ * <p>提交先追加到本地 WAL（{@link ConsultationWal}）即返回，后台定时把已封存的日志段
+ * 批量写入存储，写完后删除该段。插件启动时重放上次遗留的日志段，停止时尽量写完剩余记录，
+ * 未写完的留待下次启动重放。</p>
+ * <p>每条记录的咨询名称在提交时预先生成，重放的段会先检查是否已经写入，因此重复重放不会产生重复数据。
+ * 存储不可用时保留日志段等待下次重试；被存储拒绝（4xx）的记录先按名称查询，已经存在时
+ * （例如超时后重试的写入其实已经成功，再次创建返回 409）视为写入成功，否则转入死信文件。</p>
+ * <p>提交是否经过缓冲由服务端决定（{@link #shouldBuffer()}），不由客户端的请求头决定：
+ * 配置项 {@value #MODE_PROPERTY} 为 {@code always} 时全部缓冲，为 {@code never} 时全部直接写入，
+ * 默认 {@code auto} 在缓冲中还有未写完的记录，或者同时进行的直接写入达到
+ * {@value #SYNC_LIMIT_PROPERTY}（默认 {@value #DEFAULT_SYNC_LIMIT}）时缓冲，其余情况直接写入。</p>
+ * <p>WAL 目录默认为 Halo 工作目录（{@code halo.work-dir}）下的 {@code dl-plugin/consultation-wal}，
+ * 与 Halo 数据一起持久化，可通过配置项 {@value #WAL_DIR_PROPERTY} 修改。日志在每轮处理时刷盘，进程崩溃不会丢失已接收的提交，
+ * 断电时可能丢失最近一个处理间隔内的数据。</p>
+ */
+@Slf4j
+@Component
+public class ConsultationIngestBuffer {
+
+    static final String WAL_DIR_PROPERTY = "dl-plugin.consultation-wal.dir";
+
+    static final String MODE_PROPERTY = "dl-plugin.consultation-wal.mode";
+
+    static final String SYNC_LIMIT_PROPERTY = "dl-plugin.consultation-wal.sync-limit";
+
+    static final int DEFAULT_SYNC_LIMIT = 16;
+
+    static final Duration DRAIN_INTERVAL = Duration.ofMillis(500);
+
+    static final Duration STOP_TIMEOUT = Duration.ofSeconds(10);
+
+    static final int DRAIN_CONCURRENCY = 8;
+
+    private final ReactiveExtensionClient client;
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    private final PluginMetrics pluginMetrics;
+
+    private final ConsultationWal wal;
+
+    private final Mode mode;
+
+    private final int syncLimit;
+
+    /**
+     * 同时进行的直接写入数量。
+     */
+    private final AtomicInteger syncWrites = new AtomicInteger();
+
+    /**
+     * 需要先检查是否已写入的段：上次运行遗留或处理中途失败的段。
+     */
+    private final Set<Long> replayedSegments = ConcurrentHashMap.newKeySet();
+
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    private final List<Meter> meters = new ArrayList<>();
+
+    private volatile boolean started;
+
+    private Disposable drainer;
+
+    public ConsultationIngestBuffer(ReactiveExtensionClient client, Environment environment,
+        ObjectProvider<MeterRegistry> meterRegistry, PluginMetrics pluginMetrics) {
+        this.client = client;
+        this.meterRegistry = meterRegistry;
+        this.pluginMetrics = pluginMetrics;
+        Path workDir = Path.of(environment.getProperty("halo.work-dir",
+            Path.of(System.getProperty("user.home"), ".halo2").toString()));
+        this.wal = new ConsultationWal(Path.of(environment.getProperty(WAL_DIR_PROPERTY,
+            workDir.resolve("dl-plugin").resolve("consultation-wal").toString())));
+        this.mode = Mode.valueOf(
+            environment.getProperty(MODE_PROPERTY, "auto").trim().toUpperCase(Locale.ROOT));
+        this.syncLimit = environment.getProperty(SYNC_LIMIT_PROPERTY, Integer.class,
+            DEFAULT_SYNC_LIMIT);
+    }
+
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        try {
+            wal.open().forEach(segment -> replayedSegments.add(segment.sequence()));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to open consultation WAL", e);
+        }
+        if (wal.pending() > 0) {
+            log.info("Replaying {} pending consultation submissions", wal.pending());
+        }
+        meterRegistry.ifAvailable(registry -> {
+            meters.add(Gauge.builder("consultation.ingest.queue.depth", this,
+                    ConsultationIngestBuffer::queueDepth)
+                .description("Consultation submissions accepted but not yet stored")
+                .register(registry));
+            meters.add(TimeGauge.builder("consultation.ingest.drain.lag", this,
+                    TimeUnit.MILLISECONDS, ConsultationIngestBuffer::lagMillis)
+                .description("Age of the oldest consultation submission not yet stored")
+                .register(registry));
+        });
+        drainer = Flux.interval(DRAIN_INTERVAL)
+            .onBackpressureDrop()
+            .concatMap(tick -> drain())
+            .subscribe();
+        started = true;
+    }
+
+    /**
+     * 停止后台处理，并在 {@link #STOP_TIMEOUT} 内写完剩余记录。
+     */
+    public synchronized void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        drainer.dispose();
+        meterRegistry.ifAvailable(registry -> meters.forEach(registry::remove));
+        meters.clear();
+        try {
+            drain().block(STOP_TIMEOUT);
+        } catch (RuntimeException e) {
+            log.warn("Failed to flush consultation WAL before stop, it will be replayed", e);
+        }
+        try {
+            wal.close();
+        } catch (IOException e) {
+            log.warn("Failed to close consultation WAL", e);
+        }
+        replayedSegments.clear();
+    }
+
+    public boolean isStarted() {
+        return started;
+    }
+
+    /**
+     * 新的提交是否应当写入缓冲，见类注释中的 {@value #MODE_PROPERTY}。
+     */
+    public boolean shouldBuffer() {
+        return switch (mode) {
+            case NEVER -> false;
+            case ALWAYS -> started;
+            // 已有积压时继续缓冲，避免直接写入与后台写入争抢存储
+            case AUTO -> started && (queueDepth() > 0 || syncWrites.get() >= syncLimit);
+        };
+    }
+
+    /**
+     * 包装一次不经过缓冲的直接写入，计入同时进行的直接写入数量。
+     */
+    public <T> Mono<T> writeThrough(Mono<T> write) {
+        return Mono.defer(() -> {
+            syncWrites.incrementAndGet();
+            return write.doFinally(signal -> syncWrites.decrementAndGet());
+        });
+    }
+
+    /**
+     * 接收一条咨询提交，写入 WAL 后返回预先生成的咨询名称。
+     */
+    public Mono<String> submit(Consultation.ConsultationSpec spec) {
+        return Mono.fromCallable(() -> {
+            if (!started) {
+                throw new IllegalStateException("Consultation ingest buffer is not started");
+            }
+            ConsultationWal.Entry entry = new ConsultationWal.Entry(
+                "consultation-" + UUID.randomUUID().toString().replace("-", "").substring(0, 12),
+                System.currentTimeMillis(), spec);
+            wal.append(entry);
+            return entry.name();
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * 已接收但尚未写入存储的提交数量。
+     */
+    public long queueDepth() {
+        return wal.pending();
+    }
+
+    /**
+     * 最早一条未写入存储的提交已等待的时间（毫秒），没有待处理提交时为 0。
+     */
+    public long lagMillis() {
+        Long oldest = wal.oldestPendingReceivedAt();
+        return oldest == null ? 0 : Math.max(0, System.currentTimeMillis() - oldest);
+    }
+
+    Mono<Void> drain() {
+        return Mono.defer(() -> {
+            if (!draining.compareAndSet(false, true)) {
+                return Mono.<Void>empty();
+            }
+            return Mono.fromCallable(() -> {
+                    wal.sync();
+                    return wal.seal();
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(Flux::fromIterable)
+                .concatMap(this::drainSegment)
+                .then()
+                .onErrorResume(e -> {
+                    log.warn("Failed to drain consultation WAL, will retry", e);
+                    return Mono.empty();
+                })
+                .doFinally(signal -> draining.set(false));
+        });
+    }
+
+    private Mono<Void> drainSegment(ConsultationWal.Segment segment) {
+        boolean replayed = replayedSegments.contains(segment.sequence());
+        return Mono.fromCallable(() -> wal.read(segment))
+            .subscribeOn(Schedulers.boundedElastic())
+            .flatMap(entries -> Flux.fromIterable(entries)
+                .flatMap(entry -> persist(entry, replayed), DRAIN_CONCURRENCY)
+                .collectList()
+                .flatMap(rejected -> Mono.fromCallable(() -> {
+                    wal.complete(segment, entries.size(), rejected);
+                    if (!rejected.isEmpty()) {
+                        log.warn("{} consultation submissions were rejected and moved to"
+                            + " dead letter", rejected.size());
+                    }
+                    return segment;
+                }).subscribeOn(Schedulers.boundedElastic())))
+            .doOnSuccess(completed -> replayedSegments.remove(segment.sequence()))
+            // 中途失败时部分记录可能已经写入，下次处理前需要先检查
+            .doOnError(e -> replayedSegments.add(segment.sequence()))
+            .doOnCancel(() -> replayedSegments.add(segment.sequence()))
+            .then();
+    }
+
+    /**
+     * 写入一条记录，被存储拒绝且记录不存在时返回该记录，存储不可用时返回错误。
+     */
+    private Mono<ConsultationWal.Entry> persist(ConsultationWal.Entry entry, boolean replayed) {
+        Mono<Boolean> exists = replayed
+            ? pluginMetrics.store("fetch", Consultation.class, QueryShape.BY_NAME,
+                client.fetch(Consultation.class, entry.name())).hasElement()
+            : Mono.just(false);
+        return exists
+            .flatMap(found -> found ? Mono.<ConsultationWal.Entry>empty()
+                : pluginMetrics.store("create", Consultation.class, QueryShape.WRITE,
+                    client.create(toConsultation(entry))).then(Mono.<ConsultationWal.Entry>empty()))
+            .retryWhen(Retry.backoff(3, Duration.ofMillis(200))
+                .filter(e -> !isRejected(e)))
+            .onErrorResume(ConsultationIngestBuffer::isRejected, e -> pluginMetrics.store(
+                    "fetch", Consultation.class, QueryShape.BY_NAME,
+                    client.fetch(Consultation.class, entry.name()))
+                .hasElement()
+                .flatMap(found -> {
+                    if (found) {
+                        // 名称是提交时生成的，已存在说明之前的某次写入已经成功（通常是 409）
+                        log.debug("Consultation {} already exists, treat as stored",
+                            entry.name());
+                        return Mono.empty();
+                    }
+                    log.warn("Consultation {} was rejected by the store", entry.name(), e);
+                    return Mono.just(entry);
+                }));
+    }
+
+    private static boolean isRejected(Throwable e) {
+        return e instanceof ResponseStatusException status
+            && status.getStatusCode().is4xxClientError();
+    }
+
+    private static Consultation toConsultation(ConsultationWal.Entry entry) {
+        Consultation consultation = new Consultation();
+        consultation.setSpec(entry.spec());
+        consultation.setMetadata(new Metadata());
+        consultation.getMetadata().setName(entry.name());
+        return consultation;
+    }
+
+    enum Mode {
+        AUTO,
+        ALWAYS,
+        NEVER
+    }
+}
@@ -0,0 +1,239 @@
+package zpl.valve.plugin.ingest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import lombok.extern.slf4j.Slf4j;
+import run.halo.app.infra.utils.JsonUtils;
+import zpl.valve.plugin.extension.Consultation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * 咨询提交的本地预写日志（WAL）。
+ * <p>日志按段存储，每行一条 JSON 记录。写入只追加到当前活动段，{@link #seal()}
+ * 关闭活动段并返回所有待处理的段，段中的记录全部写入存储后由 {@link #complete} 删除。
+ * 无法写入的记录追加到死信文件中，不会阻塞后续处理。</p>
+ * <p>进程异常退出时，活动段最后一行可能不完整，读取时跳过。</p>
+ */
+@Slf4j
+final class ConsultationWal {
+
+    /**
+     * 活动段达到该记录数后切换到新段。
+     */
+    static final int MAX_SEGMENT_ENTRIES = 1000;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final String DEAD_LETTER_FILE = "dead-letter.wal";
+
+    private final Path directory;
+
+    /**
+     * 已写入日志但尚未处理完成的记录数。
+     */
+    private final AtomicLong pending = new AtomicLong();
+
+    /**
+     * 未处理完成的段序号 -> 段中最早一条记录的接收时间。
+     */
+    private final ConcurrentSkipListMap<Long, Long> oldestReceivedAt =
+        new ConcurrentSkipListMap<>();
+
+    private FileChannel active;
+
+    private long activeSequence;
+
+    private int activeEntries;
+
+    ConsultationWal(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * 打开日志目录，返回上次运行遗留的待处理段。
+     */
+    synchronized List<Segment> open() throws IOException {
+        Files.createDirectories(directory);
+        List<Segment> recovered = listSegments();
+        for (Segment segment : recovered) {
+            List<Entry> entries = read(segment);
+            pending.addAndGet(entries.size());
+            if (!entries.isEmpty()) {
+                oldestReceivedAt.put(segment.sequence(), entries.get(0).receivedAt());
+            }
+        }
+        activeSequence = recovered.isEmpty() ? 1 : recovered.get(recovered.size() - 1).sequence() + 1;
+        openActive();
+        return recovered;
+    }
+
+    synchronized void append(Entry entry) throws IOException {
+        if (active == null) {
+            throw new IOException("Consultation WAL is closed");
+        }
+        byte[] line = toLine(entry);
+        ByteBuffer buffer = ByteBuffer.wrap(line);
+        while (buffer.hasRemaining()) {
+            active.write(buffer);
+        }
+        activeEntries++;
+        pending.incrementAndGet();
+        oldestReceivedAt.putIfAbsent(activeSequence, entry.receivedAt());
+        if (activeEntries >= MAX_SEGMENT_ENTRIES) {
+            rotate();
+        }
+    }
+
+    /**
+     * 关闭当前活动段（如有记录）并返回所有待处理的段，按写入顺序排列。
+     */
+    synchronized List<Segment> seal() throws IOException {
+        if (active != null && activeEntries > 0) {
+            rotate();
+        }
+        List<Segment> segments = listSegments();
+        segments.removeIf(segment -> segment.sequence() == activeSequence);
+        return segments;
+    }
+
+    List<Entry> read(Segment segment) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(segment.path(),
+            StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    entries.add(JsonUtils.mapper().readValue(line, Entry.class));
+                } catch (JsonProcessingException e) {
+                    log.warn("Skip corrupted consultation WAL record in {}", segment.path(), e);
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * 段处理完成，失败的记录写入死信文件后删除该段。
+     *
+     * @param entryCount 段中的记录数
+     */
+    synchronized void complete(Segment segment, int entryCount, List<Entry> failed)
+        throws IOException {
+        if (!failed.isEmpty()) {
+            try (FileChannel deadLetter = FileChannel.open(directory.resolve(DEAD_LETTER_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                for (Entry entry : failed) {
+                    deadLetter.write(ByteBuffer.wrap(toLine(entry)));
+                }
+                deadLetter.force(false);
+            }
+        }
+        Files.deleteIfExists(segment.path());
+        pending.addAndGet(-entryCount);
+        oldestReceivedAt.remove(segment.sequence());
+    }
+
+    long pending() {
+        return pending.get();
+    }
+
+    /**
+     * 最早一条未处理完成的记录的接收时间（毫秒），没有时为 null。
+     */
+    Long oldestPendingReceivedAt() {
+        Map.Entry<Long, Long> oldest = oldestReceivedAt.firstEntry();
+        return oldest == null ? null : oldest.getValue();
+    }
+
+    /**
+     * 把活动段刷到磁盘。
+     */
+    synchronized void sync() throws IOException {
+        if (active != null) {
+            active.force(false);
+        }
+    }
+
+    synchronized void close() throws IOException {
+        if (active == null) {
+            return;
+        }
+        active.force(false);
+        active.close();
+        active = null;
+        if (activeEntries == 0) {
+            Files.deleteIfExists(segmentPath(activeSequence));
+        }
+        pending.set(0);
+        oldestReceivedAt.clear();
+    }
+
+    private void rotate() throws IOException {
+        active.force(false);
+        active.close();
+        activeSequence++;
+        openActive();
+    }
+
+    private void openActive() throws IOException {
+        active = FileChannel.open(segmentPath(activeSequence), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        activeEntries = 0;
+    }
+
+    private List<Segment> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return new ArrayList<>(files
+                .filter(path -> {
+                    String name = path.getFileName().toString();
+                    return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                })
+                .map(path -> {
+                    String name = path.getFileName().toString();
+                    return new Segment(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                        name.length() - SEGMENT_SUFFIX.length())), path);
+                })
+                .sorted((a, b) -> Long.compare(a.sequence(), b.sequence()))
+                .toList());
+        }
+    }
+
+    private Path segmentPath(long sequence) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, sequence,
+            SEGMENT_SUFFIX));
+    }
+
+    private static byte[] toLine(Entry entry) throws JsonProcessingException {
+        return (JsonUtils.mapper().writeValueAsString(entry) + "\n")
+            .getBytes(StandardCharsets.UTF_8);
+    }
+
+    record Segment(long sequence, Path path) {
+    }
+
+    /**
+     * 日志记录。
+     *
+     * @param name 预先生成的咨询名称，重放时用于判断是否已经写入
+     * @param receivedAt 收到提交的时间（毫秒）
+     * @param spec 提交的咨询内容
+     */
+    record Entry(String name, long receivedAt, Consultation.ConsultationSpec spec) {
+    }
+}
@@ -0,0 +1,309 @@
+package zpl.valve.plugin.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.function.server.HandlerFilterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import run.halo.app.extension.ListOptions;
+import run.halo.app.extension.ListResult;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 插件的 Micrometer 指标，由 Halo 的 actuator/Prometheus 端点统一暴露。
+ * <ul>
+ *     <li>{@value #ROUTE}：路由处理耗时（含响应写出），标签为路由模式、方法、状态码</li>
+ *     <li>{@value #FINDER}：主题 Finder 方法耗时，标签为 Finder 名称和方法</li>
+ *     <li>{@value #STORE}：扩展存储调用耗时，标签为操作、扩展类型和查询形状（见 {@link QueryShape}）</li>
+ *     <li>{@value #TEMPLATE}：模板渲染耗时，标签为默认模板名称</li>
+ *     <li>{@value #ERRORS}：错误次数，标签为来源和异常类型</li>
+ *     <li>{@value #COALESCING}：合并读取层（{@code CoalescingReader}）的调用次数，标签为操作、扩展类型、
+ *     查询形状和结果（{@code executed} 实际执行、{@code coalesced} 复用进行中的查询）</li>
+ * </ul>
+ * <p>标签只使用路由模式、类名等有限取值，不包含路径参数和查询取值；查询形状最多
+ * {@value #MAX_SHAPES} 种，超出后归入 {@value #OTHER}。计时器的结果标签 {@code outcome}
+ * 取 {@code success}、{@code error}、{@code cancelled}。</p>
+ * <p>存储调用同时交给 {@link SlowQueryLog} 记录慢查询和全量扫描。</p>
+ * <p>注册过的指标在插件停止时（{@link #close()}）从注册表移除，避免重新加载插件后残留。</p>
+ */
+@Component
+public class PluginMetrics {
+
+    public static final String ROUTE = "valve.route.requests";
+    public static final String FINDER = "valve.finder.calls";
+    public static final String STORE = "valve.store.calls";
+    public static final String TEMPLATE = "valve.template.render";
+    public static final String ERRORS = "valve.errors";
+    public static final String COALESCING = "valve.store.coalescing";
+
+    static final int MAX_SHAPES = 64;
+
+    static final String OTHER = "other";
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    private final SlowQueryLog slowQueryLog;
+
+    private final Set<Meter> meters = ConcurrentHashMap.newKeySet();
+
+    private final Set<String> shapes = ConcurrentHashMap.newKeySet();
+
+    public PluginMetrics(ObjectProvider<MeterRegistry> meterRegistry, SlowQueryLog slowQueryLog) {
+        this.meterRegistry = meterRegistry;
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    /**
+     * 路由计时过滤器，计时从进入处理函数开始到响应写出结束。
+     */
+    public HandlerFilterFunction<ServerResponse, ServerResponse> routes() {
+        return (request, next) -> {
+            long start = System.nanoTime();
+            String route = request.attribute(RouterFunctions.MATCHING_PATTERN_ATTRIBUTE)
+                .map(Object::toString)
+                .orElse("unknown");
+            Tags tags = Tags.of("route", route, "method", request.method().name());
+            // 处理函数可能直接抛出参数校验异常
+            return Mono.defer(() -> next.handle(request))
+                .map(response -> (ServerResponse) new TimedResponse(response, signal ->
+                    record(ROUTE, tags.and("status", String.valueOf(response.statusCode().value()),
+                        "outcome", outcome(signal)), start)))
+                .doOnError(e -> {
+                    record(ROUTE, tags.and("status", String.valueOf(status(e)),
+                        "outcome", "error"), start);
+                    error("route", e);
+                });
+        };
+    }
+
+    /**
+     * 模板渲染计时过滤器，需要直接作用于渲染模板的路由，计时范围为响应写出（即模板渲染）过程。
+     */
+    public HandlerFilterFunction<ServerResponse, ServerResponse> templateRender(String template) {
+        Tags tags = Tags.of("template", template);
+        return (request, next) -> next.handle(request)
+            .map(response -> {
+                if (!response.statusCode().is2xxSuccessful()) {
+                    return response;
+                }
+                long start = System.nanoTime();
+                return new TimedResponse(response, signal ->
+                    record(TEMPLATE, tags.and("outcome", outcome(signal)), start));
+            });
+    }
+
+    public <T> Mono<T> finder(String finder, String method, Mono<T> source) {
+        Tags tags = Tags.of("finder", finder, "method", method);
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return source.doOnError(e -> error("finder", e))
+                .doFinally(signal -> record(FINDER, tags.and("outcome", outcome(signal)), start));
+        });
+    }
+
+    public <T> Flux<T> finder(String finder, String method, Flux<T> source) {
+        Tags tags = Tags.of("finder", finder, "method", method);
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            return source.doOnError(e -> error("finder", e))
+                .doFinally(signal -> record(FINDER, tags.and("outcome", outcome(signal)), start));
+        });
+    }
+
+    public <T> Mono<T> store(String operation, Class<?> type, ListOptions options,
+        Mono<T> source) {
+        return store(operation, type, options, QueryShape.of(options), source);
+    }
+
+    public <T> Flux<T> store(String operation, Class<?> type, ListOptions options,
+        Flux<T> source) {
+        String shape = QueryShape.of(options);
+        Tags tags = storeTags(operation, type, shape);
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            long[] results = {0};
+            return source.doOnNext(item -> results[0]++)
+                .doOnError(e -> error("store", e))
+                .doFinally(signal -> {
+                    record(STORE, tags.and("outcome", outcome(signal)), start);
+                    query(operation, type, options, shape, start, results[0], signal);
+                });
+        });
+    }
+
+    /**
+     * 按名称获取、创建、更新等没有查询条件的调用，shape 取 {@link QueryShape#BY_NAME}
+     * 或 {@link QueryShape#WRITE}。
+     */
+    public <T> Mono<T> store(String operation, Class<?> type, String shape, Mono<T> source) {
+        return store(operation, type, null, shape, source);
+    }
+
+    private <T> Mono<T> store(String operation, Class<?> type, ListOptions options, String shape,
+        Mono<T> source) {
+        Tags tags = storeTags(operation, type, shape);
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            long[] results = {0};
+            return source.doOnNext(value -> results[0] = size(value))
+                .doOnError(e -> error("store", e))
+                .doFinally(signal -> {
+                    record(STORE, tags.and("outcome", outcome(signal)), start);
+                    query(operation, type, options, shape, start, results[0], signal);
+                });
+        });
+    }
+
+    /**
+     * 记录合并读取层的一次调用。
+     *
+     * @param executed 是否实际执行了查询，否则为复用进行中的查询
+     */
+    public void coalescing(String operation, Class<?> type, String shape, boolean executed) {
+        registry().ifPresent(registry -> {
+            Counter counter = Counter.builder(COALESCING)
+                .tags(storeTags(operation, type, shape))
+                .tag("result", executed ? "executed" : "coalesced")
+                .register(registry);
+            meters.add(counter);
+            counter.increment();
+        });
+    }
+
+    /**
+     * 记录一次错误，用于处理函数内部已转换为错误响应的异常。
+     *
+     * @param source 错误来源，例如 {@code route}、{@code product.render}
+     */
+    public void error(String source, Throwable e) {
+        registry().ifPresent(registry -> {
+            Counter counter = Counter.builder(ERRORS)
+                .tags("source", source, "cause", e.getClass().getSimpleName())
+                .register(registry);
+            meters.add(counter);
+            counter.increment();
+        });
+    }
+
+    /**
+     * 从注册表移除本插件注册的所有指标。
+     */
+    public void close() {
+        registry().ifPresent(registry -> meters.forEach(registry::remove));
+        meters.clear();
+        shapes.clear();
+    }
+
+    /**
+     * 查询交给慢查询日志记录，写操作不记录。
+     */
+    private void query(String operation, Class<?> type, ListOptions options, String shape,
+        long start, long results, SignalType signal) {
+        if (!QueryShape.WRITE.equals(shape)) {
+            slowQueryLog.record(operation, type, options, shape, System.nanoTime() - start,
+                results, signal == SignalType.ON_ERROR);
+        }
+    }
+
+    private static long size(Object value) {
+        if (value instanceof ListResult<?> result) {
+            return result.getItems().size();
+        }
+        return value instanceof Collection<?> items ? items.size() : 1;
+    }
+
+    private Tags storeTags(String operation, Class<?> type, String shape) {
+        if (!shapes.contains(shape)) {
+            shape = shapes.size() < MAX_SHAPES && shapes.add(shape) ? shape : OTHER;
+        }
+        return Tags.of("operation", operation, "type", type.getSimpleName(), "shape", shape);
+    }
+
+    private void record(String name, Tags tags, long start) {
+        registry().ifPresent(registry -> {
+            Timer timer = Timer.builder(name)
+                .tags(tags)
+                .publishPercentileHistogram(ROUTE.equals(name))
+                .register(registry);
+            meters.add(timer);
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        });
+    }
+
+    private Optional<MeterRegistry> registry() {
+        return Optional.ofNullable(meterRegistry.getIfAvailable());
+    }
+
+    private static String outcome(SignalType signal) {
+        return switch (signal) {
+            case ON_ERROR -> "error";
+            case CANCEL -> "cancelled";
+            default -> "success";
+        };
+    }
+
+    private static int status(Throwable e) {
+        return e instanceof ResponseStatusException statusException
+            ? statusException.getStatusCode().value() : 500;
+    }
+
+    /**
+     * 包装响应，在写出结束时回调。
+     */
+    private static class TimedResponse implements ServerResponse {
+
+        private final ServerResponse delegate;
+
+        private final Consumer<SignalType> onComplete;
+
+        TimedResponse(ServerResponse delegate, Consumer<SignalType> onComplete) {
+            this.delegate = delegate;
+            this.onComplete = onComplete;
+        }
+
+        @Override
+        public HttpStatusCode statusCode() {
+            return delegate.statusCode();
+        }
+
+        @Deprecated
+        public int rawStatusCode() {
+            return delegate.statusCode().value();
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return delegate.headers();
+        }
+
+        @Override
+        public MultiValueMap<String, ResponseCookie> cookies() {
+            return delegate.cookies();
+        }
+
+        @Override
+        public Mono<Void> writeTo(ServerWebExchange exchange, Context context) {
+            return delegate.writeTo(exchange, context).doFinally(onComplete);
+        }
+    }
+}
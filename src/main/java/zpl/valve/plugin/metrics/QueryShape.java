@@ -0,0 +1,68 @@
+package zpl.valve.plugin.metrics;
+
+import run.halo.app.extension.ListOptions;
+
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * 查询条件的形状：只保留查询涉及的字段名，去掉具体取值，用作指标标签和慢查询的分组键。
+ * <p>例如按分类和名称过滤的查询形状为 {@code spec.categoryMetadataName,spec.name}，
+ * 带标签选择器时追加 {@code +labels}，没有任何条件时为 {@value #ALL}。</p>
+ * <p>字段名取自查询条件树的叶子节点（见 {@link QueryTree}），不解析条件的字符串形式，
+ * 取值中出现的类似字段名的文本不会混入形状。无法遍历条件树时形状为 {@value PluginMetrics#OTHER}。</p>
+ */
+public final class QueryShape {
+
+    public static final String ALL = "all";
+
+    /**
+     * 按名称获取单个扩展。
+     */
+    public static final String BY_NAME = "name";
+
+    /**
+     * 写操作，没有查询条件。
+     */
+    public static final String WRITE = "-";
+
+    private QueryShape() {
+    }
+
+    public static String of(ListOptions options) {
+        if (options == null) {
+            return ALL;
+        }
+        SortedSet<String> fields;
+        try {
+            fields = fields(options);
+        } catch (QueryTree.UnreadableQueryException e) {
+            return PluginMetrics.OTHER;
+        }
+        String shape = fields.isEmpty() ? ALL : String.join(",", fields);
+        if (options.getLabelSelector() != null
+            && options.getLabelSelector().getMatchers() != null
+            && !options.getLabelSelector().getMatchers().isEmpty()) {
+            shape += "+labels";
+        }
+        return shape;
+    }
+
+    /**
+     * 字段选择器涉及的字段名，按名称排序。
+     *
+     * @throws QueryTree.UnreadableQueryException 无法遍历条件树
+     */
+    public static SortedSet<String> fields(ListOptions options) {
+        TreeSet<String> fields = new TreeSet<>();
+        if (options != null && options.getFieldSelector() != null) {
+            QueryTree.walk(options.getFieldSelector().query(), query -> {
+                String field = QueryTree.fieldName(query);
+                if (field != null) {
+                    fields.add(field);
+                }
+            });
+        }
+        return fields;
+    }
+}
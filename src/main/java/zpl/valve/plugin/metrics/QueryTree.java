@@ -0,0 +1,113 @@
+package zpl.valve.plugin.metrics;
+
+import run.halo.app.extension.index.query.Query;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * 遍历字段选择器的查询条件树（{@link Query}）。
+ * <p>叶子节点的字段名通过 {@link Query#getFieldName()} 读取。Halo 没有公开逻辑节点
+ * （{@code And}、{@code Or}、{@code Not}）的子节点，只对这三类节点按类声明的成员读取：
+ * 类型为 {@link Query} 或其集合的成员是子节点，成员列表按节点类缓存。</p>
+ * <p>反射读取失败（例如运行环境不允许访问 Halo 的类）时抛出 {@link UnreadableQueryException}，
+ * 调用方应退回到不依赖条件树的结果，而不是让查询本身失败。</p>
+ */
+public final class QueryTree {
+
+    private static final Set<String> LOGICAL_NODES = Set.of("And", "Or", "Not");
+
+    private static final ClassValue<List<Field>> CHILD_FIELDS = new ClassValue<>() {
+        @Override
+        protected List<Field> computeValue(Class<?> type) {
+            List<Field> fields = new ArrayList<>(2);
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())
+                        || !Query.class.isAssignableFrom(field.getType())
+                        && !Collection.class.isAssignableFrom(field.getType())) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    fields.add(field);
+                }
+            }
+            return List.copyOf(fields);
+        }
+    };
+
+    private QueryTree() {
+    }
+
+    /**
+     * 先序遍历查询条件树的所有节点。
+     *
+     * @throws UnreadableQueryException 无法读取逻辑节点的子节点
+     */
+    public static void walk(Query query, Consumer<Query> visitor) {
+        if (query == null) {
+            return;
+        }
+        visitor.accept(query);
+        children(query).forEach(child -> walk(child, visitor));
+    }
+
+    /**
+     * 是否为逻辑节点（{@code And}、{@code Or}、{@code Not}）。
+     */
+    public static boolean isLogical(Query query) {
+        return LOGICAL_NODES.contains(query.getClass().getSimpleName());
+    }
+
+    /**
+     * 逻辑节点的子节点，叶子节点返回空列表。
+     *
+     * @throws UnreadableQueryException 无法读取逻辑节点的子节点
+     */
+    public static List<Query> children(Query query) {
+        if (!isLogical(query)) {
+            return List.of();
+        }
+        List<Query> children = new ArrayList<>(2);
+        try {
+            for (Field field : CHILD_FIELDS.get(query.getClass())) {
+                Object value = field.get(query);
+                if (value instanceof Query child) {
+                    children.add(child);
+                } else if (value instanceof Collection<?> collection) {
+                    for (Object element : collection) {
+                        if (element instanceof Query child) {
+                            children.add(child);
+                        }
+                    }
+                }
+            }
+        } catch (IllegalAccessException | RuntimeException e) {
+            // setAccessible 失败时抛出 InaccessibleObjectException 或 SecurityException
+            throw new UnreadableQueryException(query, e);
+        }
+        return children;
+    }
+
+    /**
+     * 叶子节点查询的字段名，逻辑节点返回 null。
+     */
+    public static String fieldName(Query query) {
+        return isLogical(query) ? null : query.getFieldName();
+    }
+
+    /**
+     * 无法读取查询条件树。
+     */
+    public static class UnreadableQueryException extends IllegalStateException {
+
+        UnreadableQueryException(Query query, Throwable cause) {
+            super("Cannot read children of " + query.getClass().getName(), cause);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package zpl.valve.plugin.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import run.halo.app.extension.ListOptions;
+import run.halo.app.extension.index.IndexSpecs;
+import run.halo.app.extension.index.query.Query;
+import run.halo.app.extension.index.query.StringContains;
+import run.halo.app.extension.index.query.StringEndsWith;
+import run.halo.app.extension.index.query.StringStartsWith;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 慢查询日志：记录插件每次存储查询的耗时、结果数量和查询形状（见 {@link QueryShape}），
+ * 按 类型、操作、形状 汇总，供管理接口列出最慢的查询形状。
+ * <p>以下查询会写入一条 WARN 日志，原因字段 {@code reasons} 取值：</p>
+ * <ul>
+ *     <li>{@code slow}：耗时超过 {@value #THRESHOLD_PROPERTY}（毫秒，默认
+ *     {@value #DEFAULT_THRESHOLD_MILLIS}）</li>
+ *     <li>{@code contains}：查询条件树中有 {@link StringContains}、{@link StringStartsWith}、
+ *     {@link StringEndsWith} 节点，需要遍历整个字段索引</li>
+ *     <li>{@code unindexed}：字段选择器使用了没有注册索引的字段。Halo 对这类查询直接报错，
+ *     因此该原因只会出现在失败的调用上（日志中 {@code failed=true}）</li>
+ *     <li>{@code unreadable}：无法遍历查询条件树（见 {@link QueryTree}），无法判断上面两项，
+ *     按可能全量扫描处理</li>
+ * </ul>
+ * <p>失败的调用同样记录耗时和原因，并计入汇总的 {@code errorCount}。</p>
+ * <p>日志按汇总项采样，每项在 {@value #LOG_INTERVAL_PROPERTY}（毫秒，默认
+ * {@value #DEFAULT_LOG_INTERVAL_MILLIS}）内最多写一条，期间省略的次数记在下一条的
+ * {@code suppressed} 中。日志只包含字段名，不包含查询取值（可能是访客的邮箱等）。</p>
+ * <p>汇总项最多 {@value #MAX_ENTRIES} 个，超出后归入 {@value PluginMetrics#OTHER}。</p>
+ */
+@Slf4j
+@Component
+public class SlowQueryLog {
+
+    public static final String THRESHOLD_PROPERTY = "dl-plugin.slow-query.threshold-ms";
+
+    public static final String LOG_INTERVAL_PROPERTY = "dl-plugin.slow-query.log-interval-ms";
+
+    static final long DEFAULT_THRESHOLD_MILLIS = 200;
+
+    static final long DEFAULT_LOG_INTERVAL_MILLIS = 60_000;
+
+    static final int MAX_ENTRIES = 256;
+
+    /**
+     * Halo 为所有扩展建立的默认索引。
+     */
+    static final Set<String> DEFAULT_INDEXES = Set.of("metadata.name", "metadata.labels",
+        "metadata.creationTimestamp", "metadata.deletionTimestamp");
+
+    private final long thresholdNanos;
+
+    private final long logIntervalNanos;
+
+    /**
+     * 各扩展类型已注册的索引，没有记录的类型不检查未索引字段。
+     */
+    private final Map<Class<?>, Set<String>> indexes = new ConcurrentHashMap<>();
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public SlowQueryLog(Environment environment) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(environment.getProperty(
+            THRESHOLD_PROPERTY, Long.class, DEFAULT_THRESHOLD_MILLIS));
+        this.logIntervalNanos = TimeUnit.MILLISECONDS.toNanos(environment.getProperty(
+            LOG_INTERVAL_PROPERTY, Long.class, DEFAULT_LOG_INTERVAL_MILLIS));
+    }
+
+    /**
+     * 包装 Scheme 的索引注册，注册完成后记录该类型的索引名称。
+     */
+    public Consumer<IndexSpecs> indexed(Class<?> type, Consumer<IndexSpecs> specs) {
+        return indexSpecs -> {
+            specs.accept(indexSpecs);
+            Set<String> names = new HashSet<>(DEFAULT_INDEXES);
+            indexSpecs.getIndexSpecs().forEach(spec -> names.add(spec.getName()));
+            indexes.put(type, Set.copyOf(names));
+        };
+    }
+
+    /**
+     * 记录一次查询。
+     *
+     * @param options 查询条件，按名称获取时为 {@code null}
+     * @param shape 查询形状
+     * @param results 结果数量，分页查询为当前页的条数
+     * @param failed 调用是否以错误结束
+     */
+    public void record(String operation, Class<?> type, ListOptions options, String shape,
+        long elapsedNanos, long results, boolean failed) {
+        List<String> scans = scans(type, options);
+        String key = type.getSimpleName() + " " + operation + " " + shape
+            + (scans.isEmpty() ? "" : " " + scans);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = entries.size() < MAX_ENTRIES
+                ? entries.computeIfAbsent(key,
+                    k -> new Entry(type.getSimpleName(), operation, shape, scans))
+                : entries.computeIfAbsent(PluginMetrics.OTHER,
+                    k -> new Entry(PluginMetrics.OTHER, PluginMetrics.OTHER, PluginMetrics.OTHER,
+                        List.of()));
+        }
+        boolean slow = elapsedNanos >= thresholdNanos;
+        entry.add(elapsedNanos, results, slow, failed);
+        if (!slow && scans.isEmpty()) {
+            return;
+        }
+        long suppressed = entry.sample(System.nanoTime(), logIntervalNanos);
+        if (suppressed < 0) {
+            return;
+        }
+        List<String> reasons = new ArrayList<>(scans.size() + 1);
+        if (slow) {
+            reasons.add("slow");
+        }
+        reasons.addAll(scans);
+        log.warn("Slow query: type={} operation={} shape={} elapsedMs={} results={} reasons={}"
+                + " failed={} suppressed={}", type.getSimpleName(), operation, shape,
+            TimeUnit.NANOSECONDS.toMillis(elapsedNanos), results, String.join(",", reasons),
+            failed, suppressed);
+    }
+
+    /**
+     * 按最大耗时从高到低列出前 {@code limit} 个查询形状。
+     */
+    public List<Summary> slowest(int limit) {
+        return entries.values().stream()
+            .map(Entry::summary)
+            .sorted(Comparator.comparingDouble(Summary::maxMillis).reversed())
+            .limit(limit)
+            .toList();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    private List<String> scans(Class<?> type, ListOptions options) {
+        if (options == null || options.getFieldSelector() == null) {
+            return List.of();
+        }
+        List<String> scans = new ArrayList<>(2);
+        try {
+            if (scansIndex(options.getFieldSelector().query())) {
+                scans.add("contains");
+            }
+            Set<String> indexed = indexes.get(type);
+            if (indexed != null
+                && !indexed.containsAll(QueryShape.fields(options))) {
+                scans.add("unindexed");
+            }
+        } catch (QueryTree.UnreadableQueryException e) {
+            log.debug("Cannot classify query on {}", type.getSimpleName(), e);
+            return List.of("unreadable");
+        }
+        return scans;
+    }
+
+    /**
+     * 查询条件树中是否有需要遍历整个字段索引的节点。
+     */
+    private static boolean scansIndex(Query query) {
+        AtomicBoolean found = new AtomicBoolean();
+        QueryTree.walk(query, node -> {
+            if (node instanceof StringContains || node instanceof StringStartsWith
+                || node instanceof StringEndsWith) {
+                found.set(true);
+            }
+        });
+        return found.get();
+    }
+
+    /**
+     * 查询形状的汇总，耗时单位为毫秒。
+     *
+     * @param reasons 除耗时外的全量扫描原因，见类说明
+     */
+    public record Summary(String type, String operation, String shape, List<String> reasons,
+                          long count, long slowCount, long errorCount, double meanMillis,
+                          double maxMillis,
+                          double meanResults, long maxResults) {
+    }
+
+    private static class Entry {
+
+        private final String type;
+
+        private final String operation;
+
+        private final String shape;
+
+        private final List<String> reasons;
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder slowCount = new LongAdder();
+
+        private final LongAdder errorCount = new LongAdder();
+
+        private final LongAdder totalNanos = new LongAdder();
+
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        private final LongAdder totalResults = new LongAdder();
+
+        private final LongAccumulator maxResults = new LongAccumulator(Math::max, 0);
+
+        private final AtomicLong lastLogged = new AtomicLong();
+
+        private final LongAdder suppressed = new LongAdder();
+
+        private volatile boolean logged;
+
+        Entry(String type, String operation, String shape, List<String> reasons) {
+            this.type = type;
+            this.operation = operation;
+            this.shape = shape;
+            this.reasons = List.copyOf(reasons);
+        }
+
+        void add(long elapsedNanos, long results, boolean slow, boolean failed) {
+            count.increment();
+            totalNanos.add(elapsedNanos);
+            maxNanos.accumulate(elapsedNanos);
+            totalResults.add(results);
+            maxResults.accumulate(results);
+            if (slow) {
+                slowCount.increment();
+            }
+            if (failed) {
+                errorCount.increment();
+            }
+        }
+
+        /**
+         * 判断本次是否写日志，返回上次写日志后省略的次数；不写时返回 -1。
+         */
+        long sample(long now, long intervalNanos) {
+            long last = lastLogged.get();
+            if ((!logged || now - last >= intervalNanos) && lastLogged.compareAndSet(last, now)) {
+                logged = true;
+                return suppressed.sumThenReset();
+            }
+            suppressed.increment();
+            return -1;
+        }
+
+        Summary summary() {
+            long n = count.sum();
+            return new Summary(type, operation, shape, reasons, n, slowCount.sum(),
+                errorCount.sum(), n == 0 ? 0 : totalNanos.sum() / 1e6 / n, maxNanos.get() / 1e6,
+                n == 0 ? 0 : (double) totalResults.sum() / n, maxResults.get());
+        }
+    }
+}
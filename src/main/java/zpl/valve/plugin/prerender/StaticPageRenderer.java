@@ -0,0 +1,495 @@
+package zpl.valve.plugin.prerender;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.server.HandlerFilterFunction;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import zpl.valve.plugin.cache.RenderedPageCache;
+import zpl.valve.plugin.catalog.CatalogListener;
+import zpl.valve.plugin.catalog.CatalogSnapshot;
+import zpl.valve.plugin.extension.Product;
+import zpl.valve.plugin.extension.ProductCategory;
+import zpl.valve.plugin.related.RelatedProductsIndex;
+import zpl.valve.plugin.theme.ActiveTheme;
+import zpl.valve.plugin.theme.ThemeListener;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * 产品详情页和分类列表页的静态预渲染。
+ * <p>开启后（{@value #ENABLED_PROPERTY}），目录加载完成时生成全部页面，之后每次变更只重新生成
+ * 受影响的页面：产品本身、相关产品列表中包含该产品的详情页、变更前后所在分类的列表页；
+ * 分类变更会影响所有页面的分类导航，因此全部重新生成。</p>
+ * <p>页面通过回环请求实际的主题路由生成（附带 {@value #BYPASS_HEADER} 请求头，跳过静态文件），
+ * 因此与在线渲染使用完全相同的数据组装和模板。结果先写入临时文件再原子替换，
+ * 路由返回 404 时删除对应文件。</p>
+ * <p>路由通过 {@link #filter} 直接以文件返回已生成的页面（{@link FileSystemResource}，支持零拷贝传输），
+ * 文件不存在时回退到在线渲染。已登录用户的请求（判断方式与 {@link RenderedPageCache} 相同）
+ * 总是在线渲染，页面可能包含用户信息。</p>
+ * <p>详情页生成成功后记录其依赖的产品（自身和相关产品）及反向的 产品 -> 详情页，产品变更时
+ * 按反向表和 {@link RelatedProductsIndex#referencing} 找到受影响的详情页，不遍历全部产品。</p>
+ * <p>主题或主题设置变更后（见 {@link ActiveTheme}），变更之前生成的文件不再返回，
+ * 删除后按当前目录快照全部重新生成，期间回退到在线渲染。</p>
+ * <p>限制：只有产品、分类和主题版本的变更会触发重新生成。页面中由其他数据渲染的部分
+ * （菜单、其他插件提供的内容、开发模式下直接修改的主题模板等）变更后不会更新，
+ * 需要关闭后重新开启插件，或保存一次主题设置。</p>
+ */
+@Slf4j
+@Component
+public class StaticPageRenderer implements CatalogListener, ThemeListener {
+
+    static final String ENABLED_PROPERTY = "dl-plugin.prerender.enabled";
+
+    static final String BASE_URL_PROPERTY = "dl-plugin.prerender.base-url";
+
+    static final String BYPASS_HEADER = "X-Dl-Prerender";
+
+    static final int CONCURRENCY = 2;
+
+    static final Duration RENDER_TIMEOUT = Duration.ofSeconds(30);
+
+    private static final String SUFFIX = ".html";
+
+    private static final MediaType TEXT_HTML_UTF8 =
+        new MediaType(MediaType.TEXT_HTML, StandardCharsets.UTF_8);
+
+    /**
+     * 扩展名称（{@code metadata.name}）的合法字符，同时防止路径穿越。
+     */
+    private static final Pattern NAME = Pattern.compile("[a-z0-9]([-a-z0-9.]*[a-z0-9])?");
+
+    private final boolean enabled;
+
+    private final Path root;
+
+    private final WebClient webClient;
+
+    private final RelatedProductsIndex relatedProductsIndex;
+
+    /**
+     * 产品详情页依赖的产品：自身和各个相关产品。与 {@link #productPageDependents} 一起修改，
+     * 两者都以该表作为锁。
+     */
+    private final Map<String, Set<String>> productPageDependencies = new HashMap<>();
+
+    /**
+     * 产品 -> 依赖该产品的详情页。
+     */
+    private final Map<String, Set<String>> productPageDependents = new HashMap<>();
+
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 最近一次收到的目录快照，主题变更后据此重新生成。
+     */
+    private volatile CatalogSnapshot catalog;
+
+    /**
+     * 主题最近一次变更的时间，早于该时间生成的文件不再返回。
+     */
+    private volatile Instant themeChangedAt = Instant.EPOCH;
+
+    private volatile Sinks.Many<String> queue;
+
+    private Disposable worker;
+
+    public StaticPageRenderer(Environment environment,
+        RelatedProductsIndex relatedProductsIndex) {
+        this.enabled = environment.getProperty(ENABLED_PROPERTY, Boolean.class, false);
+        Path workDir = Path.of(environment.getProperty("halo.work-dir",
+            Path.of(System.getProperty("user.home"), ".halo2").toString()));
+        this.root = workDir.resolve("dl-plugin").resolve("static-pages").normalize();
+        this.webClient = WebClient.create(environment.getProperty(BASE_URL_PROPERTY,
+            "http://127.0.0.1:" + environment.getProperty("server.port", "8090")));
+        this.relatedProductsIndex = relatedProductsIndex;
+    }
+
+    public static String productPage(String name) {
+        return "product/" + name;
+    }
+
+    public static String categoryPage(String name, int page) {
+        return "productlist/" + name + "/" + page;
+    }
+
+    /**
+     * 开始处理渲染队列，需要在产品目录启动之前调用。
+     */
+    public synchronized void start() {
+        if (!enabled || worker != null && !worker.isDisposed()) {
+            return;
+        }
+        queue = Sinks.many().unicast().onBackpressureBuffer();
+        worker = queue.asFlux()
+            .flatMap(this::render, CONCURRENCY)
+            .subscribe();
+        log.info("Static page pre-rendering enabled, writing to {}", root);
+    }
+
+    public synchronized void stop() {
+        if (queue != null) {
+            queue.tryEmitComplete();
+            queue = null;
+        }
+        if (worker != null) {
+            worker.dispose();
+            worker = null;
+        }
+        pending.clear();
+    }
+
+    /**
+     * 创建用于主题路由的过滤器，已生成的页面直接以文件返回。
+     *
+     * @param page 根据请求计算页面标识，见 {@link #productPage}、{@link #categoryPage}
+     */
+    public HandlerFilterFunction<ServerResponse, ServerResponse> filter(
+        Function<ServerRequest, String> page) {
+        return (request, next) -> {
+            if (!enabled || request.headers().firstHeader(BYPASS_HEADER) != null) {
+                return next.handle(request);
+            }
+            Path file = fileOf(page.apply(request));
+            if (file == null) {
+                return next.handle(request);
+            }
+            Instant notBefore = themeChangedAt;
+            return RenderedPageCache.authenticated(request).flatMap(authenticated -> {
+                if (authenticated) {
+                    // 已登录用户的页面可能包含用户信息，不返回静态文件
+                    return next.handle(request);
+                }
+                return Mono.fromCallable(() -> Files.isRegularFile(file)
+                        ? Files.getLastModifiedTime(file).toInstant() : null)
+                    .subscribeOn(Schedulers.boundedElastic())
+                    // 主题变更之前生成的文件可能使用旧主题
+                    .filter(lastModified -> lastModified.isAfter(notBefore))
+                    .flatMap(lastModified -> serve(request, file, lastModified))
+                    .switchIfEmpty(Mono.defer(() -> next.handle(request)));
+            });
+        };
+    }
+
+    @Override
+    public void onReload(CatalogSnapshot snapshot) {
+        catalog = snapshot;
+        if (!enabled) {
+            return;
+        }
+        synchronized (productPageDependencies) {
+            productPageDependencies.clear();
+            productPageDependents.clear();
+        }
+        renderAll(snapshot);
+    }
+
+    @Override
+    public void onProductChanged(CatalogSnapshot snapshot, Product previous, Product current) {
+        catalog = snapshot;
+        if (!enabled) {
+            return;
+        }
+        String name = (current != null ? current : previous).getMetadata().getName();
+        Set<String> pages = new HashSet<>();
+        pages.add(productPage(name));
+        // 变更前引用该产品的详情页
+        dependents(name).forEach(product -> pages.add(productPage(product)));
+        // 变更后引用该产品的详情页；已生成的详情页渲染时都计算过相关列表
+        relatedProductsIndex.referencing(name).forEach(product -> pages.add(productPage(product)));
+        if (current == null) {
+            removeDependencies(name);
+        }
+        for (Product product : new Product[] {previous, current}) {
+            if (product != null && product.getSpec() != null
+                && product.getSpec().getCategoryMetadataName() != null) {
+                String category = product.getSpec().getCategoryMetadataName();
+                if (relatedProductsIndex.related(name).isEmpty()) {
+                    // 相关产品索引未建立时详情页展示同分类产品
+                    snapshot.getProductsByCategory(category).forEach(sibling ->
+                        pages.add(productPage(sibling.getMetadata().getName())));
+                }
+                pages.addAll(categoryPages(snapshot, category));
+                trimCategoryPages(category, snapshot.getProductsByCategory(category).size());
+            }
+        }
+        pages.forEach(this::enqueue);
+    }
+
+    @Override
+    public void onCategoryChanged(CatalogSnapshot snapshot, ProductCategory previous,
+        ProductCategory current) {
+        catalog = snapshot;
+        if (enabled) {
+            renderAll(snapshot);
+        }
+    }
+
+    @Override
+    public void onThemeChanged(String previous, String current) {
+        if (!enabled) {
+            return;
+        }
+        themeChangedAt = Instant.now();
+        // 先删除再重新生成，避免删除覆盖刚生成的文件；渲染中的旧页面会被重新生成的结果覆盖
+        removeObsolete(Set.of())
+            .doFinally(signal -> {
+                CatalogSnapshot snapshot = catalog;
+                if (snapshot != null) {
+                    renderAll(snapshot);
+                }
+            })
+            .subscribe();
+    }
+
+    private void renderAll(CatalogSnapshot snapshot) {
+        Set<String> pages = new HashSet<>();
+        snapshot.getProducts().forEach(product ->
+            pages.add(productPage(product.getMetadata().getName())));
+        snapshot.getCategories().forEach(category ->
+            pages.addAll(categoryPages(snapshot, category.getMetadata().getName())));
+        pages.forEach(this::enqueue);
+        removeObsolete(pages).subscribe();
+    }
+
+    /**
+     * 分类列表页每页一个产品，没有产品时仍有第 1 页。
+     */
+    private static List<String> categoryPages(CatalogSnapshot snapshot, String category) {
+        int count = Math.max(snapshot.getProductsByCategory(category).size(), 1);
+        return Stream.iterate(1, page -> page <= count, page -> page + 1)
+            .map(page -> categoryPage(category, page))
+            .toList();
+    }
+
+    private void enqueue(String page) {
+        Sinks.Many<String> sink = queue;
+        if (sink != null && pending.add(page)) {
+            sink.emitNext(page, Sinks.EmitFailureHandler.busyLooping(Duration.ofSeconds(1)));
+        }
+    }
+
+    private Mono<Void> render(String page) {
+        // 先移出待处理集合，渲染期间的新变更会重新入队
+        pending.remove(page);
+        Path file = fileOf(page);
+        if (file == null) {
+            return Mono.empty();
+        }
+        return webClient.get()
+            .uri("/" + page)
+            .header(BYPASS_HEADER, "1")
+            .accept(MediaType.TEXT_HTML)
+            .exchangeToMono(response -> {
+                if (response.statusCode().is2xxSuccessful()) {
+                    return response.bodyToMono(byte[].class)
+                        .doOnNext(body -> recordDependencies(page))
+                        .flatMap(body -> blockingRun(() -> write(file, body)));
+                }
+                // 页面已不存在或渲染失败，删除旧文件以回退到在线渲染
+                return response.releaseBody()
+                    .doOnSuccess(ignored -> removeDependencies(productName(page)))
+                    .then(blockingRun(() -> Files.deleteIfExists(file)));
+            })
+            .timeout(RENDER_TIMEOUT)
+            .onErrorResume(e -> {
+                log.warn("Failed to pre-render {}", page, e);
+                return Mono.empty();
+            })
+            .then();
+    }
+
+    /**
+     * 记录详情页依赖的产品。页面刚渲染过，相关列表已经计算，这里只是读取。
+     */
+    private void recordDependencies(String page) {
+        String name = productName(page);
+        if (name == null) {
+            return;
+        }
+        Set<String> dependencies = new HashSet<>();
+        dependencies.add(name);
+        relatedProductsIndex.related(name).ifPresent(dependencies::addAll);
+        synchronized (productPageDependencies) {
+            unlink(name, productPageDependencies.put(name, Set.copyOf(dependencies)));
+            dependencies.forEach(dependency -> productPageDependents
+                .computeIfAbsent(dependency, key -> new HashSet<>()).add(name));
+        }
+    }
+
+    private void removeDependencies(String name) {
+        if (name == null) {
+            return;
+        }
+        synchronized (productPageDependencies) {
+            unlink(name, productPageDependencies.remove(name));
+        }
+    }
+
+    private void unlink(String name, Set<String> dependencies) {
+        if (dependencies == null) {
+            return;
+        }
+        dependencies.forEach(dependency -> productPageDependents.computeIfPresent(dependency,
+            (key, dependents) -> dependents.remove(name) && dependents.isEmpty()
+                ? null : dependents));
+    }
+
+    private Set<String> dependents(String name) {
+        synchronized (productPageDependencies) {
+            return Set.copyOf(productPageDependents.getOrDefault(name, Set.of()));
+        }
+    }
+
+    /**
+     * 详情页对应的产品名称，不是详情页时返回 null。
+     */
+    private static String productName(String page) {
+        return page.startsWith("product/") ? page.substring("product/".length()) : null;
+    }
+
+    private Mono<ServerResponse> serve(ServerRequest request, Path file, Instant lastModified) {
+        return request.checkNotModified(lastModified)
+            .switchIfEmpty(Mono.defer(() -> ServerResponse.ok()
+                .contentType(TEXT_HTML_UTF8)
+                .lastModified(lastModified)
+                .body(BodyInserters.fromResource(new FileSystemResource(file)))));
+    }
+
+    private void write(Path file, byte[] body) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path temp = Files.createTempFile(file.getParent(), "page-", ".tmp");
+        try {
+            Files.write(temp, body);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * 删除分类中超出当前页数的列表页。
+     */
+    private void trimCategoryPages(String category, int count) {
+        Path directory = fileOf(categoryPage(category, 1));
+        if (directory == null) {
+            return;
+        }
+        int pages = Math.max(count, 1);
+        blocking(() -> {
+            if (!Files.isDirectory(directory.getParent())) {
+                return null;
+            }
+            try (Stream<Path> files = Files.list(directory.getParent())) {
+                for (Path file : files.toList()) {
+                    String fileName = file.getFileName().toString();
+                    if (fileName.endsWith(SUFFIX) && pageNumber(fileName) > pages) {
+                        Files.deleteIfExists(file);
+                    }
+                }
+            }
+            return null;
+        }).subscribe();
+    }
+
+    /**
+     * 删除不在当前页面集合中的文件（已删除的产品、分类及多余的分页）。
+     */
+    private Mono<Void> removeObsolete(Set<String> pages) {
+        return blocking(() -> {
+            if (!Files.isDirectory(root)) {
+                return null;
+            }
+            try (Stream<Path> files = Files.walk(root)) {
+                for (Path file : files.filter(Files::isRegularFile).toList()) {
+                    String relative = root.relativize(file).toString().replace('\\', '/');
+                    if (relative.endsWith(SUFFIX) && !pages.contains(
+                        relative.substring(0, relative.length() - SUFFIX.length()))) {
+                        Files.deleteIfExists(file);
+                    }
+                }
+            }
+            return null;
+        }).then();
+    }
+
+    /**
+     * 页面对应的文件，页面标识不合法时返回 null。
+     */
+    private Path fileOf(String page) {
+        if (page == null) {
+            return null;
+        }
+        String[] parts = page.split("/");
+        boolean valid = switch (parts[0]) {
+            case "product" -> parts.length == 2 && NAME.matcher(parts[1]).matches();
+            case "productlist" -> parts.length == 3 && NAME.matcher(parts[1]).matches()
+                && parts[2].matches("[1-9][0-9]{0,8}");
+            default -> false;
+        };
+        if (!valid) {
+            return null;
+        }
+        Path file = root.resolve(page + SUFFIX).normalize();
+        return file.startsWith(root) ? file : null;
+    }
+
+    private static int pageNumber(String fileName) {
+        try {
+            return Integer.parseInt(fileName.substring(0, fileName.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    private static <T> Mono<T> blocking(IoCallable<T> callable) {
+        return Mono.fromCallable(callable::call)
+            .subscribeOn(Schedulers.boundedElastic())
+            .onErrorResume(IOException.class, e -> {
+                log.warn("Static page file operation failed", e);
+                return Mono.empty();
+            });
+    }
+
+    private static Mono<Void> blockingRun(IoRunnable runnable) {
+        return blocking(() -> {
+            runnable.run();
+            return null;
+        }).then();
+    }
+
+    @FunctionalInterface
+    private interface IoCallable<T> {
+        T call() throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface IoRunnable {
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,95 @@
+package zpl.valve.plugin.ratelimit;
+
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.reactive.function.server.HandlerFilterFunction;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * 公开咨询提交接口的限流。
+ * <p>按客户端 IP 限流：默认突发 {@value #DEFAULT_IP_CAPACITY} 次，之后每
+ * {@value #DEFAULT_IP_REFILL_MILLIS} 毫秒恢复一次；按提交的邮箱限流：默认突发
+ * {@value #DEFAULT_EMAIL_CAPACITY} 次，之后每 {@value #DEFAULT_EMAIL_REFILL_MILLIS} 毫秒恢复一次。
+ * 超出限制返回 429 并带 {@code Retry-After}。</p>
+ * <p>限额通过配置项修改：{@value #IP_CAPACITY_PROPERTY}、{@value #IP_REFILL_PROPERTY}、
+ * {@value #EMAIL_CAPACITY_PROPERTY}、{@value #EMAIL_REFILL_PROPERTY}。</p>
+ * <p>客户端 IP 取自 {@link ServerRequest#remoteAddress()}，部署在反向代理之后时需要
+ * Halo 开启转发头处理（{@code server.forward-headers-strategy}），否则所有请求都会算作代理的 IP。</p>
+ */
+@Component
+public class ConsultationRateLimiter {
+
+    public static final String IP_CAPACITY_PROPERTY = "dl-plugin.rate-limit.ip.capacity";
+    public static final String IP_REFILL_PROPERTY = "dl-plugin.rate-limit.ip.refill-interval-ms";
+    public static final String EMAIL_CAPACITY_PROPERTY = "dl-plugin.rate-limit.email.capacity";
+    public static final String EMAIL_REFILL_PROPERTY =
+        "dl-plugin.rate-limit.email.refill-interval-ms";
+
+    static final int DEFAULT_IP_CAPACITY = 5;
+    static final long DEFAULT_IP_REFILL_MILLIS = 12_000;
+
+    static final int DEFAULT_EMAIL_CAPACITY = 3;
+    static final long DEFAULT_EMAIL_REFILL_MILLIS = 300_000;
+
+    private final TokenBucketRateLimiter byIp;
+
+    private final TokenBucketRateLimiter byEmail;
+
+    public ConsultationRateLimiter(Environment environment) {
+        this.byIp = new TokenBucketRateLimiter(
+            environment.getProperty(IP_CAPACITY_PROPERTY, Integer.class, DEFAULT_IP_CAPACITY),
+            Duration.ofMillis(environment.getProperty(IP_REFILL_PROPERTY, Long.class,
+                DEFAULT_IP_REFILL_MILLIS)));
+        this.byEmail = new TokenBucketRateLimiter(
+            environment.getProperty(EMAIL_CAPACITY_PROPERTY, Integer.class,
+                DEFAULT_EMAIL_CAPACITY),
+            Duration.ofMillis(environment.getProperty(EMAIL_REFILL_PROPERTY, Long.class,
+                DEFAULT_EMAIL_REFILL_MILLIS)));
+    }
+
+    /**
+     * 按客户端 IP 限流的过滤器，在读取请求体之前执行。
+     */
+    public HandlerFilterFunction<ServerResponse, ServerResponse> byClientIp() {
+        return (request, next) -> {
+            String ip = request.remoteAddress()
+                .map(InetSocketAddress::getAddress)
+                .map(InetAddress::getHostAddress)
+                .orElse(null);
+            if (ip == null) {
+                return next.handle(request);
+            }
+            Duration wait = byIp.tryAcquire(ip);
+            return wait.isZero() ? next.handle(request) : tooManyRequests(wait);
+        };
+    }
+
+    /**
+     * 按邮箱限流，允许时返回空，否则返回 429 响应。
+     */
+    public Mono<ServerResponse> checkEmail(String email) {
+        if (!StringUtils.hasText(email)) {
+            return Mono.empty();
+        }
+        Duration wait = byEmail.tryAcquire(email.trim().toLowerCase(Locale.ROOT));
+        return wait.isZero() ? Mono.empty() : tooManyRequests(wait);
+    }
+
+    private static Mono<ServerResponse> tooManyRequests(Duration wait) {
+        // Retry-After 以秒为单位，向上取整
+        long seconds = Math.max(1, (wait.toMillis() + 999) / 1000);
+        return ServerResponse.status(HttpStatus.TOO_MANY_REQUESTS)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(seconds))
+            .build();
+    }
+}
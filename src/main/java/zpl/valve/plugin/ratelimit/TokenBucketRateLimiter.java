@@ -0,0 +1,102 @@
+package zpl.valve.plugin.ratelimit;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * 按键限流的令牌桶。
+ * <p>每个键一个桶，容量为 {@code capacity}，每隔 {@code refillInterval} 补充一个令牌。
+ * 桶状态是不可变对象，通过 CAS 更新，不加锁。</p>
+ * <p>空闲时间超过补满所需时间的桶与新桶等价，会在后续调用中顺带清理，
+ * 因此内存占用只与近期活跃的键数量有关。</p>
+ */
+public class TokenBucketRateLimiter {
+
+    private final int capacity;
+
+    private final long refillIntervalNanos;
+
+    private final long idleNanos;
+
+    private final LongSupplier nanoClock;
+
+    private final Map<String, AtomicReference<Bucket>> buckets = new ConcurrentHashMap<>();
+
+    private final AtomicLong lastSweepNanos;
+
+    public TokenBucketRateLimiter(int capacity, Duration refillInterval) {
+        this(capacity, refillInterval, System::nanoTime);
+    }
+
+    TokenBucketRateLimiter(int capacity, Duration refillInterval, LongSupplier nanoClock) {
+        if (capacity < 1 || refillInterval.isZero() || refillInterval.isNegative()) {
+            throw new IllegalArgumentException("capacity and refillInterval must be positive");
+        }
+        this.capacity = capacity;
+        this.refillIntervalNanos = refillInterval.toNanos();
+        this.idleNanos = refillIntervalNanos * capacity;
+        this.nanoClock = nanoClock;
+        this.lastSweepNanos = new AtomicLong(nanoClock.getAsLong());
+    }
+
+    /**
+     * 尝试为指定键获取一个令牌。
+     *
+     * @return 获取成功时为 {@link Duration#ZERO}，否则为需要等待的时间
+     */
+    public Duration tryAcquire(String key) {
+        long now = nanoClock.getAsLong();
+        sweepIfDue(now);
+        AtomicReference<Bucket> ref = buckets.computeIfAbsent(key,
+            k -> new AtomicReference<>(new Bucket(capacity, now)));
+        while (true) {
+            Bucket current = ref.get();
+            Bucket refilled = current.refill(now, capacity, refillIntervalNanos);
+            if (refilled.tokens() <= 0) {
+                // 没有可补充的令牌时 refill 返回原状态，无需更新
+                return Duration.ofNanos(refilled.refilledAt() + refillIntervalNanos - now);
+            }
+            if (ref.compareAndSet(current,
+                new Bucket(refilled.tokens() - 1, refilled.refilledAt()))) {
+                return Duration.ZERO;
+            }
+        }
+    }
+
+    private void sweepIfDue(long now) {
+        long last = lastSweepNanos.get();
+        if (now - last < idleNanos || !lastSweepNanos.compareAndSet(last, now)) {
+            return;
+        }
+        // 与清理并发的请求最多多获得一个令牌：被清理的桶本来就已补满
+        buckets.values().removeIf(ref -> {
+            Bucket bucket = ref.get();
+            return now - bucket.refilledAt() >= idleNanos;
+        });
+    }
+
+    /**
+     * 桶状态。
+     *
+     * @param tokens 剩余令牌数
+     * @param refilledAt 最近一次补充令牌的时间点，不足一个补充间隔的部分保留到下次计算
+     */
+    record Bucket(int tokens, long refilledAt) {
+
+        Bucket refill(long now, int capacity, long refillIntervalNanos) {
+            long intervals = (now - refilledAt) / refillIntervalNanos;
+            if (intervals <= 0) {
+                return this;
+            }
+            if (tokens + intervals >= capacity) {
+                return new Bucket(capacity, now);
+            }
+            return new Bucket((int) (tokens + intervals),
+                refilledAt + intervals * refillIntervalNanos);
+        }
+    }
+}
@@ -0,0 +1,422 @@
+package zpl.valve.plugin.related;
+
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import zpl.valve.plugin.cache.RenderedPageCache;
+import zpl.valve.plugin.catalog.CatalogListener;
+import zpl.valve.plugin.catalog.CatalogSnapshot;
+import zpl.valve.plugin.extension.Product;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 相关产品索引。
+ * <p>每个产品的特征是所在分类和各个规格（{@code 名称=值}），两个产品的相关度为共同特征的权重之和，
+ * 相同规格 {@value #STANDARD_WEIGHT} 分，相同分类 {@value #CATEGORY_WEIGHT} 分。
+ * 每个产品保留得分最高的 {@value #TOP_K} 个相关产品，得分相同时按优先级、名称排序。</p>
+ * <p>特征完全相同的产品归为一组（{@link Signature}），组内按优先级、名称排序，倒排表记录 特征 -> 组，
+ * 同一组只需计算一次得分。目录加载时只建立分组和倒排表，相关列表在首次读取时计算并缓存。
+ * 计算时按倒排表从小到大遍历特征，用大小为 {@value #TOP_K} 的堆保留候选；
+ * 剩余特征的权重之和低于堆中最低得分时，未遍历到的产品不可能进入前 K 个，提前结束。</p>
+ * <p>产品变更时只更新已计算的列表：新得分更高时直接插入或调整位置，
+ * 只有变更的产品从某个列表中降级或移除时才重新计算该列表。需要检查的列表同样按剩余权重剪枝，
+ * 阈值为所有已计算列表的最低入选得分。相关列表发生变化的产品，其详情页缓存会被淘汰。</p>
+ * <p>索引结构的修改和列表的计算都持有同一把锁；已计算的列表是不可变的，读取不加锁。</p>
+ */
+@Order(0)
+@Component
+public class RelatedProductsIndex implements CatalogListener {
+
+    public static final int TOP_K = 6;
+
+    static final int STANDARD_WEIGHT = 3;
+    static final int CATEGORY_WEIGHT = 2;
+
+    private static final String CATEGORY_FEATURE = "category:";
+    private static final String STANDARD_FEATURE = "standard:";
+
+    private static final Comparator<Scored> ORDER = Comparator
+        .comparingInt(Scored::score).reversed()
+        .thenComparing(Scored::priority, Comparator.nullsFirst(Comparator.naturalOrder()))
+        .thenComparing(Scored::name);
+
+    private static final Comparator<Member> MEMBER_ORDER = Comparator
+        .comparing(Member::priority, Comparator.nullsFirst(Comparator.naturalOrder()))
+        .thenComparing(Member::name);
+
+    private final RenderedPageCache renderedPageCache;
+
+    /**
+     * 产品名称 -> 所在分组。
+     */
+    private final Map<String, Signature> products = new HashMap<>();
+
+    /**
+     * 特征集合 -> 分组。
+     */
+    private final Map<Set<String>, Signature> signatures = new HashMap<>();
+
+    /**
+     * 特征 -> 具有该特征的分组。
+     */
+    private final Map<String, Set<Signature>> postings = new HashMap<>();
+
+    private final Map<String, Integer> priorities = new HashMap<>();
+
+    /**
+     * 已计算的相关列表。
+     */
+    private final Map<String, List<Scored>> related = new ConcurrentHashMap<>();
+
+    /**
+     * 产品 -> 相关列表中包含该产品的产品。
+     */
+    private final Map<String, Set<String>> referencedBy = new HashMap<>();
+
+    /**
+     * 已计算列表的入选得分 -> 列表数量，未满 {@value #TOP_K} 个的列表入选得分为 1。
+     */
+    private final TreeMap<Integer, Integer> admissions = new TreeMap<>();
+
+    public RelatedProductsIndex(RenderedPageCache renderedPageCache) {
+        this.renderedPageCache = renderedPageCache;
+    }
+
+    /**
+     * 获取相关产品名称，按相关度降序排列；产品尚未建立索引时返回空。
+     */
+    public Optional<List<String>> related(String name) {
+        List<Scored> scored = related.get(name);
+        if (scored == null) {
+            synchronized (this) {
+                if (!products.containsKey(name)) {
+                    return Optional.empty();
+                }
+                scored = related.get(name);
+                if (scored == null) {
+                    scored = compute(name);
+                    store(name, scored);
+                }
+            }
+        }
+        return Optional.of(scored.stream().map(Scored::name).toList());
+    }
+
+    /**
+     * 已计算的相关列表中包含该产品的产品，尚未计算的列表不在其中。
+     */
+    public synchronized Set<String> referencing(String name) {
+        return Set.copyOf(referencedBy.getOrDefault(name, Set.of()));
+    }
+
+    @Override
+    public synchronized void onReload(CatalogSnapshot snapshot) {
+        products.clear();
+        signatures.clear();
+        postings.clear();
+        priorities.clear();
+        related.clear();
+        referencedBy.clear();
+        admissions.clear();
+        snapshot.getProducts().forEach(this::add);
+    }
+
+    @Override
+    public synchronized void onProductChanged(CatalogSnapshot snapshot, Product previous,
+        Product current) {
+        String name = (current != null ? current : previous).getMetadata().getName();
+        // 列表中包含该产品的，得分可能下降或需要移除
+        Set<String> referencing = new HashSet<>(referencedBy.getOrDefault(name, Set.of()));
+        remove(name);
+        Map<String, Integer> candidates = new HashMap<>();
+        if (current != null) {
+            add(current);
+            // 列表中不包含该产品的，只有新得分达到入选得分时才会变化
+            candidates.putAll(owners(name));
+        }
+        referencing.forEach(owner -> candidates.computeIfAbsent(owner,
+            key -> current == null ? 0 : score(key, name)));
+        candidates.remove(name);
+
+        Set<String> changed = new HashSet<>();
+        candidates.forEach((candidate, score) -> {
+            if (related.containsKey(candidate) && update(candidate, name, score)) {
+                changed.add(candidate);
+            }
+        });
+        unstore(name);
+        if (!changed.isEmpty()) {
+            renderedPageCache.evictProducts(changed);
+        }
+    }
+
+    /**
+     * 已计算列表且与该产品的得分可能达到其入选得分的产品，及其与该产品的得分。
+     */
+    private Map<String, Integer> owners(String name) {
+        Map<String, Integer> owners = new HashMap<>();
+        Signature own = products.get(name);
+        if (admissions.isEmpty() || own == null) {
+            return owners;
+        }
+        int threshold = admissions.firstKey();
+        List<String> ordered = bySelectivity(own.features());
+        int remaining = ordered.stream().mapToInt(RelatedProductsIndex::weight).sum();
+        Set<Signature> seen = new HashSet<>();
+        for (String feature : ordered) {
+            if (remaining < threshold) {
+                break;
+            }
+            for (Signature signature : postings.get(feature)) {
+                if (!seen.add(signature)) {
+                    continue;
+                }
+                int score = score(own.features(), signature);
+                if (score < threshold) {
+                    continue;
+                }
+                for (Member member : signature.members()) {
+                    List<Scored> list = related.get(member.name());
+                    if (list != null && score >= admission(list)) {
+                        owners.put(member.name(), score);
+                    }
+                }
+            }
+            remaining -= weight(feature);
+        }
+        return owners;
+    }
+
+    /**
+     * 更新 owner 的相关列表中 target 的得分，返回列表是否变化。
+     */
+    private boolean update(String owner, String target, int score) {
+        List<Scored> current = related.getOrDefault(owner, List.of());
+        Scored entry = new Scored(target, score, priorities.get(target));
+        Scored existing = current.stream()
+            .filter(scored -> scored.name().equals(target))
+            .findFirst()
+            .orElse(null);
+        if (existing != null) {
+            if (existing.equals(entry)) {
+                return false;
+            }
+            if (score > 0 && ORDER.compare(entry, existing) <= 0) {
+                // 排名只会上升，列表之外的产品不会因此进入前 K 个
+                List<Scored> next = new ArrayList<>(current);
+                next.replaceAll(scored -> scored.name().equals(target) ? entry : scored);
+                next.sort(ORDER);
+                store(owner, List.copyOf(next));
+            } else {
+                store(owner, compute(owner));
+            }
+            return true;
+        }
+        if (score <= 0 || current.size() >= TOP_K
+            && ORDER.compare(entry, current.get(current.size() - 1)) >= 0) {
+            return false;
+        }
+        List<Scored> next = new ArrayList<>(current);
+        next.add(entry);
+        next.sort(ORDER);
+        store(owner, List.copyOf(next.subList(0, Math.min(TOP_K, next.size()))));
+        return true;
+    }
+
+    private List<Scored> compute(String name) {
+        Signature own = products.get(name);
+        if (own == null) {
+            return List.of();
+        }
+        List<String> ordered = bySelectivity(own.features());
+        int remaining = ordered.stream().mapToInt(RelatedProductsIndex::weight).sum();
+        // 堆顶是当前入选的最低者；先放入特征相同的产品，得分最高，可以尽早剪枝
+        PriorityQueue<Scored> top = new PriorityQueue<>(TOP_K + 1, ORDER.reversed());
+        Set<Signature> seen = new HashSet<>();
+        seen.add(own);
+        offer(top, name, own, score(own.features(), own));
+        for (String feature : ordered) {
+            if (top.size() >= TOP_K && remaining < top.peek().score()) {
+                break;
+            }
+            for (Signature signature : postings.get(feature)) {
+                if (seen.add(signature)) {
+                    offer(top, name, signature, score(own.features(), signature));
+                }
+            }
+            remaining -= weight(feature);
+        }
+        List<Scored> result = new ArrayList<>(top);
+        result.sort(ORDER);
+        return List.copyOf(result);
+    }
+
+    /**
+     * 把一组产品放入候选堆，组内按优先级、名称排列，遇到无法入选的产品即停止。
+     */
+    private static void offer(PriorityQueue<Scored> top, String name, Signature signature,
+        int score) {
+        if (score <= 0 || top.size() >= TOP_K && score < top.peek().score()) {
+            return;
+        }
+        for (Member member : signature.members()) {
+            if (member.name().equals(name)) {
+                continue;
+            }
+            Scored candidate = new Scored(member.name(), score, member.priority());
+            if (top.size() >= TOP_K && ORDER.compare(candidate, top.peek()) >= 0) {
+                break;
+            }
+            top.offer(candidate);
+            if (top.size() > TOP_K) {
+                top.poll();
+            }
+        }
+    }
+
+    /**
+     * 按倒排表从小到大排列特征。
+     */
+    private List<String> bySelectivity(Set<String> productFeatures) {
+        List<String> ordered = new ArrayList<>(productFeatures);
+        ordered.sort(Comparator.comparingInt(feature -> postings.get(feature).size()));
+        return ordered;
+    }
+
+    private int score(String a, String b) {
+        Signature signatureOfA = products.get(a);
+        Signature signatureOfB = products.get(b);
+        return signatureOfA == null || signatureOfB == null
+            ? 0 : score(signatureOfA.features(), signatureOfB);
+    }
+
+    private static int score(Set<String> featuresOfA, Signature b) {
+        int score = 0;
+        for (String feature : b.features()) {
+            if (featuresOfA.contains(feature)) {
+                score += weight(feature);
+            }
+        }
+        return score;
+    }
+
+    private void store(String owner, List<Scored> list) {
+        unstore(owner);
+        related.put(owner, list);
+        list.forEach(scored ->
+            referencedBy.computeIfAbsent(scored.name(), key -> new HashSet<>()).add(owner));
+        admissions.merge(admission(list), 1, Integer::sum);
+    }
+
+    private void unstore(String owner) {
+        List<Scored> previous = related.remove(owner);
+        if (previous == null) {
+            return;
+        }
+        previous.forEach(scored -> referencedBy.computeIfPresent(scored.name(), (key, owners) -> {
+            owners.remove(owner);
+            return owners.isEmpty() ? null : owners;
+        }));
+        admissions.computeIfPresent(admission(previous), (key, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private static int admission(List<Scored> list) {
+        return list.size() < TOP_K ? 1 : list.get(list.size() - 1).score();
+    }
+
+    private void add(Product product) {
+        String name = product.getMetadata().getName();
+        Integer priority = product.getSpec() == null ? null : product.getSpec().getPriority();
+        Signature signature = signatures.computeIfAbsent(featuresOf(product), productFeatures -> {
+            Signature created = new Signature(productFeatures, new TreeSet<>(MEMBER_ORDER));
+            productFeatures.forEach(feature ->
+                postings.computeIfAbsent(feature, key -> new HashSet<>()).add(created));
+            return created;
+        });
+        signature.members().add(new Member(name, priority));
+        products.put(name, signature);
+        priorities.put(name, priority);
+    }
+
+    private void remove(String name) {
+        Signature signature = products.remove(name);
+        Integer priority = priorities.remove(name);
+        if (signature == null) {
+            return;
+        }
+        signature.members().remove(new Member(name, priority));
+        if (!signature.members().isEmpty()) {
+            return;
+        }
+        signatures.remove(signature.features());
+        signature.features().forEach(feature -> postings.computeIfPresent(feature,
+            (key, grouped) -> {
+                grouped.remove(signature);
+                return grouped.isEmpty() ? null : grouped;
+            }));
+    }
+
+    private static Set<String> featuresOf(Product product) {
+        Set<String> result = new HashSet<>();
+        Product.ProductSpec spec = product.getSpec();
+        if (spec == null) {
+            return result;
+        }
+        if (spec.getCategoryMetadataName() != null) {
+            result.add(CATEGORY_FEATURE + spec.getCategoryMetadataName());
+        }
+        if (spec.getStandards() != null) {
+            for (Product.ProductSpec.Standard standard : spec.getStandards()) {
+                if (standard != null && standard.getName() != null && standard.getValue() != null) {
+                    result.add(STANDARD_FEATURE + standard.getName().trim() + "="
+                        + standard.getValue().trim());
+                }
+            }
+        }
+        return Set.copyOf(result);
+    }
+
+    private static int weight(String feature) {
+        return feature.startsWith(CATEGORY_FEATURE) ? CATEGORY_WEIGHT : STANDARD_WEIGHT;
+    }
+
+    record Scored(String name, int score, Integer priority) {
+    }
+
+    record Member(String name, Integer priority) {
+    }
+
+    /**
+     * 特征完全相同的一组产品，按引用比较，同一特征集合只有一个实例。
+     */
+    private static final class Signature {
+
+        private final Set<String> features;
+
+        private final TreeSet<Member> members;
+
+        Signature(Set<String> features, TreeSet<Member> members) {
+            this.features = features;
+            this.members = members;
+        }
+
+        Set<String> features() {
+            return features;
+        }
+
+        TreeSet<Member> members() {
+            return members;
+        }
+    }
+}
@@ -3,26 +3,24 @@ package zpl.valve.plugin.router;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.data.domain.Sort;
 import org.springframework.web.reactive.function.server.RouterFunction;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
 import reactor.core.publisher.Mono;
-import run.halo.app.extension.ListOptions;
-import run.halo.app.extension.PageRequestImpl;
-import run.halo.app.extension.ReactiveExtensionClient;
-import run.halo.app.extension.index.query.QueryFactory;
-import run.halo.app.extension.router.selector.FieldSelector;
 import run.halo.app.theme.TemplateNameResolver;
-import zpl.valve.plugin.extension.Product;
+import zpl.valve.plugin.cache.RenderedPageCache;
+import zpl.valve.plugin.catalog.CatalogSnapshot;
+import zpl.valve.plugin.catalog.ProductCatalog;
 import zpl.valve.plugin.extension.ProductCategory;
+import zpl.valve.plugin.metrics.PluginMetrics;
+import zpl.valve.plugin.prerender.StaticPageRenderer;
 import zpl.valve.plugin.vo.ProductCategoryVo;
 import zpl.valve.plugin.vo.ProductVo;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
-import static org.springframework.data.domain.Sort.Order.asc;
 import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
 import static org.springframework.web.reactive.function.server.RouterFunctions.route;
 
@@ -30,12 +28,22 @@ import static org.springframework.web.reactive.function.server.RouterFunctions.r
 @Configuration(proxyBeanMethods = false)
 public class ProductCategoryRouter {
     private final TemplateNameResolver templateNameResolver;
-    private final ReactiveExtensionClient client;
+    private final ProductCatalog productCatalog;
+    private final RenderedPageCache renderedPageCache;
+    private final StaticPageRenderer staticPageRenderer;
+    private final PluginMetrics pluginMetrics;
 
     @Bean
     RouterFunction<ServerResponse> productListRouterFunction() {
         return route(GET("/productlist/{id}/{page}"), this::renderProductListPage)
-            .andRoute(GET("/productlist/{id}"), this::renderProductListPage); // 为没有page参数的请求添加一个路由
+            .andRoute(GET("/productlist/{id}"), this::renderProductListPage) // 为没有page参数的请求添加一个路由
+            .filter(pluginMetrics.templateRender("productlist"))
+            .filter(renderedPageCache.filter("productlist", "productlist", (request, catalog) ->
+                Set.of(RenderedPageCache.categoryTag(request.pathVariable("id")))))
+            // 已预渲染的页面直接返回文件，页码不合法时交给在线渲染处理
+            .filter(staticPageRenderer.filter(request -> StaticPageRenderer.categoryPage(
+                request.pathVariable("id"), parsePage(request.pathVariables().getOrDefault("page", "1")))))
+            .filter(pluginMetrics.routes());
     }
 
     Mono<ServerResponse> renderProductListPage(ServerRequest request) {
@@ -45,16 +53,10 @@ public class ProductCategoryRouter {
         String page = request.pathVariables().getOrDefault("page", "1");
         int pageNum = Integer.parseInt(page);
 
-        ListOptions options = new ListOptions();
-        options.setFieldSelector(
-            FieldSelector.of(QueryFactory.equal("spec.categoryMetadataName", id)));
+        // 同一请求内的各部分数据来自同一份快照
+        Mono<CatalogSnapshot> catalogMono = productCatalog.snapshot().cache();
 
-        Mono<Map<String, Object>> productsMono = client.listBy(Product.class, options,
-            new PageRequestImpl(pageNum, 1, Sort.by(
-                asc("spec.priority"),
-                asc("metadata.creationTimestamp"),
-                asc("metadata.name")
-            ))).map((result) -> {
+        Mono<Map<String, Object>> productsMono = catalogMono.map(catalog -> catalog.listByCategory(id, pageNum, 1)).map((result) -> {
             int currentPage = pageNum;
             return Map.of(
                 "currentPage", currentPage,
@@ -65,17 +67,9 @@ public class ProductCategoryRouter {
             );
         });
 
-        Mono<List<ProductCategory>> allCategoriesMono = client.listAll(ProductCategory.class, new ListOptions(), Sort.by(
-            asc("spec.priority"),
-            asc("metadata.creationTimestamp"),
-            asc("metadata.name")
-        )).collectList();
+        Mono<List<ProductCategory>> allCategoriesMono = catalogMono.map(CatalogSnapshot::getCategories);
 
-        ListOptions categoryOptions = new ListOptions();
-        categoryOptions.setFieldSelector(FieldSelector.of(QueryFactory.equal("metadata.name", id)));
-
-        Mono<ProductCategory> currentCategoryMono = client.listBy(ProductCategory.class, categoryOptions, new PageRequestImpl(1,1, Sort.unsorted()))
-            .flatMap(categoryList -> Mono.justOrEmpty(categoryList.getItems().stream().findFirst()))
+        Mono<ProductCategory> currentCategoryMono = catalogMono.flatMap(catalog -> Mono.justOrEmpty(catalog.getCategory(id)))
             .switchIfEmpty(Mono.error(new RuntimeException("Category not found for product: " + id)));
 
 
@@ -97,4 +91,12 @@ public class ProductCategoryRouter {
                 return ServerResponse.ok().render(templateName, model);
             });
     }
+
+    private static int parsePage(String page) {
+        try {
+            return Integer.parseInt(page);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
 }
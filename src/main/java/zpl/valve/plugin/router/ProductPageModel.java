@@ -0,0 +1,38 @@
+package zpl.valve.plugin.router;
+
+import lombok.Builder;
+import lombok.Value;
+import zpl.valve.plugin.extension.Product;
+import zpl.valve.plugin.vo.ProductCategoryVo;
+import zpl.valve.plugin.vo.ProductVo;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 产品详情页的模板数据。
+ */
+@Value
+@Builder
+public class ProductPageModel {
+    String id;
+    Product product;
+    ProductCategoryVo currentCategory;
+    List<ProductCategoryVo> categories;
+    List<ProductVo> relativeProducts;
+
+    /**
+     * 组装本页数据时访问扩展存储的次数，从目录快照读取时为 0。
+     */
+    int storeRoundTrips;
+
+    public Map<String, Object> toModel() {
+        return Map.of(
+            "id", id,
+            "product", product,
+            "currentCategory", currentCategory,
+            "categories", categories,
+            "relativeProducts", relativeProducts
+        );
+    }
+}
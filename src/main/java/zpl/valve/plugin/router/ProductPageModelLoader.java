@@ -0,0 +1,140 @@
+package zpl.valve.plugin.router;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import run.halo.app.extension.ListOptions;
+import run.halo.app.extension.PageRequestImpl;
+import run.halo.app.extension.index.query.QueryFactory;
+import run.halo.app.extension.router.selector.FieldSelector;
+import zpl.valve.plugin.catalog.CatalogSnapshot;
+import zpl.valve.plugin.catalog.ProductCatalog;
+import zpl.valve.plugin.client.CoalescingReader;
+import zpl.valve.plugin.extension.Product;
+import zpl.valve.plugin.extension.ProductCategory;
+import zpl.valve.plugin.related.RelatedProductsIndex;
+import zpl.valve.plugin.vo.ProductCategoryVo;
+import zpl.valve.plugin.vo.ProductVo;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.springframework.data.domain.Sort.Order.asc;
+
+/**
+ * 组装产品详情页数据。
+ * <p>产品目录快照已加载时直接从快照读取，不访问扩展存储，相关产品取自
+ * {@link RelatedProductsIndex}（尚未建立索引时取同分类产品）；否则按主键获取产品，
+ * 同时并行获取一次有序的分类列表（当前分类也从中查找），再用一次分页查询取回相关产品，
+ * 共 3 次存储访问。</p>
+ */
+@Slf4j
+@Component
+public class ProductPageModelLoader {
+
+    static final int RELATIVE_PRODUCT_SIZE = 6;
+
+    private final CoalescingReader reader;
+
+    private final ProductCatalog productCatalog;
+
+    private final RelatedProductsIndex relatedProductsIndex;
+
+    public ProductPageModelLoader(CoalescingReader reader, ProductCatalog productCatalog,
+        RelatedProductsIndex relatedProductsIndex) {
+        this.reader = reader;
+        this.productCatalog = productCatalog;
+        this.relatedProductsIndex = relatedProductsIndex;
+    }
+
+    /**
+     * 加载产品详情页数据，产品不存在或没有 spec 时返回空，产品所属分类不存在时返回错误。
+     */
+    public Mono<ProductPageModel> load(String id) {
+        Mono<ProductPageModel> model = productCatalog.isReady()
+            ? productCatalog.snapshot().flatMap(catalog -> fromSnapshot(id, catalog))
+            : fromStore(id);
+        return model.doOnNext(pageModel -> log.debug(
+            "Product page [{}] assembled with {} store round trips",
+            id, pageModel.getStoreRoundTrips()));
+    }
+
+    private Mono<ProductPageModel> fromSnapshot(String id, CatalogSnapshot catalog) {
+        return Mono.justOrEmpty(catalog.getProduct(id))
+            // 没有 spec 的产品无法展示，按不存在处理
+            .filter(product -> product.getSpec() != null)
+            .flatMap(product -> {
+                String categoryName = product.getSpec().getCategoryMetadataName();
+                return Mono.justOrEmpty(catalog.getCategory(categoryName))
+                    .switchIfEmpty(categoryNotFound(id))
+                    .map(category -> assemble(id, product, category, catalog.getCategories(),
+                        relatedProductsIndex.related(id)
+                            .map(names -> names.stream()
+                                .flatMap(name -> catalog.getProduct(name).stream())
+                                .toList())
+                            .orElseGet(() -> catalog.getProductsByCategory(categoryName)), 0));
+            });
+    }
+
+    private Mono<ProductPageModel> fromStore(String id) {
+        AtomicInteger roundTrips = new AtomicInteger();
+        Mono<Product> productMono = reader.fetch(Product.class, id)
+            .doOnSubscribe(subscription -> roundTrips.incrementAndGet())
+            .filter(product -> product.getMetadata().getDeletionTimestamp() == null
+                && product.getSpec() != null);
+        // 分类列表不依赖产品，与产品并行获取，"当前分类"和"全部分类"共用这一次结果
+        Mono<List<ProductCategory>> categoriesMono =
+            reader.listAll(ProductCategory.class, new ListOptions(), defaultSort())
+                .doOnSubscribe(subscription -> roundTrips.incrementAndGet())
+                .collectList();
+
+        return Mono.zip(productMono, categoriesMono).flatMap(tuple -> {
+            Product product = tuple.getT1();
+            List<ProductCategory> categories = tuple.getT2();
+            String categoryName = product.getSpec().getCategoryMetadataName();
+
+            return Mono.justOrEmpty(categories.stream()
+                    .filter(category -> category.getMetadata().getName().equals(categoryName))
+                    .findFirst())
+                .switchIfEmpty(categoryNotFound(id))
+                .flatMap(currentCategory -> {
+                    ListOptions options = new ListOptions();
+                    options.setFieldSelector(FieldSelector.of(
+                        QueryFactory.equal("spec.categoryMetadataName", categoryName)));
+                    return reader.listBy(Product.class, options,
+                            new PageRequestImpl(1, RELATIVE_PRODUCT_SIZE, defaultSort()))
+                        .doOnSubscribe(subscription -> roundTrips.incrementAndGet())
+                        .map(result -> assemble(id, product, currentCategory, categories,
+                            result.getItems(), roundTrips.get()));
+                });
+        });
+    }
+
+    private static ProductPageModel assemble(String id, Product product,
+        ProductCategory currentCategory, List<ProductCategory> categories,
+        List<Product> relatedProducts, int storeRoundTrips) {
+        return ProductPageModel.builder()
+            .id(id)
+            .product(product)
+            .currentCategory(ProductCategoryVo.from(currentCategory))
+            .categories(categories.stream().map(ProductCategoryVo::from).toList())
+            .relativeProducts(relatedProducts.stream()
+                .limit(RELATIVE_PRODUCT_SIZE)
+                .map(ProductVo::from)
+                .toList())
+            .storeRoundTrips(storeRoundTrips)
+            .build();
+    }
+
+    private static <T> Mono<T> categoryNotFound(String id) {
+        return Mono.error(new IllegalStateException("Category not found for product: " + id));
+    }
+
+    static Sort defaultSort() {
+        return Sort.by(asc("spec.priority"),
+            asc("metadata.creationTimestamp"),
+            asc("metadata.name")
+        );
+    }
+}
@@ -3,99 +3,78 @@ package zpl.valve.plugin.router;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.reactive.function.server.RouterFunction;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
 import reactor.core.publisher.Mono;
-import run.halo.app.extension.ListOptions;
-import run.halo.app.extension.ListResult;
-import run.halo.app.extension.PageRequestImpl;
-import run.halo.app.extension.ReactiveExtensionClient;
-import run.halo.app.extension.index.query.QueryFactory;
-import run.halo.app.extension.router.selector.FieldSelector;
 import run.halo.app.theme.TemplateNameResolver;
-import zpl.valve.plugin.extension.Product;
-import zpl.valve.plugin.extension.ProductCategory;
-import zpl.valve.plugin.vo.ProductCategoryVo;
-import zpl.valve.plugin.vo.ProductVo;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import zpl.valve.plugin.cache.RenderedPageCache;
+import zpl.valve.plugin.metrics.PluginMetrics;
+import zpl.valve.plugin.prerender.StaticPageRenderer;
+import zpl.valve.plugin.related.RelatedProductsIndex;
+
+import java.util.HashSet;
+import java.util.Set;
 
-import static org.springframework.data.domain.Sort.Order.asc;
 import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
-import static org.springframework.web.reactive.function.server.RequestPredicates.POST;
 import static org.springframework.web.reactive.function.server.RouterFunctions.route;
 
 @RequiredArgsConstructor
 @Configuration(proxyBeanMethods = false)
 public class ProductRouter {
     private final TemplateNameResolver templateNameResolver;
-    private final ReactiveExtensionClient client;
+    private final ProductPageModelLoader productPageModelLoader;
+    private final RenderedPageCache renderedPageCache;
+    private final RelatedProductsIndex relatedProductsIndex;
+    private final StaticPageRenderer staticPageRenderer;
+    private final PluginMetrics pluginMetrics;
 
 
     @Bean
     RouterFunction<ServerResponse> productRouterFunction() {
-        return route(GET("/product/{id}"), this::renderProductPage);
+        return route(GET("/product/{id}"), this::renderProductPage)
+            .filter(pluginMetrics.templateRender("productdetail"))
+            .filter(renderedPageCache.filter("product", "productdetail", (request, catalog) -> {
+                String id = request.pathVariable("id");
+                // 详情页依赖产品本身、所在分类（索引未建立时按分类取相关产品）和各个相关产品
+                Set<String> tags = new HashSet<>();
+                tags.add(RenderedPageCache.productTag(id));
+                catalog.getProduct(id)
+                    .filter(product -> product.getSpec() != null)
+                    .ifPresent(product -> tags.add(RenderedPageCache.categoryTag(
+                        product.getSpec().getCategoryMetadataName())));
+                relatedProductsIndex.related(id).ifPresent(names ->
+                    names.forEach(name -> tags.add(RenderedPageCache.productTag(name))));
+                return tags;
+            }))
+            // 已预渲染的页面直接返回文件
+            .filter(staticPageRenderer.filter(request ->
+                StaticPageRenderer.productPage(request.pathVariable("id"))))
+            .filter(pluginMetrics.routes());
     }
 
     Mono<ServerResponse> renderProductPage(ServerRequest request) {
         String id = request.pathVariable("id");
 
-        System.out.println("product id: " + id);
-        ListOptions options = new ListOptions();
-        options.setFieldSelector(FieldSelector.of(QueryFactory.equal("metadata.name", id)));
-
-        Mono<Product> productMono = client.listBy(Product.class, options, new PageRequestImpl(1,1, Sort.unsorted()))
-            .flatMap(productList -> Mono.justOrEmpty(productList.getItems().stream().findFirst()))
-            .switchIfEmpty(Mono.error(new ProductNotFoundException("Product not found: " + id)));
-
         Mono<String> templateNameMono = templateNameResolver.resolveTemplateNameOrDefault(request.exchange(), "productdetail");
 
-        return productMono.flatMap(product -> {
-                ListOptions categoryOptions = new ListOptions();
-                categoryOptions.setFieldSelector(FieldSelector.of(QueryFactory.equal("metadata.name", product.getSpec().getCategoryMetadataName())));
-
-                Mono<ProductCategory> currentCategoryMono = client.listBy(ProductCategory.class, categoryOptions, new PageRequestImpl(1,1, Sort.unsorted()))
-                    .flatMap(categoryList -> Mono.justOrEmpty(categoryList.getItems().stream().findFirst()))
-                    .switchIfEmpty(Mono.error(new RuntimeException("Category not found for product: " + id)));
-
-                Mono<List<ProductCategory>> allCategoriesMono = client.listAll(ProductCategory.class, new ListOptions(), Sort.by(
-                    asc("spec.priority"),
-                    asc("metadata.creationTimestamp"),
-                    asc("metadata.name")
-                )).collectList();  // 这里使用 collectList() 将 Flux 转换为 Mono<List<>>
-                ListOptions relativeProductOptions =  new ListOptions();
-                relativeProductOptions.setFieldSelector(FieldSelector.of(QueryFactory.equal("spec.categoryMetadataName", product.getSpec().getCategoryMetadataName())));
-                Mono<List<Product>> relativeProductsMono = client.listBy(Product.class, relativeProductOptions, new PageRequestImpl(1, 6, Sort.by(
-                    asc("spec.priority"),
-                    asc("metadata.creationTimestamp"),
-                    asc("metadata.name")
-                ))).map(ListResult::getItems);
-
-                return Mono.zip(Mono.just(product), currentCategoryMono, allCategoriesMono, templateNameMono, relativeProductsMono)
-                    .flatMap(tuple -> {
-                        Product p = tuple.getT1();
-                        ProductCategory currentCategory = tuple.getT2();
-                        List<ProductCategory> allCategories = tuple.getT3();
-                        String templateName = tuple.getT4();
-                        List<Product>  relativeProducts = tuple.getT5();
-
-
-
-                        Map<String, Object> model = Map.of(
-                            "id", id,
-                            "product", p,
-                            "currentCategory", ProductCategoryVo.from(currentCategory),
-                            "categories", allCategories.stream().map(ProductCategoryVo::from).toList(),
-                            "relativeProducts", relativeProducts.stream().map(ProductVo::from).toList()
-                        );
-                        return ServerResponse.ok().render(templateName, model);
-                    });
-            }).onErrorResume(ProductNotFoundException.class, e -> ServerResponse.notFound().build())
-            .onErrorResume(RuntimeException.class, e -> ServerResponse.status(HttpStatus.INTERNAL_SERVER_ERROR).build());
+        return productPageModelLoader.load(id)
+            .switchIfEmpty(Mono.error(new ProductNotFoundException("Product not found: " + id)))
+            .zipWith(templateNameMono)
+            .flatMap(tuple -> {
+                ProductPageModel pageModel = tuple.getT1();
+                String templateName = tuple.getT2();
+                return ServerResponse.ok().render(templateName, pageModel.toModel());
+            })
+            .onErrorResume(ProductNotFoundException.class, e -> {
+                pluginMetrics.error("product.render", e);
+                return ServerResponse.notFound().build();
+            })
+            .onErrorResume(RuntimeException.class, e -> {
+                pluginMetrics.error("product.render", e);
+                return ServerResponse.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+            });
     }
 
     // 自定义异常类
@@ -0,0 +1,93 @@
+package zpl.valve.plugin.search;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Locale;
+
+/**
+ * 汉字拼音首字母。
+ * <p>GB2312 一级汉字（3755 个常用字）按拼音排序，根据字符在 GB2312 中的编码区间即可确定首字母，
+ * 不需要引入拼音库。二级汉字和生僻字没有首字母，直接跳过；拉丁字母和数字转为小写原样保留。
+ * 多音字取 GB2312 排序时使用的读音。</p>
+ * <p>运行环境不支持 GB2312 编码时只保留字母和数字。</p>
+ */
+public final class PinyinInitials {
+
+    private static final String LETTERS = "abcdefghjklmnopqrstwxyz";
+
+    /**
+     * 各首字母在 GB2312 中的起始编码，与 {@link #LETTERS} 一一对应。
+     */
+    private static final int[] STARTS = {
+        0xB0A1, 0xB0C5, 0xB2C1, 0xB4EE, 0xB6EA, 0xB7A2, 0xB8C1, 0xB9FE, 0xBBF7, 0xBFA6, 0xC0AC,
+        0xC2E8, 0xC4C3, 0xC5B6, 0xC5BE, 0xC6DA, 0xC8BB, 0xC8F6, 0xCBFA, 0xCDDA, 0xCEF4, 0xD1B9,
+        0xD4D1
+    };
+
+    /**
+     * 一级汉字的最后一个编码。
+     */
+    private static final int END = 0xD7F9;
+
+    private static final Charset GB2312 =
+        Charset.isSupported("GB2312") ? Charset.forName("GB2312") : null;
+
+    private PinyinInitials() {
+    }
+
+    /**
+     * 文本的拼音首字母串，例如 "不锈钢球阀" 为 "bxgqf"。
+     */
+    public static String of(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        CharsetEncoder encoder = GB2312 == null ? null : GB2312.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+        StringBuilder initials = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (ch < 0x80) {
+                if (Character.isLetterOrDigit(ch)) {
+                    initials.append(Character.toLowerCase(ch));
+                }
+                continue;
+            }
+            char initial = encoder == null ? 0 : initialOf(encoder, ch);
+            if (initial != 0) {
+                initials.append(initial);
+            } else if (Character.isLetterOrDigit(ch) && !Character.isIdeographic(ch)) {
+                initials.append(String.valueOf(ch).toLowerCase(Locale.ROOT));
+            }
+        }
+        return initials.toString();
+    }
+
+    private static char initialOf(CharsetEncoder encoder, char ch) {
+        ByteBuffer bytes;
+        try {
+            encoder.reset();
+            bytes = encoder.encode(CharBuffer.wrap(new char[] {ch}));
+        } catch (CharacterCodingException e) {
+            return 0;
+        }
+        if (bytes.remaining() != 2) {
+            return 0;
+        }
+        int code = (bytes.get() & 0xFF) << 8 | bytes.get() & 0xFF;
+        if (code < STARTS[0] || code > END) {
+            return 0;
+        }
+        for (int i = STARTS.length - 1; i >= 0; i--) {
+            if (code >= STARTS[i]) {
+                return LETTERS.charAt(i);
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,358 @@
+package zpl.valve.plugin.search;
+
+import org.springframework.stereotype.Component;
+import zpl.valve.plugin.catalog.CatalogListener;
+import zpl.valve.plugin.catalog.CatalogSnapshot;
+import zpl.valve.plugin.extension.Product;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 产品分面索引。
+ * <p>每个产品分配一个紧凑的文档编号，每个分面取值（分类、价格区间、规格 {@code 名称=值}）
+ * 对应一个以文档编号为下标的位图。查询时同一分面内的取值做 OR，不同分面之间做 AND，
+ * 一次遍历即可得到命中结果和全部分面计数。</p>
+ * <p>某个分面的计数不受该分面自身条件的影响（只应用其他分面的条件），
+ * 这样已选中某个分类时仍能看到其他分类的数量，便于多选。</p>
+ * <p>删除产品后空出的编号会被复用，位图保持紧凑。索引随产品目录的变更增量维护，
+ * 写入在目录的监听回调中串行进行，查询与写入通过读写锁隔离。</p>
+ */
+@Component
+public class ProductFacetIndex implements CatalogListener {
+
+    /**
+     * 价格区间的下界，最后一个区间没有上界。
+     */
+    static final double[] PRICE_BOUNDS = {0, 100, 500, 1000, 5000, 10000, 50000};
+
+    static final List<String> PRICE_BUCKETS = priceBuckets();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    private final List<String> names = new ArrayList<>();
+
+    private final Deque<Integer> freeIds = new ArrayDeque<>();
+
+    private final BitSet live = new BitSet();
+
+    /**
+     * 文档编号 -> 已索引的分面取值，用于更新和删除时撤销旧的位。
+     */
+    private final Map<Integer, Features> forward = new HashMap<>();
+
+    private final Map<String, BitSet> categories = new HashMap<>();
+
+    private final Map<String, BitSet> priceBuckets = new HashMap<>();
+
+    /**
+     * 规格名称 -> (规格值 -> 位图)。
+     */
+    private final Map<String, Map<String, BitSet>> standards = new HashMap<>();
+
+    @Override
+    public void onReload(CatalogSnapshot snapshot) {
+        lock.writeLock().lock();
+        try {
+            ids.clear();
+            names.clear();
+            freeIds.clear();
+            live.clear();
+            forward.clear();
+            categories.clear();
+            priceBuckets.clear();
+            standards.clear();
+            snapshot.getProducts().forEach(this::index);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onProductChanged(CatalogSnapshot snapshot, Product previous, Product current) {
+        lock.writeLock().lock();
+        try {
+            if (previous != null) {
+                remove(previous.getMetadata().getName());
+            }
+            if (current != null) {
+                index(current);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 按条件查询，返回命中的产品名称（未排序）及各分面的计数。
+     */
+    public Result search(Query query) {
+        lock.readLock().lock();
+        try {
+            BitSet restriction = query.restrictTo() == null ? null : restriction(query.restrictTo());
+            BitSet categoryFilter = union(categories, query.categories());
+            BitSet priceFilter = union(priceBuckets, query.priceBuckets());
+            Map<String, BitSet> standardFilters = new HashMap<>();
+            query.standards().forEach((name, values) -> standardFilters.put(name,
+                union(standards.getOrDefault(name, Map.of()), values)));
+
+            BitSet matched = intersect(restriction, categoryFilter, priceFilter);
+            standardFilters.values().forEach(filter -> matched.and(filter));
+
+            // 每个分面的计数只应用其他分面的条件
+            BitSet exceptCategory = intersect(restriction, priceFilter);
+            standardFilters.values().forEach(filter -> exceptCategory.and(filter));
+            BitSet exceptPrice = intersect(restriction, categoryFilter);
+            standardFilters.values().forEach(filter -> exceptPrice.and(filter));
+
+            Map<String, Map<String, Integer>> standardCounts = new TreeMap<>();
+            standards.forEach((name, values) -> {
+                BitSet base = matched;
+                if (standardFilters.containsKey(name)) {
+                    base = intersect(restriction, categoryFilter, priceFilter);
+                    for (Map.Entry<String, BitSet> filter : standardFilters.entrySet()) {
+                        if (!filter.getKey().equals(name)) {
+                            base.and(filter.getValue());
+                        }
+                    }
+                }
+                Map<String, Integer> counts = counts(values, base);
+                if (!counts.isEmpty()) {
+                    standardCounts.put(name, counts);
+                }
+            });
+
+            Map<String, Integer> priceCounts = new LinkedHashMap<>();
+            for (String bucket : PRICE_BUCKETS) {
+                BitSet bits = priceBuckets.get(bucket);
+                int count = bits == null ? 0 : intersectionCount(bits, exceptPrice);
+                if (count > 0) {
+                    priceCounts.put(bucket, count);
+                }
+            }
+
+            List<String> hits = new ArrayList<>(matched.cardinality());
+            matched.stream().forEach(id -> hits.add(names.get(id)));
+            return new Result(hits, new Facets(counts(categories, exceptCategory), priceCounts,
+                standardCounts));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 价格所在区间的名称，价格为空或为负时返回 null。
+     */
+    public static String priceBucket(Double price) {
+        if (price == null || price.isNaN() || price < PRICE_BOUNDS[0]) {
+            return null;
+        }
+        for (int i = PRICE_BOUNDS.length - 1; i >= 0; i--) {
+            if (price >= PRICE_BOUNDS[i]) {
+                return PRICE_BUCKETS.get(i);
+            }
+        }
+        return null;
+    }
+
+    private void index(Product product) {
+        if (product.getSpec() == null) {
+            return;
+        }
+        String name = product.getMetadata().getName();
+        Integer reused = freeIds.poll();
+        int id = reused != null ? reused : names.size();
+        if (reused != null) {
+            names.set(id, name);
+        } else {
+            names.add(name);
+        }
+        ids.put(name, id);
+        live.set(id);
+
+        Features features = Features.of(product.getSpec());
+        forward.put(id, features);
+        if (features.category() != null) {
+            categories.computeIfAbsent(features.category(), key -> new BitSet()).set(id);
+        }
+        if (features.priceBucket() != null) {
+            priceBuckets.computeIfAbsent(features.priceBucket(), key -> new BitSet()).set(id);
+        }
+        features.standards().forEach(standard -> standards
+            .computeIfAbsent(standard.name(), key -> new HashMap<>())
+            .computeIfAbsent(standard.value(), key -> new BitSet())
+            .set(id));
+    }
+
+    private void remove(String name) {
+        Integer id = ids.remove(name);
+        if (id == null) {
+            return;
+        }
+        live.clear(id);
+        names.set(id, null);
+        freeIds.push(id);
+        Features features = forward.remove(id);
+        if (features.category() != null) {
+            clear(categories, features.category(), id);
+        }
+        if (features.priceBucket() != null) {
+            clear(priceBuckets, features.priceBucket(), id);
+        }
+        features.standards().forEach(standard -> standards.computeIfPresent(standard.name(),
+            (key, values) -> {
+                clear(values, standard.value(), id);
+                return values.isEmpty() ? null : values;
+            }));
+    }
+
+    private BitSet restriction(Collection<String> productNames) {
+        BitSet bits = new BitSet();
+        for (String name : productNames) {
+            Integer id = ids.get(name);
+            if (id != null) {
+                bits.set(id);
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * 同一分面内的取值求并集，未指定取值时返回 null（不过滤）。
+     */
+    private static BitSet union(Map<String, BitSet> postings, Set<String> values) {
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        BitSet result = new BitSet();
+        for (String value : values) {
+            BitSet bits = postings.get(value);
+            if (bits != null) {
+                result.or(bits);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 对不为 null 的条件求交集，全部为 null 时返回所有在库产品，结果总是新的实例。
+     */
+    private BitSet intersect(BitSet... filters) {
+        BitSet result = (BitSet) live.clone();
+        for (BitSet filter : filters) {
+            if (filter != null) {
+                result.and(filter);
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, Integer> counts(Map<String, BitSet> postings, BitSet base) {
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>();
+        postings.forEach((value, bits) -> {
+            int count = intersectionCount(bits, base);
+            if (count > 0) {
+                entries.add(Map.entry(value, count));
+            }
+        });
+        entries.sort(Map.Entry.<String, Integer>comparingByValue().reversed()
+            .thenComparing(Map.Entry.comparingByKey()));
+        Map<String, Integer> result = new LinkedHashMap<>();
+        entries.forEach(entry -> result.put(entry.getKey(), entry.getValue()));
+        return result;
+    }
+
+    private static int intersectionCount(BitSet a, BitSet b) {
+        BitSet smaller = a.length() <= b.length() ? a : b;
+        BitSet other = smaller == a ? b : a;
+        BitSet result = (BitSet) smaller.clone();
+        result.and(other);
+        return result.cardinality();
+    }
+
+    private static void clear(Map<String, BitSet> postings, String value, int id) {
+        postings.computeIfPresent(value, (key, bits) -> {
+            bits.clear(id);
+            return bits.isEmpty() ? null : bits;
+        });
+    }
+
+    private static List<String> priceBuckets() {
+        List<String> buckets = new ArrayList<>(PRICE_BOUNDS.length);
+        for (int i = 0; i < PRICE_BOUNDS.length; i++) {
+            String lower = formatBound(PRICE_BOUNDS[i]);
+            buckets.add(i + 1 < PRICE_BOUNDS.length
+                ? lower + "-" + formatBound(PRICE_BOUNDS[i + 1]) : lower + "-");
+        }
+        return List.copyOf(buckets);
+    }
+
+    private static String formatBound(double bound) {
+        return bound == Math.rint(bound) ? Long.toString((long) bound) : Double.toString(bound);
+    }
+
+    private record Features(String category, String priceBucket, List<Standard> standards) {
+
+        static Features of(Product.ProductSpec spec) {
+            List<Standard> standards = new ArrayList<>();
+            if (spec.getStandards() != null) {
+                for (Product.ProductSpec.Standard standard : spec.getStandards()) {
+                    if (standard != null && standard.getName() != null
+                        && standard.getValue() != null) {
+                        Standard pair = new Standard(standard.getName().trim(),
+                            standard.getValue().trim());
+                        if (!standards.contains(pair)) {
+                            standards.add(pair);
+                        }
+                    }
+                }
+            }
+            return new Features(spec.getCategoryMetadataName(), priceBucket(spec.getPrice()),
+                standards);
+        }
+    }
+
+    private record Standard(String name, String value) {
+    }
+
+    /**
+     * 分面查询条件，同一分面内的取值为 OR，不同分面之间为 AND；为空的分面不参与过滤。
+     *
+     * @param restrictTo 候选产品名称（例如关键词命中的产品），为 null 时不限制
+     * @param categories 分类名称
+     * @param priceBuckets 价格区间，取值见 {@link #PRICE_BUCKETS}
+     * @param standards 规格名称 -> 规格值
+     */
+    public record Query(Collection<String> restrictTo, Set<String> categories,
+                        Set<String> priceBuckets, Map<String, Set<String>> standards) {
+    }
+
+    /**
+     * 查询结果。
+     *
+     * @param names 命中的产品名称（{@code metadata.name}）
+     * @param facets 各分面的计数
+     */
+    public record Result(List<String> names, Facets facets) {
+    }
+
+    /**
+     * 分面计数，按数量降序排列（价格区间按区间顺序），不包含数量为 0 的取值。
+     */
+    public record Facets(Map<String, Integer> categories, Map<String, Integer> priceBuckets,
+                         Map<String, Map<String, Integer>> standards) {
+    }
+}
@@ -0,0 +1,137 @@
+package zpl.valve.plugin.search;
+
+import org.springframework.stereotype.Component;
+import zpl.valve.plugin.catalog.CatalogListener;
+import zpl.valve.plugin.catalog.CatalogSnapshot;
+import zpl.valve.plugin.extension.Product;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 产品关键词倒排索引。
+ * <p>对 {@code spec.name} 和 {@code spec.description} 分词（见 {@link ProductTokenizer}），
+ * 每个词项记录命中的产品及命中字段。查询时对各词项的倒排表求交集，
+ * 并按命中字段的权重求和排序。</p>
+ * <p>索引随产品目录的变更增量维护，读写可以并发进行。</p>
+ */
+@Component
+public class ProductSearchIndex implements CatalogListener {
+
+    static final int NAME_FIELD = 1;
+    static final int DESCRIPTION_FIELD = 1 << 1;
+
+    private static final int NAME_WEIGHT = 3;
+    private static final int DESCRIPTION_WEIGHT = 1;
+
+    /**
+     * 词项 -> (产品名称 -> 命中字段位掩码)。
+     */
+    private final Map<String, Map<String, Integer>> postings = new ConcurrentHashMap<>();
+
+    /**
+     * 产品名称 -> (词项 -> 命中字段位掩码)，用于更新和删除时撤销旧的倒排项。
+     */
+    private final Map<String, Map<String, Integer>> forward = new ConcurrentHashMap<>();
+
+    @Override
+    public void onReload(CatalogSnapshot snapshot) {
+        postings.clear();
+        forward.clear();
+        snapshot.getProducts().forEach(this::index);
+    }
+
+    @Override
+    public void onProductChanged(CatalogSnapshot snapshot, Product previous, Product current) {
+        if (previous != null) {
+            remove(previous.getMetadata().getName());
+        }
+        if (current != null) {
+            index(current);
+        }
+    }
+
+    /**
+     * 搜索关键词，返回所有词项都命中的产品，按得分降序排列，得分相同按名称排序。
+     */
+    public List<Hit> search(String keyword) {
+        Set<String> tokens = ProductTokenizer.tokenizeForQuery(keyword);
+        if (tokens.isEmpty()) {
+            return List.of();
+        }
+        List<Map<String, Integer>> lists = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            Map<String, Integer> posting = postings.get(token);
+            if (posting == null || posting.isEmpty()) {
+                return List.of();
+            }
+            lists.add(posting);
+        }
+        // 从最短的倒排表开始求交集
+        lists.sort(Comparator.comparingInt(Map::size));
+
+        List<Hit> hits = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : lists.get(0).entrySet()) {
+            String name = entry.getKey();
+            int score = score(entry.getValue());
+            for (int i = 1; i < lists.size() && score > 0; i++) {
+                Integer fields = lists.get(i).get(name);
+                score = fields == null ? 0 : score + score(fields);
+            }
+            if (score > 0) {
+                hits.add(new Hit(name, score));
+            }
+        }
+        hits.sort(Comparator.comparingInt(Hit::score).reversed().thenComparing(Hit::name));
+        return hits;
+    }
+
+    private void index(Product product) {
+        if (product.getSpec() == null) {
+            return;
+        }
+        String name = product.getMetadata().getName();
+        Map<String, Integer> terms = new HashMap<>();
+        ProductTokenizer.tokenizeForIndex(product.getSpec().getName())
+            .forEach(token -> terms.merge(token, NAME_FIELD, (a, b) -> a | b));
+        ProductTokenizer.tokenizeForIndex(product.getSpec().getDescription())
+            .forEach(token -> terms.merge(token, DESCRIPTION_FIELD, (a, b) -> a | b));
+        terms.forEach((token, fields) -> postings
+            .computeIfAbsent(token, key -> new ConcurrentHashMap<>())
+            .put(name, fields));
+        forward.put(name, terms);
+    }
+
+    private void remove(String name) {
+        Map<String, Integer> terms = forward.remove(name);
+        if (terms == null) {
+            return;
+        }
+        terms.keySet().forEach(token -> postings.computeIfPresent(token, (key, posting) -> {
+            posting.remove(name);
+            return posting.isEmpty() ? null : posting;
+        }));
+    }
+
+    private static int score(int fields) {
+        int score = 0;
+        if ((fields & NAME_FIELD) != 0) {
+            score += NAME_WEIGHT;
+        }
+        if ((fields & DESCRIPTION_FIELD) != 0) {
+            score += DESCRIPTION_WEIGHT;
+        }
+        return score;
+    }
+
+    /**
+     * 搜索命中的产品名称（{@code metadata.name}）及得分。
+     */
+    public record Hit(String name, int score) {
+    }
+}
@@ -0,0 +1,246 @@
+package zpl.valve.plugin.search;
+
+import org.springframework.stereotype.Component;
+import zpl.valve.plugin.catalog.CatalogListener;
+import zpl.valve.plugin.catalog.CatalogSnapshot;
+import zpl.valve.plugin.extension.Product;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 搜索框输入提示的前缀树。
+ * <p>每个产品以 {@code spec.name}、{@code spec.sku} 和名称的拼音首字母（见 {@link PinyinInitials}）
+ * 作为键插入前缀树，键统一做 NFKC 规范化、转小写并去掉空白，最多取 {@value #MAX_KEY_LENGTH} 个字符。
+ * 每个节点缓存其子树中排名最高的 {@value #MAX_SUGGESTIONS} 个产品（按 {@code spec.priority} 升序，
+ * 与产品列表的默认顺序一致），查询只需沿前缀走到对应节点后复制缓存的列表。</p>
+ * <p>延迟预算：查询耗时与前缀长度成正比，与产品数量无关，前缀最长 {@value #MAX_KEY_LENGTH} 个字符，
+ * 每次查询最多访问 {@value #MAX_KEY_LENGTH} 个节点并复制 {@value #MAX_SUGGESTIONS} 个元素。
+ * 10 万个产品时索引内查询应在 1ms 以内完成，提示接口在并发输入下 p99 预算为 20ms（不含网络），
+ * 超出预算时应先检查写锁的持有时间（产品批量导入期间）。</p>
+ * <p>产品变更时增量更新：新增时沿各个键的路径把产品并入节点缓存；删除时只重新计算缓存中
+ * 含有该产品的节点，新的缓存由子节点缓存和本节点的键合并得到，不需要遍历子树。
+ * 写入在产品目录的监听回调中串行进行，查询与写入通过读写锁隔离。</p>
+ */
+@Component
+public class ProductSuggestIndex implements CatalogListener {
+
+    public static final int MAX_SUGGESTIONS = 20;
+
+    static final int MAX_KEY_LENGTH = 32;
+
+    private static final Comparator<Suggestion> ORDER = Comparator
+        .comparing(Suggestion::priority, Comparator.nullsFirst(Comparator.<Integer>naturalOrder()))
+        .thenComparing(Suggestion::title, Comparator.nullsLast(Comparator.<String>naturalOrder()))
+        .thenComparing(Suggestion::name);
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Node root = new Node();
+
+    /**
+     * 产品名称 -> 已插入的提示及其键，用于更新和删除。
+     */
+    private final Map<String, Indexed> indexed = new HashMap<>();
+
+    @Override
+    public void onReload(CatalogSnapshot snapshot) {
+        lock.writeLock().lock();
+        try {
+            root = new Node();
+            indexed.clear();
+            snapshot.getProducts().forEach(this::add);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onProductChanged(CatalogSnapshot snapshot, Product previous, Product current) {
+        lock.writeLock().lock();
+        try {
+            if (previous != null) {
+                remove(previous.getMetadata().getName());
+            }
+            if (current != null) {
+                add(current);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 按前缀获取输入提示，最多返回 {@value #MAX_SUGGESTIONS} 个。
+     */
+    public List<Suggestion> suggest(String prefix, int limit) {
+        String key = normalize(prefix);
+        if (key.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            for (int i = 0; i < key.length() && node != null; i++) {
+                node = node.children.get(key.charAt(i));
+            }
+            if (node == null) {
+                return List.of();
+            }
+            return List.copyOf(node.top.subList(0,
+                Math.min(Math.min(limit, MAX_SUGGESTIONS), node.top.size())));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 键的规范化：NFKC、转小写、去掉空白，截断到 {@value #MAX_KEY_LENGTH} 个字符。
+     */
+    static String normalize(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC)
+            .toLowerCase(Locale.ROOT);
+        StringBuilder key = new StringBuilder(Math.min(normalized.length(), MAX_KEY_LENGTH));
+        for (int i = 0; i < normalized.length() && key.length() < MAX_KEY_LENGTH; i++) {
+            char ch = normalized.charAt(i);
+            if (!Character.isWhitespace(ch)) {
+                key.append(ch);
+            }
+        }
+        return key.toString();
+    }
+
+    private void add(Product product) {
+        Product.ProductSpec spec = product.getSpec();
+        if (spec == null) {
+            return;
+        }
+        Suggestion suggestion = new Suggestion(product.getMetadata().getName(), spec.getName(),
+            spec.getSku(), spec.getPriority());
+        Set<String> keys = new LinkedHashSet<>();
+        keys.add(normalize(spec.getName()));
+        keys.add(normalize(spec.getSku()));
+        keys.add(normalize(PinyinInitials.of(spec.getName())));
+        keys.remove("");
+        for (String key : keys) {
+            Node node = root;
+            for (int i = 0; i < key.length(); i++) {
+                node = node.children.computeIfAbsent(key.charAt(i), ch -> new Node());
+                node.offer(suggestion);
+            }
+            node.terminals.add(suggestion);
+        }
+        indexed.put(suggestion.name(), new Indexed(suggestion, keys));
+    }
+
+    private void remove(String name) {
+        Indexed entry = indexed.remove(name);
+        if (entry == null) {
+            return;
+        }
+        // 先从所有键的末端节点移除，再自底向上重新计算受影响的节点，
+        // 避免同一产品通过另一个键残留在公共前缀的缓存中
+        Map<Node, Integer> depths = new IdentityHashMap<>();
+        Map<Node, Node> parents = new IdentityHashMap<>();
+        for (String key : entry.keys()) {
+            Node node = root;
+            depths.put(node, 0);
+            for (int i = 0; i < key.length() && node != null; i++) {
+                Node child = node.children.get(key.charAt(i));
+                if (child != null) {
+                    parents.put(child, node);
+                    depths.put(child, i + 1);
+                }
+                node = child;
+            }
+            if (node != null) {
+                node.terminals.removeIf(suggestion -> suggestion.name().equals(name));
+            }
+        }
+        List<Node> affected = new ArrayList<>(depths.keySet());
+        affected.sort(Comparator.comparingInt((Node node) -> depths.get(node)).reversed());
+        for (Node node : affected) {
+            if (node.top.stream().anyMatch(suggestion -> suggestion.name().equals(name))) {
+                node.recompute();
+            }
+            Node parent = parents.get(node);
+            if (parent != null && node.children.isEmpty() && node.terminals.isEmpty()) {
+                parent.children.values().remove(node);
+            }
+        }
+    }
+
+    private static final class Node {
+
+        private final Map<Character, Node> children = new HashMap<>(4);
+
+        /**
+         * 键恰好在此结束的产品。
+         */
+        private final List<Suggestion> terminals = new ArrayList<>(1);
+
+        /**
+         * 子树中排名最高的产品，已排序且按产品名称去重。
+         */
+        private List<Suggestion> top = new ArrayList<>(1);
+
+        void offer(Suggestion suggestion) {
+            if (top.size() >= MAX_SUGGESTIONS
+                && ORDER.compare(suggestion, top.get(top.size() - 1)) >= 0) {
+                return;
+            }
+            for (Suggestion existing : top) {
+                if (existing.name().equals(suggestion.name())) {
+                    return;
+                }
+            }
+            List<Suggestion> next = new ArrayList<>(top.size() + 1);
+            next.addAll(top);
+            next.add(suggestion);
+            next.sort(ORDER);
+            top = next.size() > MAX_SUGGESTIONS
+                ? new ArrayList<>(next.subList(0, MAX_SUGGESTIONS)) : next;
+        }
+
+        /**
+         * 由本节点的键和子节点的缓存合并出新的缓存。
+         */
+        void recompute() {
+            Map<String, Suggestion> merged = new HashMap<>();
+            terminals.forEach(suggestion -> merged.put(suggestion.name(), suggestion));
+            children.values().forEach(child ->
+                child.top.forEach(suggestion -> merged.put(suggestion.name(), suggestion)));
+            List<Suggestion> next = new ArrayList<>(merged.values());
+            next.sort(ORDER);
+            top = next.size() > MAX_SUGGESTIONS
+                ? new ArrayList<>(next.subList(0, MAX_SUGGESTIONS)) : next;
+        }
+    }
+
+    private record Indexed(Suggestion suggestion, Set<String> keys) {
+    }
+
+    /**
+     * 输入提示。
+     *
+     * @param name 产品名称（{@code metadata.name}），用于拼接详情页地址
+     * @param title 产品显示名称（{@code spec.name}）
+     * @param sku 产品编号
+     * @param priority 优先级
+     */
+    public record Suggestion(String name, String title, String sku, Integer priority) {
+    }
+}
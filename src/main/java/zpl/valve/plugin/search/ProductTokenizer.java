@@ -0,0 +1,83 @@
+package zpl.valve.plugin.search;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 产品搜索分词器。
+ * <p>中日韩文字按连续片段切分为相邻两字（bigram），拉丁字母和数字按单词切分并转为小写，
+ * 其余字符作为分隔符。索引时中日韩片段额外输出单字，以便单字查询也能命中；
+ * 查询时片段长度大于 1 只使用 bigram，保证多字查询要求字词相邻。</p>
+ */
+public final class ProductTokenizer {
+
+    private ProductTokenizer() {
+    }
+
+    /**
+     * 对被索引的文本分词。
+     */
+    public static Set<String> tokenizeForIndex(String text) {
+        return tokenize(text, true);
+    }
+
+    /**
+     * 对查询关键词分词。
+     */
+    public static Set<String> tokenizeForQuery(String text) {
+        return tokenize(text, false);
+    }
+
+    private static Set<String> tokenize(String text, boolean withUnigrams) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            int codePoint = text.codePointAt(i);
+            if (isCjk(codePoint)) {
+                int start = i;
+                while (i < length && isCjk(text.codePointAt(i))) {
+                    i += Character.charCount(text.codePointAt(i));
+                }
+                emitCjk(text.substring(start, i), withUnigrams, tokens);
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                int start = i;
+                while (i < length) {
+                    int next = text.codePointAt(i);
+                    if (isCjk(next) || !Character.isLetterOrDigit(next)) {
+                        break;
+                    }
+                    i += Character.charCount(next);
+                }
+                tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+            } else {
+                i += Character.charCount(codePoint);
+            }
+        }
+        return tokens;
+    }
+
+    private static void emitCjk(String run, boolean withUnigrams, Set<String> tokens) {
+        int[] codePoints = run.codePoints().toArray();
+        if (codePoints.length == 1 || withUnigrams) {
+            for (int codePoint : codePoints) {
+                tokens.add(new String(Character.toChars(codePoint)));
+            }
+        }
+        for (int j = 0; j + 1 < codePoints.length; j++) {
+            tokens.add(new String(codePoints, j, 2));
+        }
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+            || script == Character.UnicodeScript.HIRAGANA
+            || script == Character.UnicodeScript.KATAKANA
+            || script == Character.UnicodeScript.HANGUL;
+    }
+}
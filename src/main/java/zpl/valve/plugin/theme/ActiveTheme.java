@@ -0,0 +1,228 @@
+package zpl.valve.plugin.theme;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import run.halo.app.core.extension.Theme;
+import run.halo.app.extension.ConfigMap;
+import run.halo.app.extension.Extension;
+import run.halo.app.extension.GroupVersionKind;
+import run.halo.app.extension.ReactiveExtensionClient;
+import run.halo.app.extension.Watcher;
+import run.halo.app.infra.utils.JsonUtils;
+import zpl.valve.plugin.metrics.PluginMetrics;
+import zpl.valve.plugin.metrics.QueryShape;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * 当前启用主题的版本，用于判断主题渲染结果是否过期。
+ * <p>版本由启用的主题名称、主题扩展的版本、主题设置 ConfigMap 的版本和系统设置 ConfigMap 的版本组成
+ * （系统设置包含站点标题等主题会渲染的内容），任一变化都会得到新的版本，并通知 {@link ThemeListener}。
+ * 首次加载完成之前版本为 {@value #UNKNOWN}。</p>
+ * <p>监听主题和 ConfigMap 的变更，变更后在同一条流水线上串行重新加载。</p>
+ */
+@Slf4j
+@Component
+public class ActiveTheme {
+
+    public static final String UNKNOWN = "";
+
+    static final String SYSTEM_CONFIG = "system";
+
+    private static final GroupVersionKind THEME_GVK = GroupVersionKind.fromExtension(Theme.class);
+    private static final GroupVersionKind CONFIG_MAP_GVK =
+        GroupVersionKind.fromExtension(ConfigMap.class);
+
+    private final ReactiveExtensionClient client;
+
+    private final ObjectProvider<ThemeListener> listeners;
+
+    private final PluginMetrics pluginMetrics;
+
+    private volatile String version = UNKNOWN;
+
+    /**
+     * 当前主题设置的 ConfigMap 名称，用于过滤无关的 ConfigMap 变更。
+     */
+    private volatile String configMapName;
+
+    private volatile Sinks.Many<Boolean> refreshes;
+
+    private Disposable subscription;
+
+    private ThemeWatcher watcher;
+
+    public ActiveTheme(ReactiveExtensionClient client, ObjectProvider<ThemeListener> listeners,
+        PluginMetrics pluginMetrics) {
+        this.client = client;
+        this.listeners = listeners;
+        this.pluginMetrics = pluginMetrics;
+    }
+
+    public synchronized void start() {
+        if (subscription != null && !subscription.isDisposed()) {
+            return;
+        }
+        refreshes = Sinks.many().unicast().onBackpressureBuffer();
+        subscription = refreshes.asFlux()
+            .startWith(true)
+            .concatMap(refresh -> load()
+                .onErrorResume(e -> {
+                    log.warn("Failed to load the active theme", e);
+                    return Mono.empty();
+                }))
+            .subscribe(this::update);
+        watcher = new ThemeWatcher();
+        client.watch(watcher);
+    }
+
+    public synchronized void stop() {
+        if (watcher != null) {
+            watcher.dispose();
+            watcher = null;
+        }
+        if (refreshes != null) {
+            refreshes.tryEmitComplete();
+            refreshes = null;
+        }
+        if (subscription != null) {
+            subscription.dispose();
+            subscription = null;
+        }
+    }
+
+    /**
+     * 当前主题版本，尚未加载时为 {@value #UNKNOWN}。
+     */
+    public String version() {
+        return version;
+    }
+
+    private Mono<String> load() {
+        return fetch(ConfigMap.class, SYSTEM_CONFIG).flatMap(system -> {
+            String systemVersion = String.valueOf(system.getMetadata().getVersion());
+            String themeName = activeTheme(system);
+            if (themeName == null) {
+                configMapName = null;
+                return Mono.just("-@-:-:" + systemVersion);
+            }
+            return fetch(Theme.class, themeName)
+                .flatMap(theme -> {
+                    String name = theme.getSpec() == null
+                        ? null : theme.getSpec().getConfigMapName();
+                    configMapName = name;
+                    Mono<String> configVersion = StringUtils.hasText(name)
+                        ? fetch(ConfigMap.class, name)
+                            .map(config -> String.valueOf(config.getMetadata().getVersion()))
+                        : Mono.empty();
+                    return configVersion.defaultIfEmpty("-")
+                        .map(config -> themeName + "@" + theme.getMetadata().getVersion()
+                            + ":" + config + ":" + systemVersion);
+                })
+                .defaultIfEmpty(themeName + "@-:-:" + systemVersion);
+        });
+    }
+
+    private void update(String next) {
+        String previous = version;
+        if (Objects.equals(previous, next)) {
+            return;
+        }
+        version = next;
+        if (UNKNOWN.equals(previous)) {
+            return;
+        }
+        log.info("Active theme changed from {} to {}", previous, next);
+        listeners.orderedStream().forEach(listener -> {
+            try {
+                listener.onThemeChanged(previous, next);
+            } catch (RuntimeException e) {
+                log.warn("Theme listener {} failed", listener, e);
+            }
+        });
+    }
+
+    private <E extends Extension> Mono<E> fetch(Class<E> type, String name) {
+        return pluginMetrics.store("fetch", type, QueryShape.BY_NAME, client.fetch(type, name));
+    }
+
+    /**
+     * 系统设置中 {@code theme} 分组的 {@code active} 字段。
+     */
+    private static String activeTheme(ConfigMap system) {
+        String theme = system.getData() == null ? null : system.getData().get("theme");
+        if (!StringUtils.hasText(theme)) {
+            return null;
+        }
+        try {
+            String active = JsonUtils.mapper().readTree(theme).path("active").asText(null);
+            return StringUtils.hasText(active) ? active : null;
+        } catch (JsonProcessingException e) {
+            log.warn("Invalid theme setting in system config: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void notifyChange(Extension extension) {
+        Sinks.Many<Boolean> sink = refreshes;
+        if (sink == null || extension == null) {
+            return;
+        }
+        GroupVersionKind gvk = extension.groupVersionKind();
+        String name = extension.getMetadata().getName();
+        boolean relevant = THEME_GVK.groupKind().equals(gvk.groupKind())
+            || CONFIG_MAP_GVK.groupKind().equals(gvk.groupKind())
+            && (SYSTEM_CONFIG.equals(name) || Objects.equals(configMapName, name));
+        if (relevant) {
+            // 监听回调可能来自多个线程，由 busyLooping 处理并发发射
+            sink.emitNext(true, Sinks.EmitFailureHandler.busyLooping(Duration.ofSeconds(1)));
+        }
+    }
+
+    private class ThemeWatcher implements Watcher {
+
+        private volatile boolean disposed;
+
+        private Runnable disposeHook;
+
+        @Override
+        public void onAdd(Extension extension) {
+            notifyChange(extension);
+        }
+
+        @Override
+        public void onUpdate(Extension oldExtension, Extension newExtension) {
+            notifyChange(newExtension);
+        }
+
+        @Override
+        public void onDelete(Extension extension) {
+            notifyChange(extension);
+        }
+
+        @Override
+        public void registerDisposeHook(Runnable dispose) {
+            this.disposeHook = dispose;
+        }
+
+        @Override
+        public void dispose() {
+            disposed = true;
+            if (Objects.nonNull(disposeHook)) {
+                disposeHook.run();
+            }
+        }
+
+        @Override
+        public boolean isDisposed() {
+            return disposed;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package zpl.valve.plugin.theme;
+
+/**
+ * 主题变更监听器，由 {@link ActiveTheme} 在启用的主题、主题设置或系统设置变化后串行回调。
+ * <p>实现类注册为 Spring Bean 即可生效，回调中不应执行阻塞操作。</p>
+ */
+public interface ThemeListener {
+
+    /**
+     * 主题版本发生变化，参数为变化前后的 {@link ActiveTheme#version()}。
+     */
+    void onThemeChanged(String previous, String current);
+}
@@ -6,6 +6,7 @@ import lombok.Value;
 import run.halo.app.extension.MetadataOperator;
 import run.halo.app.theme.finders.vo.ExtensionVoOperator;
 import zpl.valve.plugin.extension.Banner;
+import zpl.valve.plugin.image.ImageVariants;
 
 @Value
 @Builder
@@ -13,10 +14,20 @@ public class BannerVo implements ExtensionVoOperator {
     MetadataOperator metadata;
     Banner.BannerSpec spec;
 
+    /**
+     * PC 端和移动端轮播图的 {@code srcset} 属性值，不是本地附件时为 null。
+     */
+    String bannerImagePcSrcset;
+    String bannerImageMobileSrcset;
+
     public static BannerVo from(Banner banner) {
+        Banner.BannerSpec spec = banner.getSpec();
         return BannerVo.builder()
             .metadata(banner.getMetadata())
-            .spec(banner.getSpec())
+            .spec(spec)
+            .bannerImagePcSrcset(spec == null ? null : ImageVariants.srcset(spec.getBannerImagePc()))
+            .bannerImageMobileSrcset(
+                spec == null ? null : ImageVariants.srcset(spec.getBannerImageMobile()))
             .build();
     }
 }
@@ -0,0 +1,26 @@
+package zpl.valve.plugin.vo;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * 首页各板块的不可变快照，列表均为只读且已按各板块的默认顺序排列。
+ * <p>快照在多次渲染之间共享，列表中的对象不应被修改。</p>
+ */
+@Value
+@Builder(toBuilder = true)
+public class HomePageVo {
+    List<BannerVo> banners;
+
+    /**
+     * 首页关于只取最早创建的一条，不存在时为 null。
+     */
+    HomeAboutVo homeAbout;
+
+    List<AdvantageVo> advantages;
+    List<ApplicationAreaVo> applicationAreas;
+    List<TimelineVo> timelines;
+    List<ProductCategoryVo> productCategories;
+}
@@ -6,6 +6,7 @@ import run.halo.app.extension.MetadataOperator;
 import run.halo.app.theme.finders.vo.ExtensionVoOperator;
 import zpl.valve.plugin.extension.Advantage;
 import zpl.valve.plugin.extension.ProductCategory;
+import zpl.valve.plugin.image.ImageVariants;
 
 @Value
 @Builder
@@ -13,10 +14,17 @@ public class ProductCategoryVo implements ExtensionVoOperator {
     MetadataOperator metadata;
     ProductCategory.ProductCategorySpec spec;
 
+    /**
+     * 分类图片的 {@code srcset} 属性值，不是本地附件时为 null。
+     */
+    String imageSrcset;
+
     public static ProductCategoryVo from(ProductCategory productCategory) {
         return ProductCategoryVo.builder()
             .metadata(productCategory.getMetadata())
             .spec(productCategory.getSpec())
+            .imageSrcset(productCategory.getSpec() == null ? null
+                : ImageVariants.srcset(productCategory.getSpec().getImage()))
             .build();
     }
 }
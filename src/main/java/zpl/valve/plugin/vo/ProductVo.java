@@ -6,6 +6,10 @@ import run.halo.app.extension.MetadataOperator;
 import run.halo.app.theme.finders.vo.ExtensionVoOperator;
 import zpl.valve.plugin.extension.Product;
 import zpl.valve.plugin.extension.ProductCategory;
+import zpl.valve.plugin.image.ImageVariants;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 @Value
 @Builder
@@ -13,10 +17,25 @@ public class ProductVo implements ExtensionVoOperator {
     MetadataOperator metadata;
     Product.ProductSpec spec;
 
+    /**
+     * 图片地址 -> {@code srcset} 属性值，只包含本地附件图片。
+     */
+    Map<String, String> imageSrcsets;
+
     public static ProductVo from(Product product) {
+        Map<String, String> imageSrcsets = new LinkedHashMap<>();
+        if (product.getSpec() != null && product.getSpec().getImages() != null) {
+            product.getSpec().getImages().forEach(image -> {
+                String srcset = ImageVariants.srcset(image.getUrl());
+                if (srcset != null) {
+                    imageSrcsets.put(image.getUrl(), srcset);
+                }
+            });
+        }
         return ProductVo.builder()
             .metadata(product.getMetadata())
             .spec(product.getSpec())
+            .imageSrcsets(imageSrcsets)
             .build();
     }
 }